@@ -0,0 +1,67 @@
+package se.kry.codetest.controller;
+
+import io.vertx.reactivex.core.buffer.Buffer;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Encoding of the full service list, as streamed by GET /service, compared to the encoding through one JsonObject
+ * per service it replaced. The allocations per operation are reported by the gc profiler (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+public class ServiceListEncodingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int services;
+
+    private List<ServiceStatus> list;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>(services);
+        for (int i = 0; i < services; i++) {
+            ServiceStatus service = new ServiceStatus();
+            service.setName(String.format("service-%06d", i));
+            service.setUrl(String.format("https://service-%06d.example.com/health", i));
+            service.setCreatedAt(new DateTime(1_600_000_000_000L + i));
+            service.setStatus(i % 10 == 0 ? ServiceStatusValueEnum.FAIL : ServiceStatusValueEnum.OK);
+            list.add(service);
+        }
+    }
+
+    @Benchmark
+    public void encodeAll(Blackhole blackhole) {
+        Iterator<ServiceStatus> iterator = list.iterator();
+        boolean first = true;
+        while (iterator.hasNext()) {
+            Buffer chunk = ServiceStatusController.encodeChunk(iterator, first);
+            first = false;
+            blackhole.consume(chunk);
+        }
+    }
+
+    @Benchmark
+    public void encodeAllAsJsonObjects(Blackhole blackhole) {
+        Iterator<ServiceStatus> iterator = list.iterator();
+        boolean first = true;
+        while (iterator.hasNext()) {
+            Buffer chunk = Buffer.buffer();
+            for (int i = 0; i < 100 && iterator.hasNext(); i++) {
+                if (i > 0 || !first) chunk.appendString(",");
+                chunk.appendString(iterator.next().toJson().encode());
+            }
+            first = false;
+            blackhole.consume(chunk);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package se.kry.codetest.model;
+
+import io.vertx.core.json.JsonObject;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conversions and validation run for every service on each request
+ */
+@State(Scope.Benchmark)
+public class ServiceStatusBenchmark {
+    private JsonObject json;
+    private ServiceStatus service;
+    private ServiceStatus invalidService;
+
+    @Setup
+    public void setUp() {
+        service = new ServiceStatus();
+        service.setName("service-000042");
+        service.setUrl("https://service-000042.example.com/health");
+        service.setCreatedAt(new DateTime(1_600_000_000_000L));
+        service.setStatus(ServiceStatusValueEnum.OK);
+        service.setVersion(3);
+        service.setConnectTimeout(2000);
+        json = service.toJson();
+
+        invalidService = service.copy();
+        invalidService.setUrl("https//service-000042.example.com:health");
+    }
+
+    @Benchmark
+    public ServiceStatus fromJson() {
+        return ServiceStatus.fromJson(json);
+    }
+
+    @Benchmark
+    public JsonObject toJson() {
+        return service.toJson();
+    }
+
+    @Benchmark
+    public String toJsonEncoded() {
+        return service.toJson().encode();
+    }
+
+    @Benchmark
+    public boolean isUrlValid() {
+        return service.isUrlValid();
+    }
+
+    @Benchmark
+    public boolean isUrlValidInvalidUrl() {
+        return invalidService.isUrlValid();
+    }
+}
@@ -0,0 +1,87 @@
+package se.kry.codetest.repository;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import se.kry.codetest.DBConnector;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Repository reads and writes against a temporary SQLite file holding {@link #rows} services
+ */
+@State(Scope.Benchmark)
+public class ServiceStatusRepositoryBenchmark {
+    private static final String[] STATUSES = {"OK", "FAIL"};
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private Vertx vertx;
+    private Path dbFile;
+    private ServiceStatusRepository repository;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        dbFile = Files.createTempFile("poller-benchmark-", ".db");
+        DBConnector connector = new DBConnector(vertx, dbFile.toString());
+        connector.start().blockingAwait();
+
+        List<JsonArray> params = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            params.add(new JsonArray(Arrays.asList(
+                    String.format("https://service-%06d.example.com/health", i), nameOf(i), 1_600_000_000_000L + i)));
+        }
+        connector.batch("INSERT INTO service (url, name, created_at) VALUES (?, ?, ?)", params).blockingAwait();
+
+        repository = new ServiceStatusRepository(connector);
+        repository.load().blockingAwait();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        vertx.rxClose().blockingAwait();
+        Files.deleteIfExists(dbFile);
+    }
+
+    /**
+     * Served from the in-memory registry
+     */
+    @Benchmark
+    public List<ServiceStatus> findAll() {
+        return repository.findAll(ServiceStatus.DEFAULT_OWNER).blockingGet();
+    }
+
+    /**
+     * Full read of the service table, as done on startup
+     */
+    @Benchmark
+    public void load() {
+        repository.load().blockingAwait();
+    }
+
+    @Benchmark
+    public void setStatus() {
+        // Alternate the status, so that every call writes a change
+        int i = next++;
+        repository.setStatus(ServiceStatus.DEFAULT_OWNER, nameOf(i % rows), STATUSES[(i / rows) % 2]).blockingAwait();
+    }
+
+    private static String nameOf(int i) {
+        return String.format("service-%06d", i);
+    }
+}
@@ -0,0 +1,13 @@
+import { ServiceStatus } from '@/model/ServiceStatus';
+
+export interface ServiceStatusEvent {
+  type: 'created' | 'updated' | 'status' | 'deleted';
+  /**
+   * Name of the service before the change
+   */
+  name: string;
+  /**
+   * State of the service after the change, undefined when deleted
+   */
+  service?: ServiceStatus;
+}
@@ -1,20 +1,43 @@
 import axios from 'axios';
 import { ServiceStatus } from '@/model/ServiceStatus';
 import { ServiceStatusDto } from '@/dto/ServiceStatusDto';
+import { ServiceStatusEvent } from '@/model/ServiceStatusEvent';
+
+const OWNER_KEY = 'owner';
 
 export class StatusesService {
   url = '/api/v1/service';
 
+  constructor() {
+    StatusesService.ensureOwner();
+  }
+
   public async getAll(): Promise<ServiceStatus[]> {
     const response = await axios.get(this.url);
-    return response.data.map((x: ServiceStatusDto) => {
-      return {
-        url: x.url,
-        name: x.name,
-        createdAt: new Date(x.created_at),
-        status: x.status
-      };
+    return response.data.map(StatusesService.toModel);
+  }
+
+  /**
+   * Listen to the changes of the services. onOpen is called on every (re)connection, events missed while
+   * disconnected are not replayed so the list must be fetched again at this point.
+   *
+   * @return A function closing the connection
+   */
+  public subscribe(onEvent: (event: ServiceStatusEvent) => void, onOpen: () => void): () => void {
+    const source = new EventSource(`${this.url}/events`);
+    source.onopen = onOpen;
+    ['created', 'updated', 'status', 'deleted'].forEach(type => {
+      source.addEventListener(type, (message: Event) => {
+        const data = JSON.parse((message as MessageEvent).data);
+        onEvent({
+          type: type as ServiceStatusEvent['type'],
+          name: data.previous_name || data.name || data.service.name,
+          service: data.service ? StatusesService.toModel(data.service) : undefined
+        });
+      });
     });
+
+    return () => source.close();
   }
 
   public async delete(name: string): Promise<boolean> {
@@ -35,4 +58,26 @@ export class StatusesService {
 
     return response.status === 201;
   }
+
+  /**
+   * Give the browser its own services: a random owner token is kept in the local storage, and sent in a cookie with
+   * every request, the event stream included.
+   */
+  private static ensureOwner(): void {
+    let owner = localStorage.getItem(OWNER_KEY);
+    if (!owner) {
+      owner = Array.from(crypto.getRandomValues(new Uint8Array(16)), b => b.toString(16).padStart(2, '0')).join('');
+      localStorage.setItem(OWNER_KEY, owner);
+    }
+    document.cookie = `${OWNER_KEY}=${owner}; path=/; max-age=31536000; samesite=strict`;
+  }
+
+  private static toModel(x: ServiceStatusDto): ServiceStatus {
+    return {
+      url: x.url,
+      name: x.name,
+      createdAt: new Date(x.created_at),
+      status: x.status
+    };
+  }
 }
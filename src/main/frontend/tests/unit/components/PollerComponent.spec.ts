@@ -26,6 +26,9 @@ describe('PollerComponent.vue', () => {
     const serviceStub = {
       async getAll() {
         return Promise.resolve(getAllResponse);
+      },
+      subscribe() {
+        return () => undefined;
       }
     };
     const mountOptions = {
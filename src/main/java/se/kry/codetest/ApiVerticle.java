@@ -0,0 +1,112 @@
+package se.kry.codetest;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.reactivex.Completable;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.ext.web.Router;
+import io.vertx.reactivex.ext.web.handler.BodyHandler;
+import io.vertx.reactivex.ext.web.handler.CorsHandler;
+import io.vertx.reactivex.ext.web.handler.StaticHandler;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.controller.OwnerHandler;
+import se.kry.codetest.controller.ServiceEventsController;
+import se.kry.codetest.controller.ServiceHistoryController;
+import se.kry.codetest.controller.ServiceScheduleController;
+import se.kry.codetest.controller.ServiceStatusController;
+import se.kry.codetest.metrics.HttpMetricsHandler;
+import se.kry.codetest.poller.PollScheduler;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusBusClient;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * The HTTP API. Deployed with several instances sharing the listening port, each one on its own event loop.
+ * <p>
+ * Reads are served from the registry, the history repository and the scheduler shared by all the instances, writes are sent
+ * over the event bus to {@link MainVerticle}. The metrics of the whole application are exposed on /metrics.
+ */
+@Slf4j
+public class ApiVerticle extends AbstractVerticle {
+    private final int port;
+    private final ServiceStatusRegistry serviceRegistry;
+    private final ServiceHistoryRepository historyRepository;
+    private final PollScheduler scheduler;
+    private final PrometheusMeterRegistry meterRegistry;
+
+    private ServiceStatusController serviceStatusController;
+    private ServiceHistoryController serviceHistoryController;
+    private ServiceScheduleController serviceScheduleController;
+    private ServiceEventsController serviceEventsController;
+
+    public ApiVerticle(int port, ServiceStatusRegistry serviceRegistry, ServiceHistoryRepository historyRepository,
+                       PollScheduler scheduler, PrometheusMeterRegistry meterRegistry) {
+        this.port = port;
+        this.serviceRegistry = serviceRegistry;
+        this.historyRepository = historyRepository;
+        this.scheduler = scheduler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Completable rxStart() {
+        final Router router = Router.router(vertx);
+        ServiceStatusBusClient serviceStore = new ServiceStatusBusClient(vertx.eventBus(), serviceRegistry);
+
+        serviceStatusController = new ServiceStatusController(serviceStore);
+        serviceHistoryController = new ServiceHistoryController(serviceStore, historyRepository);
+        serviceScheduleController = new ServiceScheduleController(serviceStore, scheduler);
+        serviceEventsController = new ServiceEventsController(vertx, serviceRegistry);
+        serviceEventsController.start();
+
+        router.route().handler(new HttpMetricsHandler(meterRegistry));
+        router.route().handler(BodyHandler.create());
+        setRoutes(router);
+
+        return vertx.createHttpServer(new HttpServerOptions().setCompressionSupported(true))
+                .requestHandler(router)
+                .rxListen(this.port)
+                .ignoreElement()
+                .doOnComplete(() -> log.debug("API instance listening on port {}", this.port));
+    }
+
+    @Override
+    public Completable rxStop() {
+        serviceEventsController.stop();
+        return Completable.complete();
+    }
+
+    private void setRoutes(Router router) {
+        String apiPrefix = "/api/v1";
+
+        // Resource distribution handler
+        router.route("/*").handler(StaticHandler.create());
+
+        // Cors
+        router.routeWithRegex("\\/api\\/v1\\/service(\\/.*)?").handler(
+                CorsHandler.create("^(https?:\\/\\/)?localhost(:[0-9]{1,5})?")
+                        .allowedMethods(new HashSet<>(Arrays.asList(HttpMethod.GET, HttpMethod.POST, HttpMethod.DELETE, HttpMethod.OPTIONS)))
+                        .allowedHeader(OwnerHandler.OWNER_HEADER)
+        );
+
+        // Owner of the services served
+        router.route(apiPrefix + "/*").handler(new OwnerHandler());
+
+        // Routes
+        router.get(apiPrefix + "/service").handler(this.serviceStatusController::serviceGet);
+        router.get(apiPrefix + "/service/events").handler(this.serviceEventsController::serviceEvents);
+        router.post(apiPrefix + "/service").handler(this.serviceStatusController::servicePost);
+        router.post(apiPrefix + "/service/bulk").handler(this.serviceStatusController::serviceBulkPost);
+        router.delete(apiPrefix + "/service/:name").handler(this.serviceStatusController::serviceDelete);
+        router.put(apiPrefix + "/service/:name").handler(this.serviceStatusController::serviceUpdate);
+        router.get(apiPrefix + "/service/:name/history").handler(this.serviceHistoryController::historyGet);
+        router.get(apiPrefix + "/service/:name/schedule").handler(this.serviceScheduleController::scheduleGet);
+        router.get("/metrics").handler(req -> req.response()
+                .putHeader("content-type", "text/plain; version=0.0.4; charset=utf-8")
+                .end(meterRegistry.scrape()));
+    }
+}
@@ -1,74 +1,363 @@
 package se.kry.codetest;
 
-import io.reactivex.SingleObserver;
-import io.reactivex.annotations.NonNull;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.reactivex.core.RxHelper;
+import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.client.HttpRequest;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
-import io.vertx.reactivex.ext.web.client.WebClient;
+import io.vertx.reactivex.ext.web.codec.BodyCodec;
 import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ProbeMethodEnum;
 import se.kry.codetest.model.ServiceStatus;
-import se.kry.codetest.repository.ServiceStatusRepository;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.poller.CircuitBreaker;
+import se.kry.codetest.poller.HostConcurrencyLimiter;
+import se.kry.codetest.poller.PollClients;
+import se.kry.codetest.poller.PollGroup;
+import se.kry.codetest.poller.PollTarget;
+import se.kry.codetest.poller.PollerOptions;
+import se.kry.codetest.poller.RateLimiter;
+import se.kry.codetest.poller.StatusBatchWriter;
+import se.kry.codetest.repository.ServiceStatusRegistry;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Polls the services handed over by the scheduler.
+ * <p>
+ * Due services go through a backpressured pipeline: a bounded queue, a rate limiter, then a cap per target host and
+ * a global cap on the requests in flight. The polls waiting for a busy host wait in a queue of their host, without
+ * holding a global slot, so that a slow host does not stall the others. When a queue is full the oldest due services
+ * are skipped, and will be polled on their next slot.
+ * <p>
+ * Each service is probed with its own method, or the default one: GET, HEAD, or GET discarding the body as it arrives.
+ * Each request is bounded by the connect, idle and total timeouts of its service, and a circuit breaker per service
+ * stops polling the services failing repeatedly, only probing them from time to time until they recover.
+ * <p>
+ * The services polling the same endpoint with the same settings share a {@link PollGroup}: when one of them is due,
+ * the endpoint is requested unless a poll of it is already running, or one ran for another member less than an
+ * interval ago, and the result is handed to every member of the group. The member which last polled the endpoint
+ * polls it again on its next slot: each distinct endpoint is thus requested once per interval.
+ * <p>
+ * The latency of the requests is measured by outcome: ok, failure or timeout.
+ */
 @Slf4j
 public class BackgroundPoller {
-    private final ServiceStatusRepository servicesRepository;
-    private final WebClient webClient;
+    /**
+     * The single key of the global cap on the requests in flight
+     */
+    private static final String ALL_HOSTS = "";
 
-    public BackgroundPoller(ServiceStatusRepository repository, WebClient webClient) {
+    private final ServiceStatusRegistry registry;
+    private final StatusBatchWriter statusWriter;
+    private final PollClients clients;
+    private final PollerOptions options;
+    private final Scheduler scheduler;
+    private final RateLimiter rateLimiter;
+    private final HostConcurrencyLimiter hostLimiter;
+    private final HostConcurrencyLimiter inFlightLimiter;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    /**
+     * The poll groups by key, and the group of each service by service key. Updated under the lock of {@link #groups}.
+     */
+    private final Map<String, PollGroup> groups = new ConcurrentHashMap<>();
+    private final Map<String, PollGroup> groupOfService = new ConcurrentHashMap<>();
+    private final FlowableProcessor<ServiceStatus> dueServices = PublishProcessor.<ServiceStatus>create().toSerialized();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer okTimer;
+    private final Timer failureTimer;
+    private final Timer timeoutTimer;
+    private final Counter skippedCounter;
+    private final Counter sharedCounter;
+
+    private Disposable pipeline;
+
+    public BackgroundPoller(Vertx vertx, ServiceStatusRegistry registry, StatusBatchWriter statusWriter, PollerOptions options) {
+        this(vertx, registry, statusWriter, options, new CompositeMeterRegistry());
+    }
+
+    public BackgroundPoller(Vertx vertx, ServiceStatusRegistry registry, StatusBatchWriter statusWriter, PollerOptions options,
+                            MeterRegistry meterRegistry) {
         log.debug("Instantiating {}...", this.getClass().getName());
-        this.servicesRepository = repository;
-        this.webClient = webClient;
+        this.registry = registry;
+        this.statusWriter = statusWriter;
+        this.clients = new PollClients(vertx, options);
+        this.options = options;
+        this.scheduler = RxHelper.scheduler(vertx);
+        this.rateLimiter = new RateLimiter(options.getRateLimit(), scheduler);
+        // A host does not queue more polls than can run at once, so that a few hanging hosts cannot take every
+        // place left by the global cap
+        this.hostLimiter = new HostConcurrencyLimiter(options.getMaxPerHost(), options.getMaxInFlight());
+        this.inFlightLimiter = new HostConcurrencyLimiter(options.getMaxInFlight());
+        this.okTimer = requestTimer(meterRegistry, "ok");
+        this.failureTimer = requestTimer(meterRegistry, "failure");
+        this.timeoutTimer = requestTimer(meterRegistry, "timeout");
+        this.skippedCounter = Counter.builder("poller.skipped")
+                .description("Due services skipped because the poll queue, or the one of their host, was full")
+                .register(meterRegistry);
+        this.sharedCounter = Counter.builder("poller.shared")
+                .description("Due services skipped because a poll of the same endpoint was running or recent")
+                .register(meterRegistry);
+        Gauge.builder("poller.in_flight", inFlight, AtomicInteger::get)
+                .description("Poll requests running")
+                .register(meterRegistry);
+        Gauge.builder("poller.endpoints", groups, Map::size)
+                .description("Distinct endpoints polled")
+                .register(meterRegistry);
+
+        // A circuit breaker and a poll group membership are reset when their service is deleted or redefined
+        registry.findAll().forEach(this::join);
+        registry.addListener((previous, current) -> {
+            boolean redefined = null != previous && null != current && (previous.getVersion() != current.getVersion()
+                    || !previous.getKey().equals(current.getKey()));
+            if (null != previous && (null == current || redefined)) {
+                breakers.remove(previous.getKey());
+                leave(previous.getKey());
+            }
+            if (null != current && (null == previous || redefined)) {
+                join(current);
+            }
+        });
     }
 
-    public void pollServices() {
-        servicesRepository.findAll()
-                .subscribe(new SingleObserver<>() {
-                    @Override
-                    public void onSubscribe(@NonNull Disposable d) {
-                        log.info("Services polling requested...");
-                    }
+    /**
+     * Start consuming the due services
+     */
+    public void start() {
+        log.info("Starting poller with {}", options);
+        pipeline = dueServices
+                .onBackpressureBuffer(
+                        options.getMaxQueued(),
+                        () -> {
+                            log.warn("Poll queue is full, skipping the oldest due service");
+                            skippedCounter.increment();
+                        },
+                        BackpressureOverflowStrategy.DROP_OLDEST
+                )
+                .concatMapSingle(service -> rateLimiter.acquire().toSingleDefault(service))
+                // The host permit is taken before the global slot: the polls waiting for a busy host do not hold
+                // the slots of the other hosts. The polls pulled from the queue are thus the running ones, and the
+                // ones waiting for their host or for a slot.
+                .flatMapCompletable(
+                        service -> {
+                            PollGroup group = groupOf(service);
+                            String host = null != group ? group.getTarget().getHost() : "";
+                            return hostLimiter.limit(host, inFlightLimiter.limit(ALL_HOSTS, Completable.defer(() -> {
+                                        if (null != group && !group.tryStart(service.getKey(), System.currentTimeMillis(),
+                                                service.getPollInterval() * 1000L)) {
+                                            log.debug("Endpoint of service {} polled by another service, poll skipped", service.getName());
+                                            sharedCounter.increment();
+                                            return Completable.complete();
+                                        }
+                                        return pollSingleService(service, group);
+                                    })))
+                                    .onErrorComplete(e -> {
+                                        if (!(e instanceof RejectedExecutionException)) return false;
+                                        log.warn("Poll queue of host {} is full, skipping its oldest due service", host);
+                                        skippedCounter.increment();
+                                        return true;
+                                    });
+                        },
+                        false,
+                        options.getMaxInFlight() + options.getMaxQueued()
+                )
+                .subscribe(
+                        () -> log.info("Poller stopped"),
+                        e -> log.error("Poll pipeline failed: {}", e.getMessage())
+                );
+    }
 
-                    @Override
-                    public void onSuccess(@NonNull List<ServiceStatus> serviceStatuses) {
-                        log.info("Found services: {}", serviceStatuses.stream().map(ServiceStatus::getName).collect(Collectors.joining(",")));
+    public void stop() {
+        if (null != pipeline) {
+            pipeline.dispose();
+        }
+        clients.close();
+    }
 
-                        serviceStatuses.forEach(serviceStatus -> pollSingleService(serviceStatus));
-                    }
+    /**
+     * Queue a single service for polling. The result is handed to the status writer.
+     * Services whose circuit is open are skipped.
+     *
+     * @param service The service to poll
+     */
+    public void poll(ServiceStatus service) {
+        if (!breakerOf(service).allowRequest(System.currentTimeMillis())) {
+            log.debug("Circuit open for service {}, poll skipped", service.getName());
+            return;
+        }
+        dueServices.onNext(service);
+    }
 
-                    @Override
-                    public void onError(@NonNull Throwable e) {
-                        log.debug("Error in polling service: {}", e.getMessage());
-                        e.printStackTrace();
-                    }
-                });
+    /**
+     * @param key The key of a service
+     * @return The state of the circuit breaker of the service
+     */
+    public CircuitBreaker.State circuitState(String key) {
+        CircuitBreaker breaker = breakers.get(key);
+        return null != breaker ? breaker.getState() : CircuitBreaker.State.CLOSED;
     }
 
-    private void pollSingleService(ServiceStatus service) {
-        webClient.getAbs(service.getUrl())
-                .rxSend()
-                .subscribe(new SingleObserver<>() {
-                    @Override
-                    public void onSubscribe(@NonNull Disposable d) {
-                        log.info("Polling service {}", service.getName());
-                    }
+    /**
+     * @param group The poll group of the service, null if its url is invalid. Its poll is ended once done.
+     */
+    private Completable pollSingleService(ServiceStatus service, PollGroup group) {
+        PollTarget target = null != group ? group.getTarget() : null;
+        long idleTimeout = null != service.getIdleTimeout() ? service.getIdleTimeout() : options.getIdleTimeout();
+        long totalTimeout = null != service.getTotalTimeout() ? service.getTotalTimeout() : options.getTotalTimeout();
+        AtomicLong startedAt = new AtomicLong();
 
-                    @Override
-                    public void onSuccess(@NonNull HttpResponse<Buffer> bufferHttpResponse) {
-                        log.debug("Service {} ({}) has responded", service.getName(), service.getUrl());
-                        servicesRepository.setStatus(service.getName(), "OK")
-                                .subscribe();
+        return Single.defer(() -> null == target
+                        ? Single.error(new IllegalArgumentException("Invalid url: " + service.getUrl()))
+                        : send(service, target, idleTimeout))
+                .timeout(totalTimeout, TimeUnit.MILLISECONDS, scheduler)
+                .doOnSubscribe(d -> {
+                    log.info("Polling service {}", service.getName());
+                    inFlight.incrementAndGet();
+                    startedAt.set(System.currentTimeMillis());
+                })
+                .map(response -> {
+                    log.debug("Service {} ({}) has responded", service.getName(), service.getUrl());
+                    okTimer.record(System.currentTimeMillis() - startedAt.get(), TimeUnit.MILLISECONDS);
+                    return ServiceStatusValueEnum.OK;
+                })
+                .onErrorReturn(e -> {
+                    log.info("Service {} has failed to respond: {}", service.getUrl(), e.getMessage());
+                    // The total, idle and connect timeouts raise unrelated TimeoutException classes, not all public
+                    boolean timedOut = e.getClass().getSimpleName().endsWith("TimeoutException");
+                    (timedOut ? timeoutTimer : failureTimer)
+                            .record(System.currentTimeMillis() - startedAt.get(), TimeUnit.MILLISECONDS);
+                    return ServiceStatusValueEnum.FAIL;
+                })
+                .doFinally(() -> {
+                    inFlight.decrementAndGet();
+                    if (null != group) {
+                        group.finish(System.currentTimeMillis());
                     }
-
-                    @Override
-                    public void onError(@NonNull Throwable e) {
-                        log.info("Service {} has failed to respond", service.getUrl());
-                        servicesRepository.setStatus(service.getName(), "FAIL")
-                                .subscribe();
+                })
+                .doOnSuccess(status -> {
+                    long latency = System.currentTimeMillis() - startedAt.get();
+                    record(service, status, latency);
+                    if (null == group) {
+                        return;
                     }
-                });
+                    // The other services of the endpoint get the same result
+                    group.members().stream()
+                            .filter(key -> !key.equals(service.getKey()))
+                            .forEach(key -> registry.findByKey(key).ifPresent(member -> record(member, status, latency)));
+                })
+                .ignoreElement();
+    }
+
+    private void record(ServiceStatus service, ServiceStatusValueEnum status, long latency) {
+        if (status == ServiceStatusValueEnum.OK) {
+            breakerOf(service).onSuccess();
+        } else {
+            breakerOf(service).onFailure(System.currentTimeMillis());
+        }
+        statusWriter.record(service, status, latency);
+    }
+
+    /**
+     * Send the probe of a service
+     *
+     * @return The status code of the response
+     */
+    private Single<Integer> send(ServiceStatus service, PollTarget target, long idleTimeout) {
+        ProbeMethodEnum probeMethod = null != service.getProbeMethod() ? service.getProbeMethod() : options.getProbeMethod();
+        HttpRequest<Buffer> request = clients.get(service.getConnectTimeout(), target.isSsl())
+                .request(probeMethod == ProbeMethodEnum.HEAD ? HttpMethod.HEAD : HttpMethod.GET, target.getRequestOptions())
+                .timeout(idleTimeout);
+        // Only getting a response matters: the body can be dropped as it arrives rather than buffered whole
+        return probeMethod == ProbeMethodEnum.GET_DISCARD
+                ? request.as(BodyCodec.none()).rxSend().map(HttpResponse::statusCode)
+                : request.rxSend().map(HttpResponse::statusCode);
+    }
+
+    private CircuitBreaker breakerOf(ServiceStatus service) {
+        return breakers.computeIfAbsent(service.getKey(), key -> new CircuitBreaker(
+                options.getBreakerThreshold(), options.getBreakerCooldown(), options.getBreakerMaxCooldown()));
+    }
+
+    private static Timer requestTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("poller.request")
+                .description("Latency of the poll requests")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return The poll group of the service, joined now if it has none yet, null if its url is invalid
+     */
+    private PollGroup groupOf(ServiceStatus service) {
+        PollGroup group = groupOfService.get(service.getKey());
+        return null != group ? group : join(service);
+    }
+
+    /**
+     * Add a service to the group of its endpoint and settings, created if it is the first one, after removing it
+     * from its previous group if any
+     *
+     * @return The group joined, null if the url of the service is invalid
+     */
+    private PollGroup join(ServiceStatus service) {
+        PollTarget target;
+        try {
+            target = PollTarget.parse(service.getUrl());
+        } catch (IllegalArgumentException ex) {
+            leave(service.getKey());
+            return null;
+        }
+        String groupKey = keyOf(service, target);
+        synchronized (groups) {
+            leave(service.getKey());
+            PollGroup group = groups.computeIfAbsent(groupKey, k -> new PollGroup(k, target));
+            group.join(service.getKey());
+            groupOfService.put(service.getKey(), group);
+            return group;
+        }
+    }
+
+    /**
+     * Remove a service from its group, dropping the group if it was the last member
+     *
+     * @param serviceKey The key of the service
+     */
+    private void leave(String serviceKey) {
+        synchronized (groups) {
+            PollGroup group = groupOfService.remove(serviceKey);
+            if (null != group && group.leave(serviceKey) == 0) {
+                groups.remove(group.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return The key shared by the services polling the same endpoint the same way
+     */
+    private String keyOf(ServiceStatus service, PollTarget target) {
+        return target.getEndpoint()
+                + ' ' + (null != service.getProbeMethod() ? service.getProbeMethod() : options.getProbeMethod())
+                + ' ' + (null != service.getConnectTimeout() ? service.getConnectTimeout() : options.getConnectTimeout())
+                + ' ' + (null != service.getIdleTimeout() ? service.getIdleTimeout() : options.getIdleTimeout())
+                + ' ' + (null != service.getTotalTimeout() ? service.getTotalTimeout() : options.getTotalTimeout());
     }
 }
@@ -1,7 +1,14 @@
 package se.kry.codetest;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.Single;
 import io.reactivex.functions.Function;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -11,54 +18,259 @@ import io.vertx.reactivex.sqlclient.Row;
 import io.vertx.reactivex.sqlclient.RowSet;
 import io.vertx.reactivex.sqlclient.SqlConnection;
 import io.vertx.reactivex.sqlclient.Tuple;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+/**
+ * Access to the SQLite DB, in WAL mode so that the reads never wait for the writes.
+ * <p>
+ * The reads (SELECT queries) are served by a pool of read-only connections. All the other statements go through a
+ * single writer connection: the writes waiting for it are grouped and committed together in a single transaction,
+ * each in its own savepoint so that a failing write does not fail the others of its group. A write completes once
+ * its group is committed.
+ * <p>
+ * The writer caches the prepared statements of its connection. The read pool does not: the SQLite driver releases
+ * a SELECT statement once its rows are read, and the pool would discard it on each check-in instead of reusing it.
+ */
 @Slf4j
 public class DBConnector {
 
     private static final String DB_PATH = "poller.db";
+    private static final String DRIVER_CLASS = "org.sqlite.JDBC";
+    private static final int READ_POOL_SIZE = 8;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    /**
+     * Maximum number of writes committed in a single transaction
+     */
+    private static final int MAX_GROUP_SIZE = 256;
+    /**
+     * Per connection pragmas. NORMAL synchronous only syncs the WAL on checkpoints: a power loss may lose the last
+     * commits, but never corrupts the DB. The busy timeout covers the other processes sharing the file.
+     */
+    private static final String CONNECTION_PRAGMAS = "synchronous=NORMAL&busy_timeout=5000&cache_size=-8000&temp_store=MEMORY";
+    private static final int SQLITE_OPEN_READONLY = 1;
+    /**
+     * The migration keeping only the first service of each name, and the query listing the services it drops
+     */
+    private static final int DEDUPLICATION = 2;
+    private static final String DUPLICATES_QUERY = "SELECT name, url, created_at FROM service " +
+            "WHERE rowid NOT IN (SELECT MIN(rowid) FROM service GROUP BY name)";
+
+    /**
+     * Schema migrations, in order. Never edit an existing entry: append a new one.
+     */
+    private static final List<List<String>> MIGRATIONS = Arrays.asList(
+            // 1: initial schema
+            Collections.singletonList("CREATE TABLE IF NOT EXISTS service " +
+                    "(url VARCHAR(128) NOT NULL, " +
+                    "name VARCHAR(255) NOT NULL, " +
+                    "created_at INTEGER(8) NOT NULL, " +
+                    "status VARCHAR(8) DEFAULT \"UNKNOWN\")"),
+            // 2: unique service name and row versioning. The duplicates dropped are logged first, see DEDUPLICATION
+            Arrays.asList(
+                    "DELETE FROM service WHERE rowid NOT IN (SELECT MIN(rowid) FROM service GROUP BY name)",
+                    "ALTER TABLE service ADD COLUMN version INTEGER NOT NULL DEFAULT 0",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS service_name_idx ON service (name)"
+            ),
+            // 3: per-service poll interval, in seconds
+            Collections.singletonList("ALTER TABLE service ADD COLUMN poll_interval INTEGER NOT NULL DEFAULT 60"),
+            // 4: per-service poll timeouts, in milliseconds
+            Arrays.asList(
+                    "ALTER TABLE service ADD COLUMN connect_timeout INTEGER",
+                    "ALTER TABLE service ADD COLUMN idle_timeout INTEGER",
+                    "ALTER TABLE service ADD COLUMN total_timeout INTEGER"
+            ),
+            // 5: append-only poll history
+            Arrays.asList(
+                    "CREATE TABLE IF NOT EXISTS service_history " +
+                            "(service_name VARCHAR(255) NOT NULL, " +
+                            "checked_at INTEGER(8) NOT NULL, " +
+                            "status VARCHAR(8) NOT NULL, " +
+                            "latency INTEGER)",
+                    "CREATE INDEX IF NOT EXISTS service_history_name_time_idx ON service_history (service_name, checked_at)",
+                    "CREATE INDEX IF NOT EXISTS service_history_time_idx ON service_history (checked_at)"
+            ),
+            // 6: heartbeats of the poller nodes sharing the DB
+            Collections.singletonList("CREATE TABLE IF NOT EXISTS poller_node " +
+                    "(node_id VARCHAR(64) PRIMARY KEY, " +
+                    "heartbeat_at INTEGER(8) NOT NULL)"),
+            // 7: per-service probe method
+            Collections.singletonList("ALTER TABLE service ADD COLUMN probe_method VARCHAR(16)"),
+            // 8: service owners, the names being unique per owner. The history is by service key: the key of the
+            // services named with a separator is now prefixed by one, see ServiceStatus.keyOf
+            Arrays.asList(
+                    "ALTER TABLE service ADD COLUMN owner VARCHAR(64) NOT NULL DEFAULT ''",
+                    "UPDATE service_history SET service_name = '/' || service_name WHERE service_name LIKE '%/%'",
+                    "DROP INDEX IF EXISTS service_name_idx",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS service_owner_name_idx ON service (owner, name)"
+            ),
+            // 9: the history follows its service, in the same transaction: deleted with it, moved when it is renamed
+            Arrays.asList(
+                    "CREATE TRIGGER IF NOT EXISTS service_history_delete AFTER DELETE ON service BEGIN " +
+                            "DELETE FROM service_history WHERE service_name = " + serviceKey("old") + "; END",
+                    "CREATE TRIGGER IF NOT EXISTS service_history_rename AFTER UPDATE OF owner, name ON service " +
+                            "WHEN old.owner != new.owner OR old.name != new.name BEGIN " +
+                            "UPDATE service_history SET service_name = " + serviceKey("new") +
+                            " WHERE service_name = " + serviceKey("old") + "; END"
+            )
+    );
+
+    private final JDBCPool writerPool;
+    private final JDBCPool readerPool;
+
+    private final Object writeLock = new Object();
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private boolean writing = false;
+
+    private final Timer readWaitTimer;
+    private final Timer writeWaitTimer;
+    private final Timer readTimer;
+    private final Timer writeTimer;
+    private final Timer batchTimer;
+    private final Timer commitTimer;
+    private final DistributionSummary groupSizeSummary;
 
-    @Getter
-    private final JDBCPool pool;
+    /**
+     * A write waiting for its group to be committed
+     */
+    private static class PendingWrite {
+        private final String query;
+        private final List<Tuple> params;
+        private final boolean batch;
+        private final MaybeEmitter<RowSet<Row>> emitter;
+        private final long queuedAt = System.nanoTime();
+        // Set on the thread running the write, read on the one completing the group
+        private volatile RowSet<Row> result;
+        private volatile Throwable error;
+
+        private PendingWrite(String query, List<Tuple> params, boolean batch, MaybeEmitter<RowSet<Row>> emitter) {
+            this.query = query;
+            this.params = params;
+            this.batch = batch;
+            this.emitter = emitter;
+        }
+    }
 
     public DBConnector(Vertx vertx, String path) {
+        // The meters of an empty composite registry discard everything
+        this(vertx, path, new CompositeMeterRegistry());
+    }
+
+    /**
+     * @param meterRegistry Registry of the time spent waiting for a connection and running the queries
+     */
+    public DBConnector(Vertx vertx, String path, MeterRegistry meterRegistry) {
         log.debug("Instantiating {}", this.getClass().getName());
-        String dbUrl = "jdbc:sqlite:" + path;
-        String driverClass = "org.sqlite.JDBC";
-        int maxPoolSize = 30;
-        log.debug("Creating JDBC connection pool with params: [url: {}, driver_class: {}, max_pool_size: {}]...", dbUrl, driverClass, maxPoolSize);
-        pool = JDBCPool.pool(vertx,
+        String dbUrl = "jdbc:sqlite:" + path + "?" + CONNECTION_PRAGMAS;
+        log.debug("Creating JDBC connection pools with params: [url: {}, driver_class: {}, read_pool_size: {}]...", dbUrl, DRIVER_CLASS, READ_POOL_SIZE);
+        writerPool = JDBCPool.pool(vertx,
                 new JsonObject()
                         .put("url", dbUrl)
-                        .put("driver_class", driverClass)
-                        .put("max_pool_size", maxPoolSize)
+                        .put("driver_class", DRIVER_CLASS)
+                        .put("max_pool_size", 1)
+                        .put("min_pool_size", 1)
+                        .put("initial_pool_size", 1)
+                        .put("max_statements_per_connection", STATEMENT_CACHE_SIZE)
         );
+        readerPool = JDBCPool.pool(vertx,
+                new JsonObject()
+                        .put("url", dbUrl + "&open_mode=" + SQLITE_OPEN_READONLY)
+                        .put("driver_class", DRIVER_CLASS)
+                        .put("max_pool_size", READ_POOL_SIZE)
+        );
+
+        readWaitTimer = waitTimer(meterRegistry, "read");
+        writeWaitTimer = waitTimer(meterRegistry, "write");
+        readTimer = queryTimer(meterRegistry, "read", "query");
+        writeTimer = queryTimer(meterRegistry, "write", "query");
+        batchTimer = queryTimer(meterRegistry, "write", "batch");
+        commitTimer = Timer.builder("db.commit")
+                .description("Time spent committing a group of writes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        groupSizeSummary = DistributionSummary.builder("db.commit.writes")
+                .description("Number of writes committed together")
+                .register(meterRegistry);
+    }
+
+    public DBConnector(Vertx vertx) {
+        this(vertx, DB_PATH);
     }
 
     /**
-     * Execute the queries to prepare the DB
+     * Switch the DB to WAL mode, then bring its schema up to date by running the migrations it has not seen yet.
+     * The index of the last applied migration is stored in the SQLite user_version pragma.
      *
      * @return Async result
      */
     public Completable start() {
         log.info("Called DBConnector.start() -> Initializing DB...");
-        return query("CREATE TABLE IF NOT EXISTS service " +
-                "(url VARCHAR(128) NOT NULL, " +
-                "name VARCHAR(255) NOT NULL, " +
-                "created_at INTEGER(8) NOT NULL, " +
-                "status VARCHAR(8) DEFAULT \"UNKNOWN\");")
-                .doOnSubscribe(disposable -> log.debug("Query for DB preparation..."))
-                .doAfterSuccess(rows -> log.info("DB Initialised successfully"))
-                .ignoreElement();
+        // Runs on the writer connection, before any other write can be queued
+        return writerPool.rxGetConnection()
+                .flatMapCompletable(sqlConnection -> sqlConnection.query("PRAGMA journal_mode=WAL").rxExecute()
+                        .flatMap(rows -> sqlConnection.query("PRAGMA user_version").rxExecute())
+                        .map(rows -> rows.iterator().hasNext() ? rows.iterator().next().getInteger(0) : 0)
+                        .doOnSubscribe(disposable -> log.debug("Query for DB preparation..."))
+                        .flatMapCompletable(schemaVersion -> {
+                            log.debug("DB schema version: {}, latest: {}", schemaVersion, MIGRATIONS.size());
+                            Completable migrations = Completable.complete();
+                            for (int version = schemaVersion + 1; version <= MIGRATIONS.size(); version++) {
+                                migrations = migrations.andThen(migrate(sqlConnection, version));
+                            }
+                            return migrations;
+                        })
+                        .doFinally(sqlConnection::close))
+                .doOnComplete(() -> log.info("DB Initialised successfully"));
     }
 
-    public DBConnector(Vertx vertx) {
-        this(vertx, DB_PATH);
+    /**
+     * Run a single migration and record its index, in a single transaction
+     *
+     * @param sqlConnection The connection running the migration
+     * @param version       The index of the migration, starting at 1
+     * @return Async result
+     */
+    private Completable migrate(SqlConnection sqlConnection, int version) {
+        List<String> statements = new ArrayList<>(MIGRATIONS.get(version - 1));
+        // PRAGMA does not accept placeholders
+        statements.add("PRAGMA user_version = " + version);
+
+        return sqlConnection.rxBegin()
+                .flatMapCompletable(transaction -> (version == DEDUPLICATION ? logDuplicates(sqlConnection) : Completable.complete())
+                        .andThen(Flowable.fromIterable(statements))
+                        .concatMapCompletable(statement -> sqlConnection.query(statement).rxExecute().ignoreElement())
+                        .andThen(transaction.rxCommit())
+                        .onErrorResumeNext(error -> transaction.rxRollback()
+                                .onErrorComplete()
+                                .andThen(Completable.error(error))))
+                .doOnSubscribe(disposable -> log.info("Applying DB migration {}...", version));
+    }
+
+    /**
+     * Log the services about to be dropped by the deduplication migration, the only record of them left
+     */
+    private Completable logDuplicates(SqlConnection sqlConnection) {
+        return sqlConnection.query(DUPLICATES_QUERY).rxExecute()
+                .doOnSuccess(rows -> {
+                    if (rows.size() == 0) {
+                        return;
+                    }
+                    log.warn("Dropping {} service(s) whose name is used by an older one", rows.size());
+                    rows.forEach(row -> log.warn("Dropped service: name {}, url {}, created at {}",
+                            row.getString("name"), row.getString("url"), row.getLong("created_at")));
+                })
+                .ignoreElement();
     }
 
     /**
@@ -72,7 +284,8 @@ public class DBConnector {
     }
 
     /**
-     * Execute a sql query on the SQLite DB and returns the result
+     * Execute a sql query on the SQLite DB and returns the result. SELECT queries run on the read pool, the other
+     * ones are queued for the writer connection.
      *
      * @param query  The SQLite query to prepare
      * @param params A list to replace the placeholders in the query
@@ -89,13 +302,206 @@ public class DBConnector {
         log.debug("Query: ({}) Params: {}", query, params.toString());
 
         String finalQuery = query;
+        Tuple tuple = Tuple.from(params.stream().toArray());
+
+        if (!isRead(finalQuery)) {
+            return write(finalQuery, Collections.singletonList(tuple), false);
+        }
 
-        return pool.rxWithConnection((Function<SqlConnection, Maybe<RowSet<Row>>>) sqlConnection ->
-                sqlConnection
+        return Maybe.defer(() -> {
+            long requestedAt = System.nanoTime();
+            return readerPool.rxWithConnection((Function<SqlConnection, Maybe<RowSet<Row>>>) sqlConnection -> {
+                long acquiredAt = System.nanoTime();
+                readWaitTimer.record(acquiredAt - requestedAt, TimeUnit.NANOSECONDS);
+                return sqlConnection
                         .preparedQuery(finalQuery)
-                        .rxExecute(Tuple.from(params.stream().toArray()))
+                        .rxExecute(tuple)
                         .doOnSuccess(rows -> log.debug("Query success. Fetched {} row(s)", StreamSupport.stream(rows.spliterator(), false).count()))
-                        .toMaybe()
-        );
+                        .doFinally(() -> readTimer.record(System.nanoTime() - acquiredAt, TimeUnit.NANOSECONDS))
+                        .toMaybe();
+            });
+        });
+    }
+
+    /**
+     * Execute the same sql query once per parameter list, as a single batch committed at once
+     *
+     * @param query       The SQLite query to prepare
+     * @param paramsBatch One list of parameters per execution
+     * @return Async result
+     */
+    public Completable batch(String query, List<JsonArray> paramsBatch) {
+        if (StringUtils.isBlank(query)) {
+            return Completable.error(new InvalidParameterException("Query is null or empty"));
+        }
+        if (paramsBatch.isEmpty()) {
+            return Completable.complete();
+        }
+
+        log.debug("Batch query: ({}) Executions: {}", query, paramsBatch.size());
+
+        List<Tuple> tuples = paramsBatch.stream()
+                .map(params -> Tuple.from(params.stream().toArray()))
+                .collect(Collectors.toList());
+
+        return write(query, tuples, true)
+                .doOnSuccess(rows -> log.debug("Batch success. {} execution(s) committed", tuples.size()))
+                .ignoreElement();
+    }
+
+    /**
+     * Execute the same sql write query once per parameter list, as a single batch committed at once, and count the
+     * rows changed by each execution: an INSERT OR IGNORE, for instance, tells which rows were ignored
+     *
+     * @param query       The SQLite query to prepare
+     * @param paramsBatch One list of parameters per execution
+     * @return A future holding the number of rows changed by each execution, in order
+     */
+    public Single<List<Integer>> batchCounts(String query, List<JsonArray> paramsBatch) {
+        if (StringUtils.isBlank(query)) {
+            return Single.error(new InvalidParameterException("Query is null or empty"));
+        }
+        if (paramsBatch.isEmpty()) {
+            return Single.just(Collections.emptyList());
+        }
+
+        log.debug("Batch query: ({}) Executions: {}", query, paramsBatch.size());
+
+        List<Tuple> tuples = paramsBatch.stream()
+                .map(params -> Tuple.from(params.stream().toArray()))
+                .collect(Collectors.toList());
+
+        return write(query, tuples, true)
+                .toSingle()
+                // The JDBC client returns the count of each execution as a row
+                .map(rows -> StreamSupport
+                        .stream(rows.spliterator(), false)
+                        .map(row -> row.getInteger(0))
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * @param row The row of the service table, old or new in a trigger
+     * @return The SQL expression of the key of the service of the row, see ServiceStatus.keyOf
+     */
+    private static String serviceKey(String row) {
+        return "(CASE WHEN " + row + ".owner != '' THEN " + row + ".owner || '/' || " + row + ".name " +
+                "WHEN instr(" + row + ".name, '/') > 0 THEN '/' || " + row + ".name ELSE " + row + ".name END)";
+    }
+
+    private static boolean isRead(String query) {
+        return StringUtils.startsWithIgnoreCase(query.trim(), "SELECT");
+    }
+
+    /**
+     * Queue a write for the writer connection
+     */
+    private Maybe<RowSet<Row>> write(String query, List<Tuple> params, boolean batch) {
+        return Maybe.create(emitter -> {
+            synchronized (writeLock) {
+                pendingWrites.addLast(new PendingWrite(query, params, batch, emitter));
+            }
+            drainWrites();
+        });
+    }
+
+    /**
+     * Commit the pending writes, in groups of up to {@link #MAX_GROUP_SIZE}, until there are none left.
+     * Only one group runs at a time: the writes queued meanwhile make the next group.
+     */
+    private void drainWrites() {
+        List<PendingWrite> group = new ArrayList<>();
+        synchronized (writeLock) {
+            if (writing || pendingWrites.isEmpty()) {
+                return;
+            }
+            writing = true;
+            while (group.size() < MAX_GROUP_SIZE && !pendingWrites.isEmpty()) {
+                group.add(pendingWrites.pollFirst());
+            }
+        }
+
+        writerPool.rxGetConnection()
+                .flatMapCompletable(sqlConnection -> {
+                    long acquiredAt = System.nanoTime();
+                    group.forEach(write -> writeWaitTimer.record(acquiredAt - write.queuedAt, TimeUnit.NANOSECONDS));
+                    return sqlConnection.rxBegin()
+                            .flatMapCompletable(transaction -> Flowable.fromIterable(group)
+                                    .concatMapCompletable(write -> runInSavepoint(sqlConnection, write))
+                                    .andThen(Completable.defer(() -> {
+                                        long commitStart = System.nanoTime();
+                                        return transaction.rxCommit()
+                                                .doOnComplete(() -> commitTimer.record(System.nanoTime() - commitStart, TimeUnit.NANOSECONDS));
+                                    }))
+                                    .onErrorResumeNext(error -> transaction.rxRollback()
+                                            .onErrorComplete()
+                                            .andThen(Completable.error(error))))
+                            .doFinally(sqlConnection::close);
+                })
+                .subscribe(
+                        () -> {
+                            groupSizeSummary.record(group.size());
+                            group.forEach(write -> {
+                                if (null != write.error) write.emitter.onError(write.error);
+                                else if (null != write.result) write.emitter.onSuccess(write.result);
+                                else write.emitter.onComplete();
+                            });
+                            onGroupDone();
+                        },
+                        error -> {
+                            log.error("Unable to commit {} write(s): {}", group.size(), error.getMessage());
+                            group.forEach(write -> write.emitter.onError(null != write.error ? write.error : error));
+                            onGroupDone();
+                        }
+                );
+    }
+
+    private void onGroupDone() {
+        synchronized (writeLock) {
+            writing = false;
+        }
+        drainWrites();
+    }
+
+    /**
+     * Run a write in a savepoint, rolled back if the write fails. The failure is kept for its caller only.
+     */
+    private Completable runInSavepoint(SqlConnection sqlConnection, PendingWrite write) {
+        Single<RowSet<Row>> execution = write.batch
+                ? sqlConnection.preparedQuery(write.query).rxExecuteBatch(write.params)
+                : sqlConnection.preparedQuery(write.query).rxExecute(write.params.get(0));
+        Timer timer = write.batch ? batchTimer : writeTimer;
+
+        return sqlConnection.query("SAVEPOINT write").rxExecute()
+                .flatMap(x -> {
+                    long startedAt = System.nanoTime();
+                    return execution.doFinally(() -> timer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS));
+                })
+                .doOnSuccess(rows -> write.result = rows)
+                .flatMap(rows -> sqlConnection.query("RELEASE write").rxExecute())
+                .ignoreElement()
+                .onErrorResumeNext(error -> {
+                    write.error = error;
+                    return sqlConnection.query("ROLLBACK TO write").rxExecute()
+                            .flatMap(x -> sqlConnection.query("RELEASE write").rxExecute())
+                            .ignoreElement();
+                });
+    }
+
+    private static Timer waitTimer(MeterRegistry meterRegistry, String pool) {
+        return Timer.builder("db.pool.wait")
+                .description("Time spent waiting for a connection of the pool")
+                .tag("pool", pool)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer queryTimer(MeterRegistry meterRegistry, String pool, String type) {
+        return Timer.builder("db.query")
+                .description("Time spent running a query, once a connection is acquired")
+                .tag("pool", pool)
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 }
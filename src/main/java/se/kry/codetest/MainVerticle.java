@@ -1,38 +1,78 @@
 package se.kry.codetest;
 
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
-import io.vertx.core.http.HttpMethod;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.client.WebClientOptions;
 import io.vertx.reactivex.config.ConfigRetriever;
 import io.vertx.reactivex.core.AbstractVerticle;
-import io.vertx.reactivex.ext.web.Router;
-import io.vertx.reactivex.ext.web.client.WebClient;
-import io.vertx.reactivex.ext.web.handler.BodyHandler;
-import io.vertx.reactivex.ext.web.handler.CorsHandler;
-import io.vertx.reactivex.ext.web.handler.StaticHandler;
 import lombok.extern.slf4j.Slf4j;
-import se.kry.codetest.controller.ServiceStatusController;
+import se.kry.codetest.cluster.ClusterOptions;
+import se.kry.codetest.cluster.NodeMembership;
+import se.kry.codetest.metrics.VertxProbes;
+import se.kry.codetest.poller.AdaptiveInterval;
+import se.kry.codetest.poller.PollScheduler;
+import se.kry.codetest.poller.PollerOptions;
+import se.kry.codetest.poller.StatusBatchWriter;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusBusClient;
+import se.kry.codetest.repository.ServiceStatusRegistry;
 import se.kry.codetest.repository.ServiceStatusRepository;
+import se.kry.codetest.storage.LogServiceStorage;
+import se.kry.codetest.storage.ServiceStorage;
+import se.kry.codetest.storage.SqliteServiceStorage;
+import se.kry.codetest.storage.StorageOptions;
 
-import java.util.Arrays;
-import java.util.HashSet;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
+/**
+ * Initializes the DB and runs the single instance components: the poller, the status writer, the history retention
+ * and the handler of the service writes. The HTTP API is deployed as {@link ApiVerticle} instances.
+ */
 @Slf4j
 public class MainVerticle extends AbstractVerticle {
 
     private final static String DEFAULT_DB = "poller.db";
     private final static int DEFAULT_PORT = 8080;
+    private final static long STATUS_FLUSH_PERIOD = 1000;
+    private final static long HISTORY_RETENTION_PERIOD = 60 * 60 * 1000;
+    private final static int HISTORY_RETENTION_CHUNK = 5000;
+    private final static int DEFAULT_HISTORY_RETENTION_DAYS = 30;
 
+    private ServiceStatusRegistry serviceRegistry;
     private ServiceStatusRepository serviceRepository;
-    private ServiceStatusController serviceStatusController;
+    private ServiceHistoryRepository historyRepository;
+    private StatusBatchWriter statusWriter;
     private BackgroundPoller poller;
+    private PollScheduler scheduler;
+    private AdaptiveInterval intervals;
+    private NodeMembership membership;
+    private LogServiceStorage logStorage;
+    private VertxProbes probes;
+    /**
+     * The periodic tasks, cancelled first on stop
+     */
+    private final List<Long> timers = new ArrayList<>();
+    /**
+     * One registry per deployment, shared by all the components and scraped by the API instances
+     */
+    private final PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
 
     private Integer port;
+    private PollerOptions pollerOptions;
+    private ClusterOptions clusterOptions;
+    private StorageOptions storageOptions;
+    private int historyRetentionDays = DEFAULT_HISTORY_RETENTION_DAYS;
+    private int apiInstances = Runtime.getRuntime().availableProcessors();
     private final String dbPath;
 
     public MainVerticle() {
@@ -54,26 +94,30 @@ public class MainVerticle extends AbstractVerticle {
 
     @Override
     public Completable rxStart() {
-        final Router router = Router.router(vertx);
-        final DBConnector connector = new DBConnector(vertx, this.dbPath);
-        final WebClient webClient = WebClient.create(
-                vertx,
-                new WebClientOptions()
-                        .setFollowRedirects(true)
-                        .setVerifyHost(false)
-                        .setTrustAll(true)
-        );
-
-        JsonObject configKeys = new JsonObject().put("keys", new JsonArray().add("PORT"));
+        final long startedAt = System.currentTimeMillis();
+        final DBConnector connector = new DBConnector(vertx, this.dbPath, meterRegistry);
+
+        JsonArray envKeys = new JsonArray().add("PORT").add("HISTORY_RETENTION_DAYS").add("API_INSTANCES");
+        PollerOptions.KEYS.forEach(envKeys::add);
+        ClusterOptions.KEYS.forEach(envKeys::add);
+        StorageOptions.KEYS.forEach(envKeys::add);
+        JsonObject configKeys = new JsonObject().put("keys", envKeys);
 
         ConfigRetriever retriever = ConfigRetriever
                 .create(
                         vertx,
-                        new ConfigRetrieverOptions().addStore(new ConfigStoreOptions()
-                                .setType("env")
-                                .setConfig(configKeys))
+                        new ConfigRetrieverOptions()
+                                // The deployment config, overridden by the env vars
+                                .addStore(new ConfigStoreOptions()
+                                        .setType("json")
+                                        .setConfig(config()))
+                                .addStore(new ConfigStoreOptions()
+                                        .setType("env")
+                                        .setConfig(configKeys))
                 );
 
+        // The step running, logged with the cause of a failure by the single error handler at the end
+        final AtomicReference<String> step = new AtomicReference<>("Unable to retrieve the config");
         return retriever.rxGetConfig()
                 .flatMap(config -> {
                     Integer configPort = config.getInteger("PORT");
@@ -81,58 +125,168 @@ public class MainVerticle extends AbstractVerticle {
                         log.info("Custom port requested by user: {}", configPort);
                         this.port = configPort;
                     }
+                    this.pollerOptions = PollerOptions.fromConfig(config);
+                    this.clusterOptions = ClusterOptions.fromConfig(config);
+                    this.storageOptions = StorageOptions.fromConfig(config);
+                    if (clusterOptions.isEnabled() && storageOptions.getEngine() == StorageOptions.Engine.LOG) {
+                        return Single.error(new IllegalArgumentException("The log storage engine does not support the cluster mode"));
+                    }
+                    this.historyRetentionDays = Math.max(1, config.getInteger("HISTORY_RETENTION_DAYS", DEFAULT_HISTORY_RETENTION_DAYS));
+                    this.apiInstances = Math.max(1, config.getInteger("API_INSTANCES", this.apiInstances));
                     return Single.just(config);
                 })
-                .doOnError(error -> handleInitError("Unable to retrieve the config"))
-                .flatMap(config -> connector.start().toSingleDefault(true))
-                .doOnError(error -> handleInitError("Unable to initialize DB"))
+                .flatMap(config -> {
+                    step.set("Unable to initialize DB");
+                    return connector.start().toSingleDefault(true);
+                })
                 .flatMap(upstream -> {
                     log.info("Connection to DB successful");
+                    step.set("Unable to open the " + storageOptions.getEngine() + " storage");
+                    historyRepository = new ServiceHistoryRepository(connector);
+                    return openStorage(connector);
+                })
+                .flatMap(storage -> {
+                    step.set("Unable to load the services");
+                    serviceRegistry = new ServiceStatusRegistry();
+                    serviceRepository = new ServiceStatusRepository(storage, serviceRegistry);
+                    return serviceRepository.load().toSingleDefault(true);
+                })
+                .flatMap(upstream -> {
+                    step.set("Unable to join the poller group");
+                    if (!clusterOptions.isEnabled()) {
+                        return Single.just(true);
+                    }
+                    membership = new NodeMembership(vertx, connector, clusterOptions, () -> {
+                        if (null != scheduler) scheduler.rebalance();
+                    });
+                    return membership.start().toSingleDefault(true);
+                })
+                .flatMap(upstream -> {
+                    step.set("Unable to load the last checks of the services");
+                    intervals = new AdaptiveInterval(pollerOptions);
+                    long now = System.currentTimeMillis();
+                    return historyRepository.findLastChecks(serviceRegistry.findAll()
+                                    .stream()
+                                    .filter(service -> null == membership || membership.owns(service.getKey()))
+                                    .collect(Collectors.toList()),
+                            service -> now - intervals.horizonOf(service));
+                })
+                .flatMap(lastChecks -> {
                     log.debug("Starting services");
+                    step.set("Unable to start the service poller");
 
-                    serviceRepository = new ServiceStatusRepository(connector);
-                    serviceStatusController = new ServiceStatusController(serviceRepository);
-                    poller = new BackgroundPoller(serviceRepository, webClient);
+                    ServiceStatusBusClient.serve(vertx.eventBus(), serviceRepository);
+                    statusWriter = new StatusBatchWriter(serviceRepository, historyRepository, serviceRegistry);
+                    poller = new BackgroundPoller(vertx, serviceRegistry, statusWriter, pollerOptions, meterRegistry);
+                    poller.start();
 
-                    router.route().handler(BodyHandler.create());
-                    vertx.setPeriodic(1000 * 60, timerId -> poller.pollServices());
-                    setRoutes(router);
+                    if (null != membership) {
+                        scheduler = new PollScheduler(vertx, serviceRegistry, poller::poll, membership::owns, meterRegistry, intervals);
+                        // Services created, updated or deleted through the other nodes
+                        timers.add(vertx.setPeriodic(clusterOptions.getSyncPeriod(), timerId -> serviceRepository.sync()
+                                .subscribe(() -> {}, error -> log.error("Service sync failed: {}", error.getMessage()))));
+                    } else {
+                        scheduler = new PollScheduler(vertx, serviceRegistry, poller::poll, name -> true, meterRegistry, intervals);
+                    }
+                    // Resume the schedule and the stability of each service from its last checks, the statuses being
+                    // loaded already
+                    scheduler.start(lastChecks, startedAt);
+                    // Started once per deployment, the worker pool being shared by all the verticles
+                    probes = new VertxProbes(vertx, meterRegistry);
+                    probes.start();
+                    timers.add(vertx.setPeriodic(STATUS_FLUSH_PERIOD, timerId -> statusWriter.flush()
+                            .subscribe(() -> {}, error -> log.error("Status flush failed: {}", error.getMessage()))));
+                    timers.add(vertx.setPeriodic(HISTORY_RETENTION_PERIOD, timerId -> purgeHistory()));
                     log.debug("Services started");
 
                     return Single.just(true);
                 })
                 .flatMapCompletable(upstream -> {
-                    log.debug("Starting server...");
-                    return vertx.createHttpServer()
-                            .requestHandler(router)
-                            .rxListen(this.port)
+                    log.debug("Starting {} API instance(s)...", apiInstances);
+                    step.set("Unable to start the API");
+                    // The registry, the history repository and the next checks of the scheduler are thread safe,
+                    // so all the instances share them
+                    return vertx.rxDeployVerticle(
+                                    () -> new ApiVerticle(this.port, serviceRegistry, historyRepository, scheduler, meterRegistry),
+                                    new DeploymentOptions().setInstances(apiInstances))
                             .ignoreElement();
                 })
                 .doOnComplete(() -> log.info("KRY code test service started on port {}", this.port))
-                .doOnError(error -> handleInitError("Unable to start the service poller"));
+                .doOnError(error -> handleInitError(step.get(), error));
     }
 
-    private void setRoutes(Router router) {
-        String apiPrefix = "/api/v1";
+    /**
+     * Stop polling, persist the last results, then leave the poller group and close the storage
+     */
+    @Override
+    public Completable rxStop() {
+        if (null != probes) {
+            probes.stop();
+        }
+        timers.forEach(vertx::cancelTimer);
+        timers.clear();
+        if (null != scheduler) {
+            scheduler.stop();
+        }
+        if (null != poller) {
+            poller.stop();
+        }
+        Completable results = null == statusWriter ? Completable.complete() : statusWriter.drain()
+                .doOnError(error -> log.error("Unable to persist the last poll results: {}", error.getMessage()))
+                .onErrorComplete();
+        Completable storage = null == logStorage ? Completable.complete() : logStorage.close()
+                .doOnError(error -> log.error("Unable to close the log storage: {}", error.getMessage()))
+                .onErrorComplete();
+        if (null == membership) {
+            return results.andThen(storage);
+        }
+        return results
+                .andThen(membership.stop())
+                .doOnError(error -> log.error("Unable to leave the poller group: {}", error.getMessage()))
+                .onErrorComplete()
+                .andThen(storage);
+    }
 
-        // Resource distribution handler
-        router.route("/*").handler(StaticHandler.create());
+    /**
+     * Open the storage engine of the services. The log engine starting without any file imports the services of the
+     * DB, to keep them when switching engines.
+     *
+     * @param connector The connector of the initialized DB
+     * @return A future holding the storage
+     */
+    private Single<ServiceStorage> openStorage(DBConnector connector) {
+        SqliteServiceStorage sqliteStorage = new SqliteServiceStorage(connector);
+        if (storageOptions.getEngine() == StorageOptions.Engine.SQLITE) {
+            return Single.just(sqliteStorage);
+        }
 
-        // Cors
-        router.routeWithRegex("\\/api\\/v1\\/service(\\/.*)?").handler(
-                CorsHandler.create("^(https?:\\/\\/)?localhost(:[0-9]{1,5})?")
-                        .allowedMethods(new HashSet<>(Arrays.asList(HttpMethod.GET, HttpMethod.POST, HttpMethod.DELETE, HttpMethod.OPTIONS)))
-        );
+        return LogServiceStorage.open(vertx, Paths.get(storageOptions.dirFor(dbPath)), storageOptions.getCompactSize(),
+                        historyRepository)
+                .<ServiceStorage>flatMap(storage -> {
+                    logStorage = storage;
+                    if (!storage.isFresh()) {
+                        return Single.just(storage);
+                    }
+                    return sqliteStorage.loadAll()
+                            .flatMapCompletable(storage::importAll)
+                            .toSingleDefault(storage);
+                });
+    }
 
-        // Routes
-        router.get(apiPrefix + "/service").handler(this.serviceStatusController::serviceGet);
-        router.post(apiPrefix + "/service").handler(this.serviceStatusController::servicePost);
-        router.delete(apiPrefix + "/service/:name").handler(this.serviceStatusController::serviceDelete);
-        router.put(apiPrefix + "/service/:name").handler(this.serviceStatusController::serviceUpdate);
+    /**
+     * Delete the history entries older than the retention, by small chunks to leave room for the poller's writes
+     */
+    private void purgeHistory() {
+        long before = System.currentTimeMillis() - historyRetentionDays * 24L * 60 * 60 * 1000;
+        historyRepository.deleteOlderThan(before, HISTORY_RETENTION_CHUNK)
+                .subscribe(
+                        deleted -> log.info("{} history entries older than {} days deleted", deleted, historyRetentionDays),
+                        error -> log.error("History purge failed: {}", error.getMessage())
+                );
     }
 
-    private void handleInitError(String message) {
-        log.error(message);
+    private void handleInitError(String message, Throwable cause) {
+        log.error("{}: {}", message, cause.getMessage(), cause);
         vertx.close();
     }
 }
@@ -0,0 +1,63 @@
+package se.kry.codetest.cluster;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Sharding of the polls between several nodes sharing the same DB, read from the environment
+ */
+@Data
+public class ClusterOptions {
+    public static final String ENABLED = "CLUSTER_ENABLED";
+    public static final String NODE_ID = "CLUSTER_NODE_ID";
+    public static final String HEARTBEAT_PERIOD = "CLUSTER_HEARTBEAT_PERIOD";
+    public static final String NODE_TIMEOUT = "CLUSTER_NODE_TIMEOUT";
+    public static final String SYNC_PERIOD = "CLUSTER_SYNC_PERIOD";
+
+    public static final List<String> KEYS = Arrays.asList(ENABLED, NODE_ID, HEARTBEAT_PERIOD, NODE_TIMEOUT, SYNC_PERIOD);
+
+    /**
+     * When disabled, the node polls every service and never reloads the services from the DB
+     */
+    private boolean enabled = false;
+    /**
+     * Unique id of the node. Random by default: a restarted node joins as a new one.
+     */
+    private String nodeId = UUID.randomUUID().toString();
+    /**
+     * Time between two heartbeats of the node, in milliseconds
+     */
+    private long heartbeatPeriod = 2_000;
+    /**
+     * Time without heartbeat after which a node is considered gone and its services are taken over, in milliseconds
+     */
+    private long nodeTimeout = 10_000;
+    /**
+     * Time between two reloads of the services from the DB, to pick up the changes made through the other nodes,
+     * in milliseconds
+     */
+    private long syncPeriod = 5_000;
+
+    /**
+     * Create the options from a config holding the CLUSTER_* keys. Missing keys keep their default value.
+     *
+     * @param config The config
+     * @return A ClusterOptions instance
+     */
+    public static ClusterOptions fromConfig(@NonNull JsonObject config) {
+        ClusterOptions output = new ClusterOptions();
+        output.setEnabled(config.getBoolean(ENABLED, output.isEnabled()));
+        // The env store parses numeric values: a node id like "1" comes as a number
+        output.setNodeId(String.valueOf(config.getValue(NODE_ID, output.getNodeId())));
+        output.setHeartbeatPeriod(Math.max(100, config.getLong(HEARTBEAT_PERIOD, output.getHeartbeatPeriod())));
+        output.setNodeTimeout(Math.max(output.getHeartbeatPeriod() * 2, config.getLong(NODE_TIMEOUT, output.getNodeTimeout())));
+        output.setSyncPeriod(Math.max(100, config.getLong(SYNC_PERIOD, output.getSyncPeriod())));
+
+        return output;
+    }
+}
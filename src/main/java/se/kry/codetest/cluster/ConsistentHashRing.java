@@ -0,0 +1,73 @@
+package se.kry.codetest.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring assigning keys to nodes.
+ * <p>
+ * Each node is placed on the ring at {virtualNodes} positions, and a key belongs to the first node found clockwise
+ * from the key's own position. When a node joins or leaves, only the keys of the ring segments it gains or loses
+ * move, about 1/N of them, and the virtual nodes keep the share of each node close to even.
+ * <p>
+ * Immutable: a membership change builds a new ring.
+ */
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    /**
+     * @param nodes        The ids of the nodes. Every node must build its ring from the same ids to agree on the owners.
+     * @param virtualNodes The number of positions of each node on the ring
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) throw new IllegalArgumentException("virtualNodes must be positive");
+
+        this.nodes = new TreeSet<>(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the unlikely collision, the smallest node id (iterated first) keeps the position on every node
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * @param key The key to place, e.g. a service name
+     * @return The id of the node owning the key, null if the ring is empty
+     */
+    public String ownerOf(String key) {
+        if (ring.isEmpty()) return null;
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return null != entry ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 64-bit FNV-1a, followed by a finalizer spreading the bits of short, similar strings over the whole ring.
+     * Unlike String.hashCode, it only depends on the bytes of the key, so all the nodes place keys identically.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,132 @@
+package se.kry.codetest.cluster;
+
+import io.reactivex.Completable;
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.DBConnector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.StreamSupport;
+
+/**
+ * Membership of this node in the group of poller nodes sharing the DB.
+ * <p>
+ * Each node records a heartbeat in the poller_node table, and considers alive the nodes whose last heartbeat is
+ * more recent than the node timeout. The live nodes form a {@link ConsistentHashRing} deciding which node polls
+ * which service. As the nodes refresh their view one heartbeat apart, a service may be polled by two nodes, or none,
+ * for up to a heartbeat period while a node joins or leaves.
+ */
+@Slf4j
+public class NodeMembership {
+    private final Vertx vertx;
+    private final DBConnector dbConnector;
+    private final ClusterOptions options;
+    private final Runnable onChange;
+
+    private volatile ConsistentHashRing ring;
+    private Completable lastHeartbeat = Completable.complete();
+    private boolean stopped = false;
+    private long timerId = -1;
+
+    /**
+     * @param onChange Called after the set of live nodes changed, on the context the membership was started on
+     */
+    public NodeMembership(Vertx vertx, DBConnector dbConnector, ClusterOptions options, Runnable onChange) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.vertx = vertx;
+        this.dbConnector = dbConnector;
+        this.options = options;
+        this.onChange = onChange;
+        this.ring = new ConsistentHashRing(Collections.singletonList(options.getNodeId()), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Join the group and start the heartbeats
+     *
+     * @return A future completed once the first view of the group is known
+     */
+    public Completable start() {
+        return Completable.defer(this::heartbeat)
+                .doOnComplete(() -> {
+                    synchronized (this) {
+                        if (stopped) return;
+                        timerId = vertx.setPeriodic(options.getHeartbeatPeriod(), id -> heartbeat()
+                                .subscribe(() -> {}, error -> log.error("Node heartbeat failed: {}", error.getMessage())));
+                    }
+                    log.info("Node {} joined the poller group: {}", options.getNodeId(), ring.getNodes());
+                });
+    }
+
+    /**
+     * Leave the group, letting the other nodes take over the services right away instead of after the node timeout
+     *
+     * @return A future holding the success of the operation
+     */
+    public Completable stop() {
+        return Completable.defer(() -> {
+            Completable pendingHeartbeat;
+            synchronized (this) {
+                stopped = true;
+                if (timerId >= 0) {
+                    vertx.cancelTimer(timerId);
+                    timerId = -1;
+                }
+                pendingHeartbeat = lastHeartbeat;
+            }
+            // A heartbeat still running would register the node again after the delete
+            return pendingHeartbeat
+                    .onErrorComplete()
+                    .andThen(dbConnector
+                            .query("DELETE FROM poller_node WHERE node_id = ?", new JsonArray().add(options.getNodeId()))
+                            .ignoreElement());
+        });
+    }
+
+    /**
+     * @param serviceKey The key of a service
+     * @return True if this node is in charge of polling the service
+     */
+    public boolean owns(String serviceKey) {
+        return options.getNodeId().equals(ring.ownerOf(serviceKey));
+    }
+
+    public Set<String> liveNodes() {
+        return ring.getNodes();
+    }
+
+    /**
+     * The heartbeats are created under the lock, and cached so that {@link #stop()} can wait for the last one
+     */
+    private synchronized Completable heartbeat() {
+        if (stopped) {
+            return Completable.complete();
+        }
+        long now = System.currentTimeMillis();
+        lastHeartbeat = dbConnector.query("INSERT OR REPLACE INTO poller_node (node_id, heartbeat_at) VALUES (?, ?)",
+                        new JsonArray(Arrays.asList(options.getNodeId(), now)))
+                // Forget the nodes gone for long, e.g. crashed without leaving
+                .flatMap(x -> dbConnector.query("DELETE FROM poller_node WHERE heartbeat_at < ?",
+                        new JsonArray().add(now - options.getNodeTimeout() * 10)))
+                .flatMap(x -> dbConnector.query("SELECT node_id FROM poller_node WHERE heartbeat_at > ?",
+                        new JsonArray().add(now - options.getNodeTimeout())))
+                .doOnSuccess(rows -> {
+                    Set<String> nodes = new TreeSet<>();
+                    StreamSupport.stream(rows.spliterator(), false).forEach(row -> nodes.add(row.getString("node_id")));
+                    // Always part of its own view, so that a node alone owns every service
+                    nodes.add(options.getNodeId());
+
+                    if (!nodes.equals(ring.getNodes())) {
+                        log.info("Poller group changed: {} -> {}", ring.getNodes(), nodes);
+                        ring = new ConsistentHashRing(nodes, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+                        onChange.run();
+                    }
+                })
+                .ignoreElement()
+                .cache();
+        return lastHeartbeat;
+    }
+}
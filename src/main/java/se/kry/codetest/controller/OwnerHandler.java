@@ -0,0 +1,46 @@
+package se.kry.codetest.controller;
+
+import io.vertx.core.Handler;
+import io.vertx.reactivex.core.http.Cookie;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.regex.Pattern;
+
+/**
+ * Tells which user a request comes from, so that the controllers only serve the services of this user.
+ * <p>
+ * The owner is the token sent in the {@value #OWNER_HEADER} header, or else in the {@value #OWNER_COOKIE} cookie,
+ * which the browsers also send with the event stream. A request sending neither belongs to the default owner.
+ * A token is 1 to 64 letters, digits, dashes or underscores: the request is rejected otherwise.
+ */
+public class OwnerHandler implements Handler<RoutingContext> {
+    public static final String OWNER_HEADER = "x-owner";
+    public static final String OWNER_COOKIE = "owner";
+    private static final String OWNER_KEY = "owner";
+    private static final Pattern OWNER_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    @Override
+    public void handle(RoutingContext req) {
+        String owner = req.request().getHeader(OWNER_HEADER);
+        if (null == owner) {
+            Cookie cookie = req.getCookie(OWNER_COOKIE);
+            owner = null != cookie ? cookie.getValue() : ServiceStatus.DEFAULT_OWNER;
+        }
+        if (!ServiceStatus.DEFAULT_OWNER.equals(owner) && !OWNER_PATTERN.matcher(owner).matches()) {
+            req.response().setStatusCode(400).end("The owner token must be 1 to 64 letters, digits, - or _");
+            return;
+        }
+        req.put(OWNER_KEY, owner);
+        req.next();
+    }
+
+    /**
+     * @param req A request which went through the handler
+     * @return The owner of the request
+     */
+    public static String ownerOf(RoutingContext req) {
+        String owner = req.get(OWNER_KEY);
+        return null != owner ? owner : ServiceStatus.DEFAULT_OWNER;
+    }
+}
@@ -0,0 +1,127 @@
+package se.kry.codetest.controller;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.http.HttpServerResponse;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes the changes of the services to the browsers, as server-sent events.
+ * <p>
+ * Each event holds the new state of a single service, so the clients only fetch the full list once, when they
+ * (re)connect. A client only gets the events of the services of its owner. A client reading too slowly is
+ * disconnected once {@link #MAX_BUFFERED_BYTES} are waiting to be sent to it: it then reconnects and gets a fresh
+ * snapshot instead of a backlog of outdated events.
+ */
+@Slf4j
+public class ServiceEventsController {
+    public static final int MAX_BUFFERED_BYTES = 64 * 1024;
+    public static final long HEARTBEAT_PERIOD = 15_000;
+
+    public static final String EVENT_CREATED = "created";
+    public static final String EVENT_UPDATED = "updated";
+    public static final String EVENT_STATUS = "status";
+    public static final String EVENT_DELETED = "deleted";
+
+    private final Vertx vertx;
+    private final ServiceStatusRegistry registry;
+    private final ServiceStatusRegistry.ChangeListener listener = this::onChange;
+    /**
+     * The connected clients, and their owner
+     */
+    private final Map<HttpServerResponse, String> clients = new ConcurrentHashMap<>();
+    private long heartbeatTimer = -1;
+
+    public ServiceEventsController(Vertx vertx, ServiceStatusRegistry registry) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.vertx = vertx;
+        this.registry = registry;
+    }
+
+    public void start() {
+        registry.addListener(listener);
+        // Comments keep the idle connections open through proxies, and reveal the dead ones
+        heartbeatTimer = vertx.setPeriodic(HEARTBEAT_PERIOD, timerId -> broadcast(null, ":\n\n"));
+    }
+
+    public void stop() {
+        registry.removeListener(listener);
+        if (heartbeatTimer >= 0) {
+            vertx.cancelTimer(heartbeatTimer);
+        }
+        clients.keySet().forEach(HttpServerResponse::end);
+        clients.clear();
+    }
+
+    public void serviceEvents(RoutingContext req) {
+        log.info("HTTP GET received on /service/events");
+        HttpServerResponse response = req.response();
+
+        response.setChunked(true)
+                .setWriteQueueMaxSize(MAX_BUFFERED_BYTES)
+                .putHeader("content-type", "text/event-stream")
+                .putHeader("cache-control", "no-cache")
+                // Compression would hold the events back until enough bytes are buffered
+                .putHeader("content-encoding", "identity")
+                .setStatusCode(200);
+        response.closeHandler(v -> clients.remove(response));
+        // Tells the browser how long to wait before reconnecting, and flushes the headers
+        response.write("retry: 2000\n\n");
+
+        clients.put(response, OwnerHandler.ownerOf(req));
+    }
+
+    public int clientCount() {
+        return clients.size();
+    }
+
+    private void onChange(ServiceStatus previous, ServiceStatus current) {
+        String owner = (null != current ? current : previous).getOwner();
+        if (!clients.containsValue(owner)) {
+            return;
+        }
+
+        JsonObject data = new JsonObject();
+        String type;
+        if (null == previous) {
+            type = EVENT_CREATED;
+            data.put("service", current.toJson());
+        } else if (null == current) {
+            type = EVENT_DELETED;
+            data.put("name", previous.getName());
+        } else if (previous.getVersion() == current.getVersion()) {
+            type = EVENT_STATUS;
+            data.put("service", current.toJson());
+        } else {
+            type = EVENT_UPDATED;
+            data.put("previous_name", previous.getName()).put("service", current.toJson());
+        }
+
+        broadcast(owner, "event: " + type + "\ndata: " + data.encode() + "\n\n");
+    }
+
+    /**
+     * @param owner The owner of the clients to send the message to, null for all the clients
+     */
+    private void broadcast(String owner, String message) {
+        for (Map.Entry<HttpServerResponse, String> entry : clients.entrySet()) {
+            if (null != owner && !owner.equals(entry.getValue())) {
+                continue;
+            }
+            HttpServerResponse client = entry.getKey();
+            if (client.writeQueueFull()) {
+                log.info("Event stream client too slow, disconnecting it");
+                clients.remove(client);
+                client.reset();
+                continue;
+            }
+            client.write(message);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package se.kry.codetest.controller;
+
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.exception.BadRequestException;
+import se.kry.codetest.exception.ControllerException;
+import se.kry.codetest.exception.ResourceNotFoundException;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusRepository;
+import se.kry.codetest.repository.ServiceStatusStore;
+
+@Slf4j
+public class ServiceHistoryController {
+    public static final long DEFAULT_RANGE = 24 * 60 * 60 * 1000;
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final int MAX_LIMIT = 10_000;
+    /**
+     * Typical size of an encoded history entry, to size the buffers upfront
+     */
+    private static final int ESTIMATED_ENTRY_SIZE = 96;
+
+    ServiceStatusStore serviceRepository;
+    ServiceHistoryRepository historyRepository;
+
+    public ServiceHistoryController(ServiceStatusStore serviceRepository, ServiceHistoryRepository historyRepository) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.serviceRepository = serviceRepository;
+        this.historyRepository = historyRepository;
+    }
+
+    /**
+     * Get the poll results of a service. Query params:
+     * <ul>
+     *     <li>from, to: the time range in epoch milliseconds, the last 24 hours by default</li>
+     *     <li>bucket: if set, the results are aggregated by buckets of this duration in milliseconds, oldest first</li>
+     *     <li>limit: the maximum number of raw results, most recent first</li>
+     * </ul>
+     */
+    public void historyGet(RoutingContext req) {
+        String serviceName = req.pathParam("name");
+        log.info("HTTP GET received on /service/{}/history", serviceName);
+
+        serviceRepository.findByName(OwnerHandler.ownerOf(req), serviceName)
+                .switchIfEmpty(Single.error(new ResourceNotFoundException(ServiceStatusRepository.NOT_FOUND_MESSAGE)))
+                .flatMap(service -> {
+                    long to = longParam(req, "to", System.currentTimeMillis());
+                    long from = longParam(req, "from", to - DEFAULT_RANGE);
+                    Long bucket = longParam(req, "bucket", null);
+                    long limit = longParam(req, "limit", (long) DEFAULT_LIMIT);
+
+                    if (from >= to)
+                        return Single.error(new BadRequestException("from must be before to"));
+                    if (null != bucket && bucket <= 0)
+                        return Single.error(new BadRequestException("bucket must be positive"));
+                    if (limit <= 0 || limit > MAX_LIMIT)
+                        return Single.error(new BadRequestException(String.format("limit must be between 1 and %d", MAX_LIMIT)));
+
+                    if (null != bucket) {
+                        return historyRepository.findBucketsByService(service.getKey(), from, to, bucket)
+                                .map(buckets -> Buffer.newInstance(new JsonArray(buckets).toBuffer()));
+                    }
+                    // The history is kept by service key, which is not to be sent: it holds the owner
+                    return historyRepository.findByService(service.getKey(), from, to, (int) limit)
+                            .map(entries -> {
+                                ServiceJsonWriter writer = new ServiceJsonWriter(Buffer.buffer(entries.size() * ESTIMATED_ENTRY_SIZE))
+                                        .beginArray();
+                                entries.forEach(entry -> {
+                                    entry.setServiceName(service.getName());
+                                    writer.historyEntry(entry);
+                                });
+                                return writer.endArray().buffer();
+                            });
+                })
+                .doOnSuccess(history -> req.response()
+                        .putHeader("content-type", "application/json")
+                        .setStatusCode(200)
+                        .end(history))
+                .onErrorResumeNext(cause -> {
+                    if (cause instanceof ControllerException) {
+                        req.response().setStatusCode(((ControllerException) cause).getCode()).end(cause.getMessage());
+                        return Single.never();
+                    }
+                    return Single.error(cause);
+                })
+                .doOnError(cause -> {
+                    log.error("Error: {}", cause.getMessage());
+                    cause.printStackTrace();
+                    req.response().setStatusCode(500).end(cause.getMessage());
+                })
+                .subscribe();
+    }
+
+    private static Long longParam(RoutingContext req, String name, Long defaultValue) {
+        String value = req.request().getParam(name);
+        if (null == value) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new BadRequestException(name + " must be a number");
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package se.kry.codetest.controller;
+
+import io.vertx.reactivex.core.buffer.Buffer;
+import org.joda.time.DateTime;
+import se.kry.codetest.model.ServiceHistoryEntry;
+import se.kry.codetest.model.ServiceStatus;
+
+/**
+ * Writes json straight into a buffer, without building a JsonObject per value first.
+ * <p>
+ * The output is the one of encoding {@link ServiceStatus#toJson()} and {@link ServiceHistoryEntry#toJson()}: same
+ * keys in the same order, nulls included, same escaping. Strings are UTF-8 encoded char by char and numbers digit
+ * by digit, so that writing a value allocates nothing but the buffer growth.
+ * <p>
+ * Not thread safe: use one writer per response.
+ */
+public class ServiceJsonWriter {
+    private static final int MAX_DEPTH = 8;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+
+    private final Buffer buffer;
+    /**
+     * Whether each open array or object already holds an element, and needs a comma before the next one
+     */
+    private final boolean[] hasElements = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+    private final byte[] digits = new byte[20];
+
+    public ServiceJsonWriter(Buffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public Buffer buffer() {
+        return buffer;
+    }
+
+    public ServiceJsonWriter beginArray() {
+        beforeValue();
+        return open('[');
+    }
+
+    public ServiceJsonWriter endArray() {
+        return close(']');
+    }
+
+    public ServiceJsonWriter beginObject() {
+        beforeValue();
+        return open('{');
+    }
+
+    public ServiceJsonWriter endObject() {
+        return close('}');
+    }
+
+    public ServiceJsonWriter name(String name) {
+        beforeValue();
+        writeString(name);
+        buffer.appendByte((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    public ServiceJsonWriter value(String value) {
+        if (null == value) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public ServiceJsonWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public ServiceJsonWriter value(Number value) {
+        return null == value ? nullValue() : value(value.longValue());
+    }
+
+    public ServiceJsonWriter nullValue() {
+        beforeValue();
+        buffer.appendBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Write a date as epoch milliseconds
+     */
+    public ServiceJsonWriter millis(DateTime date) {
+        return null == date ? nullValue() : value(date.getMillis());
+    }
+
+    /**
+     * Write a service as {@link ServiceStatus#toJson()} does
+     */
+    public ServiceJsonWriter service(ServiceStatus service) {
+        return beginObject()
+                .name("url").value(service.getUrl())
+                .name("name").value(service.getName())
+                .name("created_at").millis(service.getCreatedAt())
+                .name("status").value(null != service.getStatus() ? service.getStatus().name() : null)
+                .name("version").value(service.getVersion())
+                .name("poll_interval").value(service.getPollInterval())
+                .name("connect_timeout").value(service.getConnectTimeout())
+                .name("idle_timeout").value(service.getIdleTimeout())
+                .name("total_timeout").value(service.getTotalTimeout())
+                .name("probe_method").value(null != service.getProbeMethod() ? service.getProbeMethod().name() : null)
+                .endObject();
+    }
+
+    /**
+     * Write a history entry as {@link ServiceHistoryEntry#toJson()} does
+     */
+    public ServiceJsonWriter historyEntry(ServiceHistoryEntry entry) {
+        return beginObject()
+                .name("service_name").value(entry.getServiceName())
+                .name("checked_at").millis(entry.getCheckedAt())
+                .name("status").value(null != entry.getStatus() ? entry.getStatus().name() : null)
+                .name("latency").value(entry.getLatency())
+                .endObject();
+    }
+
+    private ServiceJsonWriter open(char bracket) {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Json nested deeper than " + MAX_DEPTH);
+        }
+        buffer.appendByte((byte) bracket);
+        hasElements[depth++] = false;
+        return this;
+    }
+
+    private ServiceJsonWriter close(char bracket) {
+        if (depth == 0) {
+            throw new IllegalStateException("No array or object to close");
+        }
+        depth--;
+        buffer.appendByte((byte) bracket);
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                buffer.appendByte((byte) ',');
+            }
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.appendString(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            buffer.appendByte((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        buffer.appendBytes(digits, start, digits.length - start);
+    }
+
+    /**
+     * Write a quoted string, escaping the quotes, backslashes, control chars and surrogates as Jackson does
+     */
+    private void writeString(String value) {
+        buffer.appendByte((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer.appendByte((byte) '\\');
+                }
+                buffer.appendByte((byte) c);
+            } else if (c < 0x20) {
+                writeControlChar(c);
+            } else if (c < 0x800) {
+                buffer.appendByte((byte) (0xc0 | (c >> 6)));
+                buffer.appendByte((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // Jackson escapes the chars out of the basic plane as their two surrogates
+                writeUnicodeEscape(c);
+            } else {
+                buffer.appendByte((byte) (0xe0 | (c >> 12)));
+                buffer.appendByte((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.appendByte((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        buffer.appendByte((byte) '"');
+    }
+
+    private void writeControlChar(char c) {
+        buffer.appendByte((byte) '\\');
+        switch (c) {
+            case '\b': buffer.appendByte((byte) 'b'); break;
+            case '\t': buffer.appendByte((byte) 't'); break;
+            case '\n': buffer.appendByte((byte) 'n'); break;
+            case '\f': buffer.appendByte((byte) 'f'); break;
+            case '\r': buffer.appendByte((byte) 'r'); break;
+            default:
+                buffer.appendByte((byte) 'u').appendByte((byte) '0').appendByte((byte) '0')
+                        .appendByte(HEX[c >> 4]).appendByte(HEX[c & 0xf]);
+        }
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buffer.appendByte((byte) '\\').appendByte((byte) 'u')
+                .appendByte(HEX[c >> 12]).appendByte(HEX[(c >> 8) & 0xf])
+                .appendByte(HEX[(c >> 4) & 0xf]).appendByte(HEX[c & 0xf]);
+    }
+}
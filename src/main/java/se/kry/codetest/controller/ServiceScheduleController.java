@@ -0,0 +1,60 @@
+package se.kry.codetest.controller;
+
+import io.reactivex.Single;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.exception.ControllerException;
+import se.kry.codetest.exception.ResourceNotFoundException;
+import se.kry.codetest.poller.PollScheduler;
+import se.kry.codetest.repository.ServiceStatusRepository;
+import se.kry.codetest.repository.ServiceStatusStore;
+
+@Slf4j
+public class ServiceScheduleController {
+    ServiceStatusStore serviceRepository;
+    PollScheduler scheduler;
+
+    public ServiceScheduleController(ServiceStatusStore serviceRepository, PollScheduler scheduler) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.serviceRepository = serviceRepository;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get the next check of a service: the interval it is polled at, adapted to its stability, and the time of its
+     * next poll. Both are null when the service is polled by another node.
+     */
+    public void scheduleGet(RoutingContext req) {
+        String serviceName = req.pathParam("name");
+        log.info("HTTP GET received on /service/{}/schedule", serviceName);
+
+        serviceRepository.findByName(OwnerHandler.ownerOf(req), serviceName)
+                .switchIfEmpty(Single.error(new ResourceNotFoundException(ServiceStatusRepository.NOT_FOUND_MESSAGE)))
+                .map(service -> {
+                    JsonObject schedule = new JsonObject()
+                            .put("name", service.getName())
+                            .put("poll_interval", service.getPollInterval());
+                    PollScheduler.NextCheck nextCheck = scheduler.nextCheckOf(service.getKey()).orElse(null);
+                    return schedule
+                            .put("effective_interval", null != nextCheck ? nextCheck.getInterval() : null)
+                            .put("next_check_at", null != nextCheck ? nextCheck.getAt() : null);
+                })
+                .doOnSuccess(schedule -> req.response()
+                        .putHeader("content-type", "application/json")
+                        .setStatusCode(200)
+                        .end(schedule.encode()))
+                .onErrorResumeNext(cause -> {
+                    if (cause instanceof ControllerException) {
+                        req.response().setStatusCode(((ControllerException) cause).getCode()).end(cause.getMessage());
+                        return Single.never();
+                    }
+                    return Single.error(cause);
+                })
+                .doOnError(cause -> {
+                    log.error("Error: {}", cause.getMessage());
+                    req.response().setStatusCode(500).end(cause.getMessage());
+                })
+                .subscribe();
+    }
+}
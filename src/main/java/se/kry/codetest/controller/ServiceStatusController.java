@@ -5,24 +5,59 @@ import io.reactivex.Single;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.http.HttpServerResponse;
 import io.vertx.reactivex.ext.web.RoutingContext;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import se.kry.codetest.exception.BadRequestException;
 import se.kry.codetest.exception.ControllerException;
+import se.kry.codetest.model.ProbeMethodEnum;
 import se.kry.codetest.model.ServiceStatus;
-import se.kry.codetest.repository.ServiceStatusRepository;
+import se.kry.codetest.repository.ServiceStatusStore;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Slf4j
 public class ServiceStatusController {
+    private static final String NAME_INVALID_MESSAGE = "name must not contain " + ServiceStatus.KEY_SEPARATOR;
+    private static final String POLL_INTERVAL_INVALID_MESSAGE = String.format(
+            "poll_interval must be between %d and %d seconds", ServiceStatus.MIN_POLL_INTERVAL, ServiceStatus.MAX_POLL_INTERVAL);
+    private static final String TIMEOUT_INVALID_MESSAGE = String.format(
+            "timeouts must be between 1 and %d milliseconds", ServiceStatus.MAX_TIMEOUT);
+    private static final String PROBE_METHOD_INVALID_MESSAGE = String.format(
+            "probe_method must be one of %s", Arrays.toString(ProbeMethodEnum.values()));
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String PAGE_SIZE_INVALID_MESSAGE = String.format("limit must be between 1 and %d", MAX_PAGE_SIZE);
+    private static final int STREAM_CHUNK_SIZE = 100;
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    private static final int MAX_BULK_SIZE = 100_000;
+    private static final String BULK_SIZE_INVALID_MESSAGE = String.format("At most %d services can be created at once", MAX_BULK_SIZE);
+    /**
+     * Typical size of an encoded bulk creation result, to size the buffer upfront
+     */
+    private static final int BULK_RESULT_SIZE = 64;
+    /**
+     * Typical size of an encoded service, to size the buffers upfront
+     */
+    private static final int ESTIMATED_SERVICE_SIZE = 256;
 
-    ServiceStatusRepository serviceRepository;
+    ServiceStatusStore serviceRepository;
+    /**
+     * Distinguishes the ETags of this run from the ones of a previous run, whose revisions started over from 0.
+     * Static so that all the API verticle instances send the same ETags.
+     */
+    private static final String ETAG_PREFIX = Long.toHexString(System.currentTimeMillis());
 
-    public ServiceStatusController(ServiceStatusRepository serviceStatusRepository) {
+    public ServiceStatusController(ServiceStatusStore serviceStatusRepository) {
         log.debug("Instantiating {}...", this.getClass().getName());
         this.serviceRepository = serviceStatusRepository;
     }
@@ -35,13 +70,12 @@ public class ServiceStatusController {
             log.debug("\twith body: {}", jsonBody.toString());
 
             ServiceStatus newService = ServiceStatus.fromJson(jsonBody);
+            newService.setOwner(OwnerHandler.ownerOf(req));
 
-            Single.fromCallable(() -> !newService.isValid())
-                    .flatMapCompletable(serviceIsInvalid -> {
-                        if (serviceIsInvalid)
-                            return Completable.error(new BadRequestException("url and name are mandatory"));
-                        if (!newService.isUrlValid())
-                            return Completable.error(new BadRequestException("The provided url is invalid"));
+            Single.fromCallable(() -> Optional.ofNullable(creationErrorOf(newService, jsonBody)))
+                    .flatMapCompletable(error -> {
+                        if (error.isPresent())
+                            return Completable.error(new BadRequestException(error.get()));
 
                         return serviceRepository.createOne(newService);
                     })
@@ -67,19 +101,115 @@ public class ServiceStatusController {
         }
     }
 
+    /**
+     * Create many services at once, from a json array or, with the application/x-ndjson content type, from one json
+     * object per line. The services are validated as by a POST, in parallel, and the valid ones are inserted in a
+     * single transaction. An invalid service, or one whose name is already used, is reported without failing the
+     * others.
+     */
+    public void serviceBulkPost(RoutingContext req) {
+        log.info("HTTP POST received on /service/bulk");
+        String owner = OwnerHandler.ownerOf(req);
+
+        List<Object> items;
+        try {
+            items = StringUtils.startsWithIgnoreCase(req.request().getHeader("content-type"), NDJSON_CONTENT_TYPE)
+                    ? parseNdjson(req.getBodyAsString())
+                    : parseJsonArray(req.getBodyAsJsonArray());
+        } catch (DecodeException | ClassCastException ex) {
+            req.response().setStatusCode(400).end("Invalid payload format. Must be a json array or ndjson");
+            return;
+        }
+        if (items.size() > MAX_BULK_SIZE) {
+            req.response().setStatusCode(400).end(BULK_SIZE_INVALID_MESSAGE);
+            return;
+        }
+        log.debug("\twith {} service(s)", items.size());
+
+        // The url validation is the costly part: kept off the event loop, the worker thread waiting for the parallel
+        // stream, which runs over all the cores in the common fork-join pool
+        req.vertx().<List<BulkItem>>rxExecuteBlocking(promise -> promise.complete(IntStream.range(0, items.size())
+                        .parallel()
+                        .mapToObj(index -> BulkItem.validate(index, items.get(index), owner))
+                        .collect(Collectors.toList())), false)
+                .toSingle()
+                .flatMap(validated -> {
+                    List<BulkItem> valid = validated.stream()
+                            .filter(item -> null == item.message)
+                            .collect(Collectors.toList());
+                    if (valid.isEmpty()) {
+                        return Single.just(validated);
+                    }
+                    return serviceRepository.createMany(valid.stream().map(item -> item.service).collect(Collectors.toList()))
+                            .map(inserted -> {
+                                for (int i = 0; i < valid.size(); i++) {
+                                    valid.get(i).status = inserted.get(i) ? BulkItem.CREATED : BulkItem.CONFLICT;
+                                }
+                                return validated;
+                            });
+                })
+                .doOnSuccess(results -> req.response()
+                        .putHeader("content-type", "application/json")
+                        .setStatusCode(200)
+                        .end(encodeBulkResults(results)))
+                .doOnError(cause -> {
+                    log.error("Error: {}", cause.getMessage());
+                    cause.printStackTrace();
+                    req.response().setStatusCode(500).end(cause.getMessage());
+                })
+                .subscribe();
+    }
+
+    /**
+     * List the services of the owner of the request, in name order. Without a limit query param, all the services are
+     * streamed in chunks. With one, a single page is sent, and the name to pass as cursor param to get the next page is
+     * set in the next-cursor header, if there is one.
+     */
     public void serviceGet(RoutingContext req) {
         log.info("HTTP GET received on /service");
-        serviceRepository.findAll()
-                .doOnSuccess(serviceStatusList -> {
-                    List<JsonObject> jsonServices = serviceStatusList
-                            .stream()
-                            .map(ServiceStatus::toJson)
-                            .collect(Collectors.toList());
+        String owner = OwnerHandler.ownerOf(req);
+
+        // Read before the services, so that a concurrent write can only make the ETag older than the content.
+        // Only the writes to the services of the owner change it.
+        String etag = String.format("W/\"%s-%d\"", ETAG_PREFIX, serviceRepository.revision(owner));
+        req.response().putHeader("vary", OwnerHandler.OWNER_HEADER + ", cookie");
+        if (etagMatches(req.request().getHeader("if-none-match"), etag)) {
+            req.response().putHeader("etag", etag).setStatusCode(304).end();
+            return;
+        }
+
+        String limitParam = req.request().getParam("limit");
+        String cursor = req.request().getParam("cursor");
+        req.response()
+                .putHeader("content-type", "application/json")
+                .putHeader("etag", etag)
+                .putHeader("cache-control", "no-cache");
+
+        if (null == limitParam) {
+            streamServices(req.response(), serviceRepository.iterateAll(owner));
+            return;
+        }
+
+        int limit = NumberUtils.toInt(limitParam, -1);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            req.response().setStatusCode(400).end(PAGE_SIZE_INVALID_MESSAGE);
+            return;
+        }
+
+        // One more service than requested tells whether there is a next page
+        serviceRepository.findPage(owner, cursor, limit + 1)
+                .doOnSuccess(page -> {
+                    List<ServiceStatus> services = page.size() > limit ? page.subList(0, limit) : page;
+                    if (page.size() > limit) {
+                        req.response().putHeader("next-cursor", services.get(limit - 1).getName());
+                    }
+                    ServiceJsonWriter writer = new ServiceJsonWriter(Buffer.buffer(services.size() * ESTIMATED_SERVICE_SIZE))
+                            .beginArray();
+                    services.forEach(writer::service);
 
                     req.response()
-                            .putHeader("content-type", "application/json")
                             .setStatusCode(200)
-                            .end(new JsonArray(jsonServices).encode());
+                            .end(writer.endArray().buffer());
                 })
                 .doOnError(cause -> {
                     log.error("Error: {}", cause.getMessage());
@@ -98,7 +228,7 @@ public class ServiceStatusController {
                     if (!hasServiceName)
                         return Completable.error(new BadRequestException("name path param is mandatory"));
 
-                    return serviceRepository.deleteByName(serviceName);
+                    return serviceRepository.deleteByName(OwnerHandler.ownerOf(req), serviceName);
                 })
                 .onErrorResumeNext(cause -> {
                     if (cause instanceof ControllerException) {
@@ -134,18 +264,29 @@ public class ServiceStatusController {
                             return Completable.error(new BadRequestException("name path param is mandatory"));
                         if (!newService.isValid())
                             return Completable.error(new BadRequestException("url and name are mandatory"));
+                        if (!newService.isNameValid())
+                            return Completable.error(new BadRequestException(NAME_INVALID_MESSAGE));
                         if (!newService.isUrlValid())
                             return Completable.error(new BadRequestException("The url provided is invalid"));
+                        if (!newService.isPollIntervalValid())
+                            return Completable.error(new BadRequestException(POLL_INTERVAL_INVALID_MESSAGE));
+                        if (!newService.areTimeoutsValid())
+                            return Completable.error(new BadRequestException(TIMEOUT_INVALID_MESSAGE));
+                        if (!isProbeMethodValid(jsonBody))
+                            return Completable.error(new BadRequestException(PROBE_METHOD_INVALID_MESSAGE));
 
-                        return this.serviceRepository.update(serviceName, newService);
+                        return this.serviceRepository.update(OwnerHandler.ownerOf(req), serviceName, newService);
                     })
                     .onErrorResumeNext(cause -> {
-                        if (cause instanceof BadRequestException) {
+                        if (cause instanceof ControllerException) {
+                            req.response().setStatusCode(((ControllerException) cause).getCode()).end(cause.getMessage());
+                            return Completable.never();
+                        }
+                        if (cause instanceof InvalidParameterException) {
                             req.response().setStatusCode(400).end(cause.getMessage());
                             return Completable.never();
-                        } else {
-                            return Completable.error(cause);
                         }
+                        return Completable.error(cause);
                     })
                     .doOnComplete(() ->
                             req.response().setStatusCode(200).end()
@@ -161,4 +302,199 @@ public class ServiceStatusController {
             req.response().setStatusCode(400).end("Invalid payload format. Must be json");
         }
     }
+
+    /**
+     * @param service  The service to create
+     * @param jsonBody The json the service was read from
+     * @return The reason the service cannot be created, or null if it is valid
+     */
+    private static String creationErrorOf(ServiceStatus service, JsonObject jsonBody) {
+        if (!service.isValid())
+            return "url and name are mandatory";
+        if (!service.isNameValid())
+            return NAME_INVALID_MESSAGE;
+        if (!service.isUrlValid())
+            return "The provided url is invalid";
+        if (!service.isPollIntervalValid())
+            return POLL_INTERVAL_INVALID_MESSAGE;
+        if (!service.areTimeoutsValid())
+            return TIMEOUT_INVALID_MESSAGE;
+        if (!isProbeMethodValid(jsonBody))
+            return PROBE_METHOD_INVALID_MESSAGE;
+        return null;
+    }
+
+    /**
+     * @return The items of the array: the json objects as JsonObject, anything else as is
+     */
+    private static List<Object> parseJsonArray(JsonArray array) {
+        if (null == array) {
+            throw new DecodeException("Empty body");
+        }
+        List<Object> items = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            items.add(array.getValue(i));
+        }
+        return items;
+    }
+
+    /**
+     * @return The items of the non blank lines: the json objects as JsonObject, the lines which are not as
+     * {@link DecodeException}
+     */
+    private static List<Object> parseNdjson(String body) {
+        List<Object> items = new ArrayList<>();
+        if (null == body) {
+            return items;
+        }
+        for (String line : body.split("\r?\n")) {
+            if (StringUtils.isBlank(line)) continue;
+            try {
+                items.add(new JsonObject(line));
+            } catch (DecodeException ex) {
+                items.add(ex);
+            }
+        }
+        return items;
+    }
+
+    private static Buffer encodeBulkResults(List<BulkItem> results) {
+        int created = 0;
+        int conflicts = 0;
+        int invalid = 0;
+        for (BulkItem item : results) {
+            if (BulkItem.CREATED.equals(item.status)) created++;
+            else if (BulkItem.CONFLICT.equals(item.status)) conflicts++;
+            else invalid++;
+        }
+
+        ServiceJsonWriter writer = new ServiceJsonWriter(Buffer.buffer(64 + results.size() * BULK_RESULT_SIZE))
+                .beginObject()
+                .name("created").value(created)
+                .name("conflicts").value(conflicts)
+                .name("invalid").value(invalid)
+                .name("results").beginArray();
+        for (BulkItem item : results) {
+            writer.beginObject()
+                    .name("index").value(item.index)
+                    .name("name").value(item.name)
+                    .name("status").value(item.status);
+            if (null != item.message) {
+                writer.name("message").value(item.message);
+            }
+            writer.endObject();
+        }
+        return writer.endArray().endObject().buffer();
+    }
+
+    /**
+     * The probe method is parsed leniently into the service: check the one requested, if any, is known
+     */
+    private static boolean isProbeMethodValid(JsonObject jsonBody) {
+        Object probeMethod = jsonBody.getValue("probe_method");
+        return null == probeMethod
+                || (probeMethod instanceof String && null != ProbeMethodEnum.valueOfOrNull((String) probeMethod));
+    }
+
+    /**
+     * @param ifNoneMatch The If-None-Match header of the request, possibly null or a list of ETags
+     * @param etag        The current ETag of the resource
+     * @return True if the client already holds the current version of the resource
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (null == ifNoneMatch) return false;
+        String opaqueTag = StringUtils.removeStart(etag, "W/");
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = StringUtils.removeStart(candidate.trim(), "W/");
+            if ("*".equals(tag) || opaqueTag.equals(tag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write the services as a json array, {@link #STREAM_CHUNK_SIZE} services per chunk, pausing while the client
+     * is not reading so that at most one write queue worth of services is held in memory.
+     */
+    private static void streamServices(HttpServerResponse response, Iterator<ServiceStatus> services) {
+        response.setChunked(true).setStatusCode(200).write("[");
+        writeServiceChunks(response, services, true);
+    }
+
+    private static void writeServiceChunks(HttpServerResponse response, Iterator<ServiceStatus> services, boolean first) {
+        boolean firstService = first;
+        while (services.hasNext()) {
+            if (response.closed()) return;
+            if (response.writeQueueFull()) {
+                boolean nextIsFirst = firstService;
+                response.drainHandler(v -> writeServiceChunks(response, services, nextIsFirst));
+                return;
+            }
+
+            response.write(encodeChunk(services, firstService));
+            firstService = false;
+        }
+        response.end("]");
+    }
+
+    /**
+     * Encode the next {@link #STREAM_CHUNK_SIZE} services, at most, as a part of a json array
+     *
+     * @param services The services left to send, at least one
+     * @param first    Whether the chunk starts the array, and must not start with a separator
+     * @return The encoded services
+     */
+    static Buffer encodeChunk(Iterator<ServiceStatus> services, boolean first) {
+        Buffer chunk = Buffer.buffer(STREAM_CHUNK_SIZE * ESTIMATED_SERVICE_SIZE);
+        // Each service is a top level value for the writer: the separators of the streamed array are written here
+        ServiceJsonWriter writer = new ServiceJsonWriter(chunk);
+        for (int i = 0; i < STREAM_CHUNK_SIZE && services.hasNext(); i++) {
+            if (i > 0 || !first) chunk.appendByte((byte) ',');
+            writer.service(services.next());
+        }
+        return chunk;
+    }
+
+    /**
+     * An item of a bulk creation, and its outcome
+     */
+    static class BulkItem {
+        static final String CREATED = "created";
+        static final String CONFLICT = "conflict";
+        static final String INVALID = "invalid";
+
+        final int index;
+        final String name;
+        final ServiceStatus service;
+        final String message;
+        String status;
+
+        private BulkItem(int index, String name, ServiceStatus service, String message) {
+            this.index = index;
+            this.name = name;
+            this.service = service;
+            this.message = message;
+            this.status = null == message ? null : INVALID;
+        }
+
+        /**
+         * @param index The position of the item in the request
+         * @param item  The item, valid if it is a json object holding a valid service
+         * @param owner The owner of the request
+         * @return The item holding its service if valid, its error message otherwise
+         */
+        static BulkItem validate(int index, Object item, String owner) {
+            if (!(item instanceof JsonObject)) {
+                return new BulkItem(index, null, null, "Invalid item format. Must be a json object");
+            }
+            JsonObject json = (JsonObject) item;
+            ServiceStatus service;
+            try {
+                service = ServiceStatus.fromJson(json);
+                service.setOwner(owner);
+            } catch (ClassCastException ex) {
+                return new BulkItem(index, null, null, "Invalid item format. Wrong value type");
+            }
+            return new BulkItem(index, service.getName(), service, creationErrorOf(service, json));
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package se.kry.codetest.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Handler;
+import io.vertx.reactivex.ext.web.Route;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of the HTTP requests, until their response is fully written.
+ * <p>
+ * Requests are tagged with the path pattern of the route that answered them (e.g. /api/v1/service/:name) rather
+ * than the actual path, to keep the number of series bounded.
+ */
+public class HttpMetricsHandler implements Handler<RoutingContext> {
+    private final MeterRegistry meterRegistry;
+
+    public HttpMetricsHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void handle(RoutingContext req) {
+        long startedAt = System.nanoTime();
+        req.addBodyEndHandler(v -> {
+            Route route = req.currentRoute();
+            String path = null != route && null != route.getPath() ? route.getPath() : "unmatched";
+            Timer.builder("http.server.requests")
+                    .description("Latency of the HTTP requests")
+                    .tag("method", req.request().method().name())
+                    .tag("route", path)
+                    .tag("status", String.valueOf(req.response().getStatusCode()))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        });
+        req.next();
+    }
+}
@@ -0,0 +1,80 @@
+package se.kry.codetest.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.reactivex.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how busy the Vert.x threads are, from the time the tasks wait before running.
+ * <p>
+ * A timer on the current event loop, re-armed on each run, records how late it fires: a loop kept busy by blocking
+ * or long handlers delays it. A no-op task is also sent to the worker pool on each run, and its wait in the queue is
+ * recorded: it grows once all the workers (also running the JDBC calls) are busy.
+ */
+@Slf4j
+public class VertxProbes {
+    public static final long DEFAULT_PERIOD = 100;
+
+    private final Vertx vertx;
+    private final long period;
+    private final Timer eventLoopDelay;
+    private final Timer workerDelay;
+    private long timerId = -1;
+    private boolean stopped;
+
+    public VertxProbes(Vertx vertx, MeterRegistry meterRegistry) {
+        this(vertx, meterRegistry, DEFAULT_PERIOD);
+    }
+
+    public VertxProbes(Vertx vertx, MeterRegistry meterRegistry, long period) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.vertx = vertx;
+        this.period = period;
+        // Each probe runs on the event loop of the verticle starting it, hence the thread tag
+        this.eventLoopDelay = Timer.builder("vertx.eventloop.delay")
+                .description("Delay of the tasks scheduled on an event loop")
+                .tag("thread", Thread.currentThread().getName())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.workerDelay = Timer.builder("vertx.worker.delay")
+                .description("Time the tasks of the worker pool wait for a worker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start probing. Must be called from the event loop to probe.
+     */
+    public void start() {
+        stopped = false;
+        schedule();
+    }
+
+    public void stop() {
+        stopped = true;
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    private void schedule() {
+        long expectedAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(period);
+        timerId = vertx.setTimer(period, id -> {
+            eventLoopDelay.record(Math.max(0, System.nanoTime() - expectedAt), TimeUnit.NANOSECONDS);
+
+            long submittedAt = System.nanoTime();
+            vertx.executeBlocking(promise -> {
+                workerDelay.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                promise.complete();
+            }, false, result -> {});
+
+            if (!stopped) {
+                schedule();
+            }
+        });
+    }
+}
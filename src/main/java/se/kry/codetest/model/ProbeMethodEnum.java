@@ -0,0 +1,32 @@
+package se.kry.codetest.model;
+
+/**
+ * How a service is polled. Only getting a response matters, so the body is never used.
+ */
+public enum ProbeMethodEnum {
+    /**
+     * GET, the body being buffered
+     */
+    GET,
+    /**
+     * HEAD, no body sent back
+     */
+    HEAD,
+    /**
+     * GET, the body being discarded as it is received
+     */
+    GET_DISCARD;
+
+    /**
+     * @return The method named {name}, null if there is none
+     */
+    public static ProbeMethodEnum valueOfOrNull(String name) {
+        if (null == name) return null;
+
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package se.kry.codetest.model;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Data;
+import lombok.NonNull;
+import org.joda.time.DateTime;
+
+/**
+ * The result of a single poll of a service
+ */
+@Data
+public class ServiceHistoryEntry {
+    private String serviceName;
+    private DateTime checkedAt;
+    private ServiceStatusValueEnum status;
+    /**
+     * Time the service took to answer (or fail), in milliseconds
+     */
+    private Long latency;
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("service_name", serviceName)
+                .put("checked_at", null != checkedAt ? checkedAt.getMillis() : null)
+                .put("status", null != status ? status.name() : null)
+                .put("latency", latency);
+    }
+
+    /**
+     * Create a ServiceHistoryEntry from a json with "service_name", "checked_at", "status" and "latency" keys
+     *
+     * @param source The json providing the values
+     * @return A ServiceHistoryEntry Instance
+     */
+    public static ServiceHistoryEntry fromJson(@NonNull final JsonObject source) {
+        ServiceHistoryEntry output = new ServiceHistoryEntry();
+        output.setServiceName(source.getString("service_name"));
+        if (null != source.getLong("checked_at")) {
+            output.setCheckedAt(new DateTime(source.getLong("checked_at")));
+        }
+        output.setStatus(ServiceStatusValueEnum.valueOfOrDefault(source.getString("status")));
+        output.setLatency(source.getLong("latency"));
+
+        return output;
+    }
+}
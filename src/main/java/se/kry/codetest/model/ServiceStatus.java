@@ -9,10 +9,50 @@ import org.joda.time.DateTime;
 
 @Data
 public class ServiceStatus {
+    public static final int DEFAULT_POLL_INTERVAL = 60;
+    public static final int MIN_POLL_INTERVAL = 5;
+    public static final int MAX_POLL_INTERVAL = 24 * 60 * 60;
+    public static final int MAX_TIMEOUT = 5 * 60 * 1000;
+    /**
+     * Owner of the services created without one, and of the services created before the owners existed
+     */
+    public static final String DEFAULT_OWNER = "";
+    /**
+     * Separates the owner from the name in the key of a service, so it cannot be part of a new name
+     */
+    public static final char KEY_SEPARATOR = '/';
+    /**
+     * Immutable, so shared by all the validations
+     */
+    private static final UrlValidator URL_VALIDATOR = new UrlValidator(new String[]{"http", "https"}, UrlValidator.ALLOW_LOCAL_URLS);
+
     private String url;
     private String name;
+    /**
+     * The user the service belongs to. Not part of the json of the service: it comes from the request.
+     */
+    private String owner = DEFAULT_OWNER;
     private DateTime createdAt;
     private ServiceStatusValueEnum status;
+    /**
+     * Revision of the service definition (name and url), incremented on each update
+     */
+    private long version;
+    /**
+     * Delay between two polls of the service, in seconds
+     */
+    private int pollInterval = DEFAULT_POLL_INTERVAL;
+    /**
+     * Poll timeouts in milliseconds: to establish the connection, without receiving any data, and for the whole request.
+     * Null to use the poller's defaults.
+     */
+    private Integer connectTimeout;
+    private Integer idleTimeout;
+    private Integer totalTimeout;
+    /**
+     * How the service is polled. Null to use the poller's default.
+     */
+    private ProbeMethodEnum probeMethod;
 
     /**
      * Checks if the PollService has the required fields to be inserted in the Base
@@ -23,22 +63,85 @@ public class ServiceStatus {
         return ObjectUtils.allNotNull(url, name);
     }
 
+    public boolean isNameValid() {
+        return null == name || name.indexOf(KEY_SEPARATOR) < 0;
+    }
+
+    public boolean isPollIntervalValid() {
+        return pollInterval >= MIN_POLL_INTERVAL && pollInterval <= MAX_POLL_INTERVAL;
+    }
+
+    public boolean areTimeoutsValid() {
+        return isTimeoutValid(connectTimeout) && isTimeoutValid(idleTimeout) && isTimeoutValid(totalTimeout);
+    }
+
+    private static boolean isTimeoutValid(Integer timeout) {
+        return null == timeout || (timeout > 0 && timeout <= MAX_TIMEOUT);
+    }
+
+    /**
+     * @return The key identifying the service among the services of all the owners
+     */
+    public String getKey() {
+        return keyOf(owner, name);
+    }
+
+    /**
+     * The key of a service of the default owner is its name, so that the services predating the owners keep theirs.
+     * Their names could hold a separator though: such a name is prefixed by one, so that it never matches the key
+     * of another owner's service, which starts with the owner, never empty.
+     *
+     * @param owner The owner of the service
+     * @param name  The name of the service
+     * @return The key identifying the service among the services of all the owners
+     */
+    public static String keyOf(String owner, String name) {
+        if (!DEFAULT_OWNER.equals(owner)) {
+            return owner + KEY_SEPARATOR + name;
+        }
+        return null == name || name.indexOf(KEY_SEPARATOR) < 0 ? name : KEY_SEPARATOR + name;
+    }
+
     public JsonObject toJson() {
         return new JsonObject()
                 .put("url", url)
                 .put("name", name)
                 .put("created_at", null != createdAt ? createdAt.getMillis() : null)
-                .put("status", null != status ? status.name() : null);
+                .put("status", null != status ? status.name() : null)
+                .put("version", version)
+                .put("poll_interval", pollInterval)
+                .put("connect_timeout", connectTimeout)
+                .put("idle_timeout", idleTimeout)
+                .put("total_timeout", totalTimeout)
+                .put("probe_method", null != probeMethod ? probeMethod.name() : null);
+    }
+
+    /**
+     * @return A shallow copy of this service
+     */
+    public ServiceStatus copy() {
+        ServiceStatus output = new ServiceStatus();
+        output.setName(name);
+        output.setOwner(owner);
+        output.setUrl(url);
+        output.setCreatedAt(createdAt);
+        output.setStatus(status);
+        output.setVersion(version);
+        output.setPollInterval(pollInterval);
+        output.setConnectTimeout(connectTimeout);
+        output.setIdleTimeout(idleTimeout);
+        output.setTotalTimeout(totalTimeout);
+        output.setProbeMethod(probeMethod);
+
+        return output;
     }
 
     public boolean isUrlValid() {
-        String[] schemes = {"http","https"};
-        UrlValidator urlValidator = new UrlValidator(schemes, UrlValidator.ALLOW_LOCAL_URLS);
-        return urlValidator.isValid(this.getUrl());
+        return URL_VALIDATOR.isValid(this.getUrl());
     }
 
     /**
-     * Create a PollService from a json with "name", "url" and "created_at" keys
+     * Create a PollService from a json with "name", "url", "created_at", "poll_interval", timeouts and "probe_method" keys
      *
      * @param source The json providing the values
      * @return A PollService Instance
@@ -51,6 +154,12 @@ public class ServiceStatus {
             output.setCreatedAt(new DateTime(source.getLong("created_at")));
         }
         output.setStatus(ServiceStatusValueEnum.valueOfOrDefault(source.getString("status")));
+        output.setVersion(source.getLong("version", 0L));
+        output.setPollInterval(source.getInteger("poll_interval", DEFAULT_POLL_INTERVAL));
+        output.setConnectTimeout(source.getInteger("connect_timeout"));
+        output.setIdleTimeout(source.getInteger("idle_timeout"));
+        output.setTotalTimeout(source.getInteger("total_timeout"));
+        output.setProbeMethod(ProbeMethodEnum.valueOfOrNull(source.getString("probe_method")));
 
         return output;
     }
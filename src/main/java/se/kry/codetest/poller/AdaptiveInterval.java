@@ -0,0 +1,95 @@
+package se.kry.codetest.poller;
+
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+/**
+ * Adapts the poll interval of a service to its stability, within the bounds of the {@link PollerOptions}.
+ * <ul>
+ *     <li>A failing service, or one which just changed state, is polled faster: at a quarter of its interval,
+ *     but not faster than the min interval, nor slower than its own interval</li>
+ *     <li>A service which has been OK for a few fast polls is back to its own interval</li>
+ *     <li>A service which has been OK for {@value #STABLE_ROUNDS} intervals backs off: its interval doubles each time
+ *     its stable time doubles, up to the max interval</li>
+ * </ul>
+ * A service whose status is unknown is polled at its own interval, as is an OK service whose last change of state is
+ * unknown ({@link #UNKNOWN_SINCE}), e.g. on startup: it is neither sped up nor backed off until a change is seen.
+ */
+public class AdaptiveInterval {
+    /**
+     * The stable time of a service whose last change of state is unknown
+     */
+    public static final long UNKNOWN_SINCE = -1;
+    static final int FAST_DIVISOR = 4;
+    /**
+     * Number of fast polls confirming a change of state
+     */
+    static final int CONFIRM_ROUNDS = 3;
+    /**
+     * Number of intervals a service must stay OK before backing off
+     */
+    static final int STABLE_ROUNDS = 10;
+
+    private final boolean enabled;
+    private final long minInterval;
+    private final long maxInterval;
+
+    /**
+     * @param options The options holding the adaptive switch and bounds
+     */
+    public AdaptiveInterval(PollerOptions options) {
+        this.enabled = options.isAdaptive();
+        this.minInterval = options.getMinInterval() * 1000L;
+        this.maxInterval = options.getMaxInterval() * 1000L;
+    }
+
+    /**
+     * @return An instance polling every service at its own interval
+     */
+    public static AdaptiveInterval fixed() {
+        PollerOptions options = new PollerOptions();
+        options.setAdaptive(false);
+        return new AdaptiveInterval(options);
+    }
+
+    /**
+     * @param service The service to poll
+     * @return The stable time past which its interval no longer grows, in milliseconds
+     */
+    public long horizonOf(ServiceStatus service) {
+        // The interval doubles each time the stable time doubles past STABLE_ROUNDS intervals, up to the slowest one
+        return 2 * STABLE_ROUNDS * Math.max(service.getPollInterval() * 1000L, maxInterval);
+    }
+
+    /**
+     * @param service     The service to poll
+     * @param stableSince The time its status last changed, in milliseconds, or {@link #UNKNOWN_SINCE}
+     * @param now         The current time, in milliseconds
+     * @return The interval until its next poll, in milliseconds
+     */
+    public long intervalOf(ServiceStatus service, long stableSince, long now) {
+        long interval = service.getPollInterval() * 1000L;
+        if (!enabled || service.getStatus() == ServiceStatusValueEnum.UNKNOWN || null == service.getStatus()) {
+            return interval;
+        }
+
+        long fast = Math.min(interval, Math.max(minInterval, interval / FAST_DIVISOR));
+        if (service.getStatus() == ServiceStatusValueEnum.FAIL) {
+            return fast;
+        }
+        if (stableSince == UNKNOWN_SINCE) {
+            return interval;
+        }
+        long stableFor = now - stableSince;
+        if (stableFor < CONFIRM_ROUNDS * fast) {
+            return fast;
+        }
+
+        long slowest = Math.max(interval, maxInterval);
+        long factor = Long.highestOneBit(stableFor / (STABLE_ROUNDS * interval));
+        if (factor >= slowest / interval) {
+            return slowest;
+        }
+        return interval * Math.max(1, factor);
+    }
+}
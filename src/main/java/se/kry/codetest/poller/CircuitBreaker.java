@@ -0,0 +1,87 @@
+package se.kry.codetest.poller;
+
+/**
+ * Circuit breaker of a single service.
+ * <p>
+ * After {failureThreshold} consecutive failures the circuit opens and the polls are skipped for a cooldown period.
+ * Once it is over, a single probe is let through: a success closes the circuit, a failure opens it again with
+ * a doubled cooldown, up to {maxCooldown}.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long baseCooldown;
+    private final long maxCooldown;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long cooldown;
+    private long openUntil = 0;
+    private long probeDeadline = 0;
+
+    /**
+     * @param failureThreshold The number of consecutive failures opening the circuit
+     * @param baseCooldown     The time the circuit stays open after the first opening, in milliseconds
+     * @param maxCooldown      The maximum time the circuit stays open, in milliseconds
+     */
+    public CircuitBreaker(int failureThreshold, long baseCooldown, long maxCooldown) {
+        this.failureThreshold = failureThreshold;
+        this.baseCooldown = baseCooldown;
+        this.maxCooldown = Math.max(baseCooldown, maxCooldown);
+        this.cooldown = baseCooldown;
+    }
+
+    /**
+     * @param now The current time, in milliseconds
+     * @return True if a request may be sent now
+     */
+    public synchronized boolean allowRequest(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil) return false;
+                state = State.HALF_OPEN;
+                probeDeadline = now + cooldown;
+                return true;
+            default:
+                // A probe is already running. It is replaced if its result never came (e.g. skipped from a full queue)
+                if (now < probeDeadline) return false;
+                probeDeadline = now + cooldown;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        cooldown = baseCooldown;
+    }
+
+    /**
+     * @param now The current time, in milliseconds
+     */
+    public synchronized void onFailure(long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            cooldown = Math.min(cooldown * 2, maxCooldown);
+            open(now);
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open(now);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + cooldown;
+    }
+}
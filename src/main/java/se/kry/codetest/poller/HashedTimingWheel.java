@@ -0,0 +1,158 @@
+package se.kry.codetest.poller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel: a circular array of buckets, each one holding the timeouts expiring on the same slot.
+ * <p>
+ * Scheduling and cancelling are O(1), and advancing the wheel by one tick only visits a single bucket.
+ * Timeouts further away than a full revolution simply stay in their bucket until their deadline tick is reached.
+ * <p>
+ * Not thread-safe: the wheel is meant to be driven from a single Vert.x context.
+ *
+ * @param <T> The type of the scheduled tasks
+ */
+public class HashedTimingWheel<T> {
+    private final long tickDuration;
+    private final int mask;
+    private final Bucket<T>[] wheel;
+
+    /**
+     * Number of ticks already processed
+     */
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * @param tickDuration The duration of a tick, in milliseconds
+     * @param wheelSize    The number of buckets, rounded up to the next power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickDuration, int wheelSize) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("tickDuration must be positive");
+        if (wheelSize <= 0) throw new IllegalArgumentException("wheelSize must be positive");
+
+        int normalizedSize = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (normalizedSize <= 0) normalizedSize = 1;
+
+        this.tickDuration = tickDuration;
+        this.mask = normalizedSize - 1;
+        this.wheel = (Bucket<T>[]) new Bucket<?>[normalizedSize];
+        for (int i = 0; i < normalizedSize; i++) {
+            wheel[i] = new Bucket<>();
+        }
+    }
+
+    /**
+     * Schedule a task to expire after the given delay. The delay is rounded up to the next tick, and is at least one tick.
+     *
+     * @param task  The task to schedule
+     * @param delay The delay, in milliseconds
+     * @return A handle to cancel the timeout
+     */
+    public Timeout<T> schedule(T task, long delay) {
+        long ticks = Math.max(1, (delay + tickDuration - 1) / tickDuration);
+        Timeout<T> timeout = new Timeout<>(task, currentTick + ticks);
+        wheel[(int) (timeout.deadlineTick & mask)].add(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Remove a timeout from the wheel. Nothing happens if it has already expired or been cancelled.
+     *
+     * @param timeout The handle returned by {@link #schedule(Object, long)}
+     */
+    public void cancel(Timeout<T> timeout) {
+        if (null != timeout && null != timeout.bucket) {
+            timeout.bucket.remove(timeout);
+            size--;
+        }
+    }
+
+    /**
+     * Advance the wheel by one tick
+     *
+     * @return The tasks expiring on this tick
+     */
+    public List<T> tick() {
+        currentTick++;
+        Bucket<T> bucket = wheel[(int) (currentTick & mask)];
+        List<T> expired = new ArrayList<>();
+
+        Timeout<T> timeout = bucket.head;
+        while (null != timeout) {
+            Timeout<T> next = timeout.next;
+            if (timeout.deadlineTick <= currentTick) {
+                bucket.remove(timeout);
+                size--;
+                expired.add(timeout.task);
+            }
+            timeout = next;
+        }
+
+        return expired;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public static final class Timeout<T> {
+        private final T task;
+        private final long deadlineTick;
+
+        private Bucket<T> bucket;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getTask() {
+            return task;
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, for O(1) removal
+     */
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            if (null == head) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (null != timeout.previous) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (null != timeout.next) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
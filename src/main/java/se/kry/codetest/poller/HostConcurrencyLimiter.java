@@ -0,0 +1,104 @@
+package se.kry.codetest.poller;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Caps the number of concurrent operations per host. Waiting operations are granted a permit in arrival order.
+ * <p>
+ * Each host has its own queue of waiting operations: once it holds {maxWaitingPerHost} of them, the oldest one is
+ * dropped, failing with a {@link RejectedExecutionException}, to make room for the new one.
+ */
+public class HostConcurrencyLimiter {
+    private final int maxPerHost;
+    private final int maxWaitingPerHost;
+    private final Map<String, HostState> hosts = new HashMap<>();
+
+    private static class HostState {
+        private int inFlight = 0;
+        private final Queue<CompletableEmitter> waiting = new ArrayDeque<>();
+    }
+
+    public HostConcurrencyLimiter(int maxPerHost) {
+        this(maxPerHost, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxPerHost        The maximum number of operations running at the same time against a host
+     * @param maxWaitingPerHost The maximum number of operations waiting for a permit of a host
+     */
+    public HostConcurrencyLimiter(int maxPerHost, int maxWaitingPerHost) {
+        this.maxPerHost = maxPerHost;
+        this.maxWaitingPerHost = maxWaitingPerHost;
+    }
+
+    /**
+     * Wrap an operation so that it only starts once a permit for the host is available, and releases it when done
+     *
+     * @param host      The host the operation targets
+     * @param operation The operation to limit
+     * @return The limited operation
+     */
+    public Completable limit(String host, Completable operation) {
+        return acquire(host).andThen(operation.doFinally(() -> release(host)));
+    }
+
+    /**
+     * @return The number of hosts with running or waiting operations
+     */
+    public synchronized int activeHosts() {
+        return hosts.size();
+    }
+
+    private Completable acquire(String host) {
+        return Completable.create(emitter -> {
+            boolean granted = false;
+            CompletableEmitter dropped = null;
+            synchronized (this) {
+                HostState state = hosts.computeIfAbsent(host, key -> new HostState());
+                if (state.inFlight < maxPerHost) {
+                    state.inFlight++;
+                    granted = true;
+                } else {
+                    if (state.waiting.size() >= maxWaitingPerHost) {
+                        dropped = state.waiting.poll();
+                    }
+                    state.waiting.add(emitter);
+                }
+            }
+            if (null != dropped) {
+                dropped.tryOnError(new RejectedExecutionException("Too many operations waiting for host " + host));
+            }
+            if (granted) {
+                emitter.onComplete();
+            }
+        });
+    }
+
+    private void release(String host) {
+        CompletableEmitter next = null;
+        synchronized (this) {
+            HostState state = hosts.get(host);
+            if (null == state) return;
+
+            // The permit is handed over to the next waiting operation still subscribed
+            while (null == next && !state.waiting.isEmpty()) {
+                CompletableEmitter candidate = state.waiting.poll();
+                if (!candidate.isDisposed()) next = candidate;
+            }
+            if (null == next) {
+                state.inFlight--;
+                if (state.inFlight == 0) hosts.remove(host);
+            }
+        }
+        if (null != next) {
+            next.onComplete();
+        }
+    }
+}
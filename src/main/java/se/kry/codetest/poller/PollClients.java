@@ -0,0 +1,67 @@
+package se.kry.codetest.poller;
+
+import io.vertx.core.http.HttpVersion;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.web.client.WebClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The web clients used to poll the services, one per distinct connect timeout and per scheme.
+ * <p>
+ * The connect timeout can only be set on the client, so services with a custom connect timeout get a client
+ * (and a connection pool) of their own, shared with all the services using the same value.
+ * <p>
+ * The connections are kept alive between two rounds, so that a host polled more often than the keep alive timeout
+ * is not reconnected to (and TLS handshaked with) on every poll. The https hosts negotiating HTTP/2 with ALPN get a
+ * single connection, the polls being multiplexed on it. The http hosts stay on HTTP/1.1: the clear text upgrade
+ * to HTTP/2 is seldom supported, and would cost a round trip on each new connection.
+ */
+public class PollClients {
+    private final Vertx vertx;
+    private final PollerOptions options;
+    private final Map<Integer, WebClient> clients = new ConcurrentHashMap<>();
+    private final Map<Integer, WebClient> sslClients = new ConcurrentHashMap<>();
+
+    public PollClients(Vertx vertx, PollerOptions options) {
+        this.vertx = vertx;
+        this.options = options;
+    }
+
+    /**
+     * @param connectTimeout The connect timeout in milliseconds, null for the default one
+     * @param ssl            True to poll an https url
+     * @return The client to use
+     */
+    public WebClient get(Integer connectTimeout, boolean ssl) {
+        int timeout = null != connectTimeout ? connectTimeout : options.getConnectTimeout();
+        return (ssl ? sslClients : clients).computeIfAbsent(timeout, key -> create(key, ssl));
+    }
+
+    public void close() {
+        clients.values().forEach(WebClient::close);
+        clients.clear();
+        sslClients.values().forEach(WebClient::close);
+        sslClients.clear();
+    }
+
+    private WebClient create(int connectTimeout, boolean ssl) {
+        boolean http2 = ssl && options.isHttp2();
+        return WebClient.create(
+                vertx,
+                new WebClientOptions()
+                        .setFollowRedirects(true)
+                        .setVerifyHost(false)
+                        .setTrustAll(true)
+                        .setMaxPoolSize(options.getMaxPerHost())
+                        .setKeepAlive(true)
+                        .setKeepAliveTimeout(options.getKeepAliveTimeout())
+                        .setHttp2KeepAliveTimeout(options.getKeepAliveTimeout())
+                        .setProtocolVersion(http2 ? HttpVersion.HTTP_2 : HttpVersion.HTTP_1_1)
+                        .setUseAlpn(http2)
+                        .setConnectTimeout(connectTimeout)
+        );
+    }
+}
@@ -0,0 +1,88 @@
+package se.kry.codetest.poller;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The services polling the same endpoint with the same settings. The endpoint is requested once for all of them,
+ * and the result is handed to every member.
+ * <p>
+ * The members, identified by service key, are reference counted: a group is dropped once its last member leaves it.
+ * Thread safe.
+ */
+public class PollGroup {
+    @Getter
+    private final String key;
+    @Getter
+    private final PollTarget target;
+    private final Set<String> members = new HashSet<>();
+    private boolean polling = false;
+    /**
+     * The service which ran the last poll, and its end
+     */
+    private String polledBy = null;
+    private long polledAt = -1;
+
+    public PollGroup(String key, PollTarget target) {
+        this.key = key;
+        this.target = target;
+    }
+
+    /**
+     * @param name The key of the service joining the group
+     */
+    public synchronized void join(String name) {
+        members.add(name);
+    }
+
+    /**
+     * @param name The key of the service leaving the group. If it ran the last poll, the next due member polls.
+     * @return The number of members left
+     */
+    public synchronized int leave(String name) {
+        members.remove(name);
+        if (name.equals(polledBy)) {
+            polledBy = null;
+        }
+        return members.size();
+    }
+
+    public synchronized Set<String> members() {
+        return Collections.unmodifiableSet(new HashSet<>(members));
+    }
+
+    public synchronized int size() {
+        return members.size();
+    }
+
+    /**
+     * Start a poll of the endpoint, unless one is running or the last one, ran for another member, is recent enough
+     * to be shared. A member is never held back by its own last poll: its schedule decides when it is due, so that
+     * with a max age of an interval, the member which last polled polls again once per interval, the others sharing
+     * its results.
+     *
+     * @param name   The key of the due service
+     * @param now    The current time, in milliseconds
+     * @param maxAge The age above which the last result is too old to be shared, in milliseconds
+     * @return True if the caller is to poll the endpoint, and then call {@link #finish(long)}
+     */
+    public synchronized boolean tryStart(String name, long now, long maxAge) {
+        if (polling || (null != polledBy && !polledBy.equals(name) && now - polledAt < maxAge)) {
+            return false;
+        }
+        polling = true;
+        polledBy = name;
+        return true;
+    }
+
+    /**
+     * @param now The time the poll ended, in milliseconds
+     */
+    public synchronized void finish(long now) {
+        polling = false;
+        polledAt = now;
+    }
+}
@@ -0,0 +1,374 @@
+package se.kry.codetest.poller;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.vertx.reactivex.core.Context;
+import io.vertx.reactivex.core.Vertx;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Triggers the poll of each service at its own interval, using a single Vert.x timer driving a
+ * {@link HashedTimingWheel}.
+ * <p>
+ * Each service is polled at a fixed phase within its interval, derived from a hash of its key, so that the polls
+ * are spread evenly over time instead of all firing at once, and a service keeps the same phase across restarts.
+ * <p>
+ * The interval of each service is adapted to its stability by an {@link AdaptiveInterval}: a change of status
+ * reschedules the service at the interval matching its new status. The next check of each scheduled service can be
+ * read from any thread with {@link #nextCheckOf(String)}.
+ * <p>
+ * On a warm start, each service resumes the schedule of its last check: its stability is restored from the history,
+ * and it is polled at its slot closest to one interval, adapted to that stability, after that check. The services
+ * whose slot has passed while the application was down are overdue: they are polled first, the most overdue first,
+ * spread over the first {@value #OVERDUE_SPREAD} ms instead of all at once.
+ * <p>
+ * The services are identified by their {@link ServiceStatus#getKey() key}, unique among all the owners.
+ * The schedule follows the changes of the {@link ServiceStatusRegistry}. Only the services accepted by the ownership
+ * predicate are scheduled: when it changes, {@link #rebalance()} must be called. All the state is confined to the
+ * context the scheduler was created on.
+ */
+@Slf4j
+public class PollScheduler {
+    public static final long DEFAULT_TICK_DURATION = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 1024;
+    /**
+     * Time over which the services overdue on startup are spread, in milliseconds
+     */
+    static final long OVERDUE_SPREAD = 10_000;
+
+    private final Vertx vertx;
+    private final Context context;
+    private final ServiceStatusRegistry registry;
+    private final Consumer<ServiceStatus> pollAction;
+    private final Predicate<String> ownership;
+    private final HashedTimingWheel<String> wheel;
+    private final AdaptiveInterval intervals;
+    private final Map<String, HashedTimingWheel.Timeout<String>> timeouts = new HashMap<>();
+    /**
+     * The time the status of each service last changed, absent if it has not since the start of the scheduler
+     */
+    private final Map<String, Long> stableSince = new HashMap<>();
+    /**
+     * Written on the scheduler's context, read by the API
+     */
+    private final Map<String, NextCheck> nextChecks = new ConcurrentHashMap<>();
+    private final Timer roundTimer;
+    private final Timer startupTimer;
+
+    private long timerId = -1;
+    private long startTime;
+    private long processedTicks;
+    /**
+     * The start of the application, and whether it ran its first poll since
+     */
+    private long bootTime;
+    private boolean polled = false;
+
+    public PollScheduler(Vertx vertx, ServiceStatusRegistry registry, Consumer<ServiceStatus> pollAction) {
+        this(vertx, registry, pollAction, name -> true);
+    }
+
+    /**
+     * @param ownership Tells, from its key, whether a service is to be polled by this node
+     */
+    public PollScheduler(Vertx vertx, ServiceStatusRegistry registry, Consumer<ServiceStatus> pollAction,
+                         Predicate<String> ownership) {
+        this(vertx, registry, pollAction, ownership, new CompositeMeterRegistry());
+    }
+
+    public PollScheduler(Vertx vertx, ServiceStatusRegistry registry, Consumer<ServiceStatus> pollAction,
+                         Predicate<String> ownership, MeterRegistry meterRegistry) {
+        this(vertx, registry, pollAction, ownership, meterRegistry, AdaptiveInterval.fixed());
+    }
+
+    public PollScheduler(Vertx vertx, ServiceStatusRegistry registry, Consumer<ServiceStatus> pollAction,
+                         Predicate<String> ownership, MeterRegistry meterRegistry, AdaptiveInterval intervals) {
+        this(vertx, registry, pollAction, ownership, meterRegistry, intervals, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+    }
+
+    public PollScheduler(Vertx vertx, ServiceStatusRegistry registry, Consumer<ServiceStatus> pollAction,
+                         Predicate<String> ownership, MeterRegistry meterRegistry, AdaptiveInterval intervals,
+                         long tickDuration, int wheelSize) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.registry = registry;
+        this.pollAction = pollAction;
+        this.ownership = ownership;
+        this.intervals = intervals;
+        this.wheel = new HashedTimingWheel<>(tickDuration, wheelSize);
+        this.roundTimer = Timer.builder("poller.round")
+                .description("Time spent handing the due services over to the poller, per timer run")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.startupTimer = Timer.builder("poller.startup")
+                .description("Time from the start of the application to its first poll")
+                .register(meterRegistry);
+        Gauge.builder("poller.scheduled", timeouts, Map::size)
+                .description("Services scheduled for polling on this node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedule all the registered services, as on a cold start, and start the timer. Must be called from the
+     * scheduler's context.
+     */
+    public void start() {
+        start(Collections.emptyMap(), System.currentTimeMillis());
+    }
+
+    /**
+     * Schedule all the registered services from their last check and start the timer. Must be called from the
+     * scheduler's context.
+     *
+     * @param lastChecks The last check of the services, by key. A service without one is scheduled at its next slot.
+     * @param bootTime   The start of the application, in milliseconds, its first poll is measured from
+     */
+    public void start(Map<String, ServiceHistoryRepository.LastCheck> lastChecks, long bootTime) {
+        this.bootTime = bootTime;
+        startTime = System.currentTimeMillis();
+        processedTicks = 0;
+        scheduleFromLastChecks(lastChecks);
+        registry.addListener((previous, current) -> context.runOnContext(v -> onServiceChange(previous, current)));
+
+        timerId = vertx.setPeriodic(wheel.getTickDuration(), id -> onTimer());
+        log.info("Poll scheduler started with {} service(s)", timeouts.size());
+    }
+
+    public void stop() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    /**
+     * Schedule the services this node now owns, and drop the ones it no longer owns. Must be called from the
+     * scheduler's context.
+     */
+    public void rebalance() {
+        int before = timeouts.size();
+        registry.findAll().forEach(service -> {
+            boolean owned = ownership.test(service.getKey());
+            boolean scheduled = timeouts.containsKey(service.getKey());
+            if (owned && !scheduled) {
+                schedule(service, wheelTime());
+            } else if (!owned && scheduled) {
+                unschedule(service.getKey());
+            }
+        });
+        log.info("Poll scheduler rebalanced: {} -> {} service(s)", before, timeouts.size());
+    }
+
+    /**
+     * @return The number of services currently scheduled
+     */
+    public int scheduledCount() {
+        return timeouts.size();
+    }
+
+    /**
+     * @param key The key of a service
+     * @return Its next check, empty if it is not scheduled on this node
+     */
+    public Optional<NextCheck> nextCheckOf(String key) {
+        return Optional.ofNullable(nextChecks.get(key));
+    }
+
+    /**
+     * Delay until the next poll slot of a service. A slot closer than one tick is skipped for the next one.
+     *
+     * @param name     The key of the service to poll
+     * @param interval Its poll interval, in milliseconds
+     * @param now      The current time, in milliseconds
+     * @return The delay in milliseconds
+     */
+    long delayUntilNextSlot(String name, long interval, long now) {
+        long delay = Math.floorMod(phaseOf(name, interval) - now, interval);
+        if (delay <= wheel.getTickDuration()) {
+            delay += interval;
+        }
+        return delay;
+    }
+
+    /**
+     * The poll slot of a service closest to a time: the slot a check made at {time - interval} was leading to,
+     * despite the latency of this check.
+     *
+     * @param name     The key of the service
+     * @param interval Its poll interval, in milliseconds
+     * @param time     The time, in milliseconds
+     * @return The time of the slot, in milliseconds
+     */
+    static long nearestSlot(String name, long interval, long time) {
+        long half = interval / 2;
+        return time + Math.floorMod(phaseOf(name, interval) - time + half, interval) - half;
+    }
+
+    /**
+     * Deterministic offset of a service within its interval
+     */
+    static long phaseOf(String name, long interval) {
+        // Fibonacci hashing spreads close hash codes (e.g. "service-1", "service-2") far apart
+        long hash = name.hashCode() * 0x9E3779B97F4A7C15L;
+        return Math.floorMod(hash ^ (hash >>> 32), interval);
+    }
+
+    /**
+     * The time the wheel has reached. Delays are computed from it, so that they stay accurate while catching up.
+     */
+    private long wheelTime() {
+        return startTime + processedTicks * wheel.getTickDuration();
+    }
+
+    private void onTimer() {
+        long roundStart = System.nanoTime();
+        // Catch up on the ticks missed if the event loop was busy
+        long expectedTicks = (System.currentTimeMillis() - startTime) / wheel.getTickDuration();
+        while (processedTicks < expectedTicks) {
+            processedTicks++;
+            List<String> expired = wheel.tick();
+            expired.forEach(this::onExpired);
+        }
+        roundTimer.record(System.nanoTime() - roundStart, TimeUnit.NANOSECONDS);
+    }
+
+    private void onExpired(String key) {
+        timeouts.remove(key);
+        nextChecks.remove(key);
+        registry.findByKey(key).filter(service -> ownership.test(key)).ifPresent(service -> {
+            schedule(service, wheelTime());
+            if (!polled) {
+                polled = true;
+                long elapsed = System.currentTimeMillis() - bootTime;
+                startupTimer.record(elapsed, TimeUnit.MILLISECONDS);
+                log.info("First poll {} ms after startup", elapsed);
+            }
+            pollAction.accept(service);
+        });
+    }
+
+    private void scheduleFromLastChecks(Map<String, ServiceHistoryRepository.LastCheck> lastChecks) {
+        long now = wheelTime();
+        Map<String, Long> overdue = new HashMap<>();
+        List<ServiceStatus> overdueServices = new ArrayList<>();
+        registry.findAll().forEach(service -> {
+            String key = service.getKey();
+            ServiceHistoryRepository.LastCheck lastCheck = lastChecks.get(key);
+            if (!ownership.test(key)) {
+                return;
+            }
+            if (null == lastCheck) {
+                schedule(service, now);
+                return;
+            }
+            if (lastCheck.getStableSince() >= 0) {
+                stableSince.put(key, lastCheck.getStableSince());
+            }
+            long interval = intervalOf(service, now);
+            long slot = nearestSlot(key, interval, lastCheck.getCheckedAt() + interval);
+            if (slot - now > wheel.getTickDuration()) {
+                scheduleIn(service, interval, slot - now, now);
+            } else {
+                overdue.put(key, slot);
+                overdueServices.add(service);
+            }
+        });
+
+        // The most overdue first, spread so that they do not all hit the poller at once
+        overdueServices.sort(Comparator.comparingLong(service -> overdue.get(service.getKey())));
+        for (int i = 0; i < overdueServices.size(); i++) {
+            ServiceStatus service = overdueServices.get(i);
+            long interval = intervalOf(service, now);
+            long spread = wheel.getTickDuration() + i * OVERDUE_SPREAD / overdueServices.size();
+            scheduleIn(service, interval, Math.min(spread, delayUntilNextSlot(service.getKey(), interval, now)), now);
+        }
+        if (!lastChecks.isEmpty()) {
+            log.info("{} service(s) overdue on startup", overdueServices.size());
+        }
+    }
+
+    private void onServiceChange(ServiceStatus previous, ServiceStatus current) {
+        if (null != previous && null != current
+                && previous.getKey().equals(current.getKey())
+                && previous.getVersion() == current.getVersion()) {
+            // Status change only: the service is rescheduled at the interval matching its new status
+            if (previous.getStatus() != current.getStatus()) {
+                stableSince.put(current.getKey(), wheelTime());
+                if (timeouts.containsKey(current.getKey())) {
+                    schedule(current, wheelTime());
+                }
+            }
+            return;
+        }
+        if (null != previous) {
+            unschedule(previous.getKey());
+            stableSince.remove(previous.getKey());
+        }
+        if (null != current) {
+            stableSince.put(current.getKey(), wheelTime());
+            if (ownership.test(current.getKey())) {
+                schedule(current, wheelTime());
+            }
+        }
+    }
+
+    private void schedule(ServiceStatus service, long now) {
+        long interval = intervalOf(service, now);
+        scheduleIn(service, interval, delayUntilNextSlot(service.getKey(), interval, now), now);
+    }
+
+    private void scheduleIn(ServiceStatus service, long interval, long delay, long now) {
+        String key = service.getKey();
+        unschedule(key);
+        timeouts.put(key, wheel.schedule(key, delay));
+        nextChecks.put(key, new NextCheck(interval, now + delay));
+    }
+
+    private long intervalOf(ServiceStatus service, long now) {
+        return intervals.intervalOf(service, stableSince.getOrDefault(service.getKey(), AdaptiveInterval.UNKNOWN_SINCE), now);
+    }
+
+    private void unschedule(String key) {
+        wheel.cancel(timeouts.remove(key));
+        nextChecks.remove(key);
+    }
+
+    /**
+     * The next check of a scheduled service
+     */
+    @Getter
+    public static final class NextCheck {
+        /**
+         * The interval the service is polled at, adapted to its stability, in milliseconds
+         */
+        private final long interval;
+        /**
+         * The time of the next poll, in milliseconds
+         */
+        private final long at;
+
+        private NextCheck(long interval, long at) {
+            this.interval = interval;
+            this.at = at;
+        }
+    }
+}
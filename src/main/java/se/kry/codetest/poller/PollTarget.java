@@ -0,0 +1,82 @@
+package se.kry.codetest.poller;
+
+import io.vertx.core.http.RequestOptions;
+import lombok.Getter;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * The url of a service, parsed once and reused by all its polls.
+ * <p>
+ * Immutable: the request options are built upfront and must not be modified.
+ */
+@Getter
+public final class PollTarget {
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+
+    /**
+     * The url the target was parsed from
+     */
+    private final String url;
+    private final boolean ssl;
+    private final String host;
+    private final int port;
+    /**
+     * The path and query of the url
+     */
+    private final String requestUri;
+    /**
+     * The url normalized: lower case scheme and host, explicit port. The urls of a same endpoint share it.
+     */
+    private final String endpoint;
+    private final RequestOptions requestOptions;
+
+    private PollTarget(String url, boolean ssl, String host, int port, String requestUri) {
+        this.url = url;
+        this.ssl = ssl;
+        this.host = host;
+        this.port = port;
+        this.requestUri = requestUri;
+        this.endpoint = (ssl ? "https://" : "http://") + host.toLowerCase(Locale.ROOT) + ":" + port + requestUri;
+        this.requestOptions = new RequestOptions()
+                .setSsl(ssl)
+                .setHost(host)
+                .setPort(port)
+                .setURI(requestUri);
+    }
+
+    /**
+     * @param url An absolute http or https url
+     * @return The parsed url
+     *
+     * @throws IllegalArgumentException The url is not an absolute http or https url with a host
+     */
+    public static PollTarget parse(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException | NullPointerException ex) {
+            throw new IllegalArgumentException("Invalid url: " + url, ex);
+        }
+
+        boolean ssl;
+        if ("https".equalsIgnoreCase(uri.getScheme())) {
+            ssl = true;
+        } else if ("http".equalsIgnoreCase(uri.getScheme())) {
+            ssl = false;
+        } else {
+            throw new IllegalArgumentException("Not an http url: " + url);
+        }
+        if (null == uri.getHost()) {
+            throw new IllegalArgumentException("No host in url: " + url);
+        }
+
+        int port = uri.getPort() >= 0 ? uri.getPort() : ssl ? HTTPS_PORT : HTTP_PORT;
+        String path = null != uri.getRawPath() && !uri.getRawPath().isEmpty() ? uri.getRawPath() : "/";
+        String requestUri = null != uri.getRawQuery() ? path + "?" + uri.getRawQuery() : path;
+        return new PollTarget(url, ssl, uri.getHost(), port, requestUri);
+    }
+}
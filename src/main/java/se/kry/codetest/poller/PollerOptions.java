@@ -0,0 +1,120 @@
+package se.kry.codetest.poller;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Data;
+import lombok.NonNull;
+import se.kry.codetest.model.ProbeMethodEnum;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tuning of the poll pipeline, read from the environment
+ */
+@Data
+public class PollerOptions {
+    public static final String MAX_IN_FLIGHT = "POLLER_MAX_IN_FLIGHT";
+    public static final String MAX_PER_HOST = "POLLER_MAX_PER_HOST";
+    public static final String RATE_LIMIT = "POLLER_RATE_LIMIT";
+    public static final String MAX_QUEUED = "POLLER_MAX_QUEUED";
+    public static final String CONNECT_TIMEOUT = "POLLER_CONNECT_TIMEOUT";
+    public static final String IDLE_TIMEOUT = "POLLER_IDLE_TIMEOUT";
+    public static final String TOTAL_TIMEOUT = "POLLER_TOTAL_TIMEOUT";
+    public static final String BREAKER_THRESHOLD = "POLLER_BREAKER_THRESHOLD";
+    public static final String BREAKER_COOLDOWN = "POLLER_BREAKER_COOLDOWN";
+    public static final String BREAKER_MAX_COOLDOWN = "POLLER_BREAKER_MAX_COOLDOWN";
+    public static final String PROBE_METHOD = "POLLER_PROBE_METHOD";
+    public static final String KEEP_ALIVE_TIMEOUT = "POLLER_KEEP_ALIVE_TIMEOUT";
+    public static final String HTTP2 = "POLLER_HTTP2";
+    public static final String ADAPTIVE = "POLLER_ADAPTIVE";
+    public static final String MIN_INTERVAL = "POLLER_MIN_INTERVAL";
+    public static final String MAX_INTERVAL = "POLLER_MAX_INTERVAL";
+
+    public static final List<String> KEYS = Arrays.asList(MAX_IN_FLIGHT, MAX_PER_HOST, RATE_LIMIT, MAX_QUEUED,
+            CONNECT_TIMEOUT, IDLE_TIMEOUT, TOTAL_TIMEOUT, BREAKER_THRESHOLD, BREAKER_COOLDOWN, BREAKER_MAX_COOLDOWN,
+            PROBE_METHOD, KEEP_ALIVE_TIMEOUT, HTTP2, ADAPTIVE, MIN_INTERVAL, MAX_INTERVAL);
+
+    /**
+     * Maximum number of requests running at the same time, all hosts included
+     */
+    private int maxInFlight = 64;
+    /**
+     * Maximum number of requests running at the same time against a single host
+     */
+    private int maxPerHost = 4;
+    /**
+     * Maximum number of requests started per second. 0 disables the limit.
+     */
+    private int rateLimit = 0;
+    /**
+     * Maximum number of due services waiting for a free slot. When full, the oldest ones are skipped until their next poll.
+     */
+    private int maxQueued = 10_000;
+    /**
+     * Default poll timeouts in milliseconds, for the services not defining their own
+     */
+    private int connectTimeout = 5_000;
+    private int idleTimeout = 10_000;
+    private int totalTimeout = 30_000;
+    /**
+     * Number of consecutive failures after which a service is only probed from time to time
+     */
+    private int breakerThreshold = 5;
+    /**
+     * Time between two probes of a failing service, in milliseconds. Doubled after each failed probe, up to the max.
+     */
+    private long breakerCooldown = 5 * 60 * 1000;
+    private long breakerMaxCooldown = 60 * 60 * 1000;
+    /**
+     * How the services not defining their own probe method are polled
+     */
+    private ProbeMethodEnum probeMethod = ProbeMethodEnum.GET_DISCARD;
+    /**
+     * Time an unused connection is kept open for the next polls of its host, in seconds
+     */
+    private int keepAliveTimeout = 60;
+    /**
+     * Whether to poll over HTTP/2 the https hosts supporting it, negotiated with ALPN.
+     * The polls of a host are then multiplexed on a single connection.
+     */
+    private boolean http2 = true;
+    /**
+     * Whether to adapt the poll interval of the services to their stability, see {@link AdaptiveInterval}
+     */
+    private boolean adaptive = true;
+    /**
+     * Bounds of the adapted poll intervals, in seconds. A service is never polled slower than its own interval
+     * because of the max one, nor faster because of the min one.
+     */
+    private int minInterval = 15;
+    private int maxInterval = 10 * 60;
+
+    /**
+     * Create the options from a config holding the POLLER_* keys. Missing keys keep their default value.
+     *
+     * @param config The config
+     * @return A PollerOptions instance
+     */
+    public static PollerOptions fromConfig(@NonNull JsonObject config) {
+        PollerOptions output = new PollerOptions();
+        output.setMaxInFlight(Math.max(1, config.getInteger(MAX_IN_FLIGHT, output.getMaxInFlight())));
+        output.setMaxPerHost(Math.max(1, config.getInteger(MAX_PER_HOST, output.getMaxPerHost())));
+        output.setRateLimit(Math.max(0, config.getInteger(RATE_LIMIT, output.getRateLimit())));
+        output.setMaxQueued(Math.max(1, config.getInteger(MAX_QUEUED, output.getMaxQueued())));
+        output.setConnectTimeout(Math.max(1, config.getInteger(CONNECT_TIMEOUT, output.getConnectTimeout())));
+        output.setIdleTimeout(Math.max(1, config.getInteger(IDLE_TIMEOUT, output.getIdleTimeout())));
+        output.setTotalTimeout(Math.max(1, config.getInteger(TOTAL_TIMEOUT, output.getTotalTimeout())));
+        output.setBreakerThreshold(Math.max(1, config.getInteger(BREAKER_THRESHOLD, output.getBreakerThreshold())));
+        output.setBreakerCooldown(Math.max(0, config.getLong(BREAKER_COOLDOWN, output.getBreakerCooldown())));
+        output.setBreakerMaxCooldown(Math.max(0, config.getLong(BREAKER_MAX_COOLDOWN, output.getBreakerMaxCooldown())));
+        output.setProbeMethod(ProbeMethodEnum.valueOf(config.getString(PROBE_METHOD, output.getProbeMethod().name()).toUpperCase()));
+        output.setKeepAliveTimeout(Math.max(1, config.getInteger(KEEP_ALIVE_TIMEOUT, output.getKeepAliveTimeout())));
+        output.setHttp2(config.getBoolean(HTTP2, output.isHttp2()));
+        output.setAdaptive(config.getBoolean(ADAPTIVE, output.isAdaptive()));
+        output.setMinInterval(Math.max(ServiceStatus.MIN_POLL_INTERVAL, config.getInteger(MIN_INTERVAL, output.getMinInterval())));
+        output.setMaxInterval(Math.max(output.getMinInterval(), config.getInteger(MAX_INTERVAL, output.getMaxInterval())));
+
+        return output;
+    }
+}
@@ -0,0 +1,44 @@
+package se.kry.codetest.poller;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces operations evenly so that no more than {ratePerSecond} start each second.
+ * <p>
+ * Meant to be used from a serialized stage of a pipeline (e.g. concatMap): callers are not synchronized.
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final Scheduler scheduler;
+    private long nextSlot = 0;
+
+    /**
+     * @param ratePerSecond The maximum number of operations per second, 0 for no limit
+     * @param scheduler     The scheduler used to wait for the next slot
+     */
+    public RateLimiter(int ratePerSecond, Scheduler scheduler) {
+        this.intervalNanos = ratePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSecond : 0;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return A future completing when the next operation is allowed to start
+     */
+    public Completable acquire() {
+        if (intervalNanos == 0) {
+            return Completable.complete();
+        }
+
+        return Completable.defer(() -> {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextSlot);
+            nextSlot = slot + intervalNanos;
+
+            long wait = slot - now;
+            return wait <= 0 ? Completable.complete() : Completable.timer(wait, TimeUnit.NANOSECONDS, scheduler);
+        });
+    }
+}
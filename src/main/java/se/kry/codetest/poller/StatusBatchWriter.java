@@ -0,0 +1,179 @@
+package se.kry.codetest.poller;
+
+import io.reactivex.Completable;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
+import se.kry.codetest.model.ServiceHistoryEntry;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+import se.kry.codetest.repository.ServiceStatusRepository;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects the poll results and persists them in batches.
+ * <p>
+ * Only the results differing from the last known status of a service are kept, and a service polled several times
+ * before a flush only keeps its last result. The last known status is the one being flushed, if any, else the one of
+ * the registry. A flush writes every pending status in a single transaction.
+ * <p>
+ * Every result is also appended to the history, in a second transaction, unless its service is gone by then. At most
+ * {@link #MAX_PENDING_HISTORY} history entries are kept between two flushes, the oldest ones being dropped first.
+ */
+@Slf4j
+public class StatusBatchWriter {
+    public static final int MAX_PENDING_HISTORY = 100_000;
+    /**
+     * Time between two checks of the end of the running flush, in milliseconds
+     */
+    private static final long DRAIN_WAIT = 10;
+
+    private final ServiceStatusRepository repository;
+    private final ServiceHistoryRepository historyRepository;
+    private final ServiceStatusRegistry registry;
+
+    private final Object lock = new Object();
+    private Map<String, ServiceStatus> pending = new HashMap<>();
+    /**
+     * The statuses of the running flush, not in the registry yet
+     */
+    private Map<String, ServiceStatus> flushed = Collections.emptyMap();
+    private Deque<ServiceHistoryEntry> pendingHistory = new ArrayDeque<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    public StatusBatchWriter(ServiceStatusRepository repository, ServiceHistoryRepository historyRepository,
+                             ServiceStatusRegistry registry) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.repository = repository;
+        this.historyRepository = historyRepository;
+        this.registry = registry;
+    }
+
+    /**
+     * Record the result of a poll, to be persisted on the next flush.
+     * The result is dropped if the service has been deleted or updated since it was polled.
+     *
+     * @param service The polled service, as it was when the poll started
+     * @param status  The status resulting from the poll
+     * @param latency The time the poll took, in milliseconds
+     */
+    public void record(ServiceStatus service, ServiceStatusValueEnum status, long latency) {
+        // The history is kept by service key, the name of the services of the default owner
+        String key = service.getKey();
+        ServiceStatus current = registry.findByKey(key).orElse(null);
+
+        ServiceHistoryEntry entry = new ServiceHistoryEntry();
+        entry.setServiceName(key);
+        entry.setCheckedAt(new DateTime());
+        entry.setStatus(status);
+        entry.setLatency(latency);
+
+        synchronized (lock) {
+            if (pendingHistory.size() >= MAX_PENDING_HISTORY) {
+                pendingHistory.pollFirst();
+            }
+            pendingHistory.addLast(entry);
+
+            ServiceStatus inFlight = flushed.get(key);
+            ServiceStatusValueEnum known = null != inFlight && inFlight.getVersion() == service.getVersion()
+                    ? inFlight.getStatus()
+                    : null != current ? current.getStatus() : null;
+            if (null == current || current.getVersion() != service.getVersion() || known == status) {
+                pending.remove(key);
+            } else {
+                ServiceStatus result = service.copy();
+                result.setStatus(status);
+                pending.put(key, result);
+            }
+        }
+    }
+
+    /**
+     * Persist all the pending statuses in a single transaction, then the pending history entries in another one.
+     * If a flush is already running, the pending results are left for the next one. History entries failing to be
+     * persisted are lost.
+     *
+     * @return A future holding the success of the operation
+     */
+    public Completable flush() {
+        return Completable.defer(() -> {
+            if (!flushing.compareAndSet(false, true)) {
+                return Completable.complete();
+            }
+
+            Map<String, ServiceStatus> batch;
+            Deque<ServiceHistoryEntry> historyBatch;
+            synchronized (lock) {
+                batch = pending;
+                pending = new HashMap<>();
+                historyBatch = pendingHistory;
+                pendingHistory = new ArrayDeque<>();
+                flushed = batch;
+            }
+
+            // The history of a service deleted or renamed since its results were recorded is already gone or moved
+            historyBatch.removeIf(entry -> !registry.findByKey(entry.getServiceName()).isPresent());
+
+            if (batch.isEmpty() && historyBatch.isEmpty()) {
+                endFlush();
+                return Completable.complete();
+            }
+
+            Completable statuses = repository.setStatuses(batch.values())
+                    .doOnComplete(() -> log.debug("{} status change(s) persisted", batch.size()))
+                    .doOnError(error -> {
+                        log.error("Unable to persist {} status change(s): {}", batch.size(), error.getMessage());
+                        synchronized (lock) {
+                            // Newer results recorded in the meantime win over the failed ones. They were compared to
+                            // the failed ones, so that none was dropped for matching the stale status of the registry
+                            batch.forEach(pending::putIfAbsent);
+                            flushed = Collections.emptyMap();
+                        }
+                    });
+            Completable history = historyRepository.insertAll(historyBatch)
+                    .doOnComplete(() -> log.debug("{} history entries persisted", historyBatch.size()))
+                    .doOnError(error -> log.error("Unable to persist {} history entries: {}", historyBatch.size(), error.getMessage()));
+
+            // The history is written even if the statuses failed
+            return statuses
+                    .onErrorResumeNext(error -> history.onErrorComplete().andThen(Completable.error(error)))
+                    .andThen(history)
+                    // Ended before completing, so that a flush chained to this one runs
+                    .doOnTerminate(this::endFlush)
+                    .doOnDispose(this::endFlush);
+        });
+    }
+
+    private void endFlush() {
+        synchronized (lock) {
+            flushed = Collections.emptyMap();
+        }
+        flushing.set(false);
+    }
+
+    /**
+     * Persist all the pending results, once the running flush if any is done. Meant for the shutdown, once the
+     * results are no longer recorded.
+     *
+     * @return A future holding the success of the operation
+     */
+    public Completable drain() {
+        return Completable.defer(() -> flushing.get()
+                ? Completable.timer(DRAIN_WAIT, TimeUnit.MILLISECONDS).andThen(drain())
+                : flush());
+    }
+
+    public int pendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+}
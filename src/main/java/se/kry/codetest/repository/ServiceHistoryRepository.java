@@ -0,0 +1,244 @@
+package se.kry.codetest.repository;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.sqlclient.Row;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
+import se.kry.codetest.DBConnector;
+import se.kry.codetest.model.ServiceHistoryEntry;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Append-only log of the poll results, indexed by service name and check time
+ */
+@Slf4j
+public class ServiceHistoryRepository {
+    private static final int LAST_CHECK_CHUNK = 500;
+
+    final private DBConnector dbConnector;
+
+    public ServiceHistoryRepository(DBConnector connector) {
+        log.debug("Instantiating ServiceHistoryRepository...");
+        this.dbConnector = connector;
+    }
+
+    /**
+     * Append poll results, in a single transaction
+     *
+     * @param entries The results to append
+     * @return A future holding the success of the operation
+     */
+    public Completable insertAll(Collection<ServiceHistoryEntry> entries) {
+        List<JsonArray> params = entries
+                .stream()
+                .map(entry -> new JsonArray(Arrays.asList(
+                        entry.getServiceName(), entry.getCheckedAt().getMillis(), entry.getStatus().name(), entry.getLatency())))
+                .collect(Collectors.toList());
+
+        return dbConnector.batch("INSERT INTO service_history (service_name, checked_at, status, latency) values(?, ?, ?, ?)", params);
+    }
+
+    /**
+     * Delete the poll results of a service. Only needed by the storage engines keeping the services outside the DB:
+     * the service table deletes the history of its services itself.
+     *
+     * @param key The key of the service
+     * @return A future holding the success of the operation
+     */
+    public Completable deleteByService(String key) {
+        return dbConnector.query("DELETE FROM service_history WHERE service_name = ?", new JsonArray().add(key))
+                .ignoreElement();
+    }
+
+    /**
+     * Move the poll results of a service to its new key. Only needed by the storage engines keeping the services
+     * outside the DB: the service table moves the history of its services itself.
+     *
+     * @param fromKey The previous key of the service
+     * @param toKey   The new key of the service
+     * @return A future holding the success of the operation
+     */
+    public Completable moveService(String fromKey, String toKey) {
+        return dbConnector.query("UPDATE service_history SET service_name = ? WHERE service_name = ?",
+                        new JsonArray().add(toKey).add(fromKey))
+                .ignoreElement();
+    }
+
+    /**
+     * Get the poll results of a service in the range [from, to[, most recent first
+     *
+     * @param name  The name of the service
+     * @param from  The start of the range, in epoch milliseconds
+     * @param to    The end of the range, in epoch milliseconds
+     * @param limit The maximum number of results
+     * @return A future holding the results
+     */
+    public Single<List<ServiceHistoryEntry>> findByService(String name, long from, long to, int limit) {
+        return dbConnector.query("SELECT * FROM service_history WHERE service_name = ? AND checked_at >= ? AND checked_at < ? " +
+                                "ORDER BY checked_at DESC LIMIT ?",
+                        new JsonArray(Arrays.asList(name, from, to, limit)))
+                .map(rows -> StreamSupport
+                        .stream(rows.spliterator(), false)
+                        .map(ServiceHistoryRepository::fromRow)
+                        .collect(Collectors.toList()))
+                .toSingle();
+    }
+
+    /**
+     * Get the last poll result of each service, and since when it has had its current status, by chunks of
+     * {@value #LAST_CHECK_CHUNK} services. The last result is a single seek of the (service_name, checked_at) index,
+     * whatever the size of the history; the last change of status is only looked for from the given time.
+     *
+     * @param services     The services, whose current status is compared to the history
+     * @param changedSince Gives the time from which a change of status of a service is looked for, in epoch ms
+     * @return A future holding the last checks of the services having one, by service key
+     */
+    public Single<Map<String, LastCheck>> findLastChecks(Collection<ServiceStatus> services,
+                                                          ToLongFunction<ServiceStatus> changedSince) {
+        List<JsonArray> all = services
+                .stream()
+                .map(service -> new JsonArray()
+                        .add(service.getKey())
+                        .add(null != service.getStatus() ? service.getStatus().name() : ServiceStatusValueEnum.UNKNOWN.name())
+                        .add(changedSince.applyAsLong(service)))
+                .collect(Collectors.toList());
+        List<List<JsonArray>> chunks = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += LAST_CHECK_CHUNK) {
+            chunks.add(all.subList(i, Math.min(all.size(), i + LAST_CHECK_CHUNK)));
+        }
+
+        return Flowable.fromIterable(chunks)
+                .concatMapSingle(this::findLastChecksChunk)
+                .<Map<String, LastCheck>>collect(HashMap::new, Map::putAll);
+    }
+
+    private Single<Map<String, LastCheck>> findLastChecksChunk(List<JsonArray> services) {
+        String values = String.join(", ", Collections.nCopies(services.size(), "(?, ?, ?)"));
+        JsonArray params = new JsonArray();
+        services.forEach(service -> service.forEach(params::add));
+        // column1, column2 and column3 are the names SQLite gives to the columns of a VALUES clause: the key, the
+        // current status, and the time from which a change is looked for
+        return dbConnector.query("SELECT column1 AS name, " +
+                                "(SELECT MAX(checked_at) FROM service_history WHERE service_name = column1) AS checked_at, " +
+                                "(SELECT MAX(checked_at) FROM service_history " +
+                                "WHERE service_name = column1 AND checked_at >= column3 AND status != column2) AS changed_at, " +
+                                "(SELECT MIN(checked_at) FROM service_history " +
+                                "WHERE service_name = column1 AND checked_at >= column3) AS first_at " +
+                                "FROM (VALUES " + values + ")",
+                        params)
+                .map(rows -> {
+                    Map<String, LastCheck> lastChecks = new HashMap<>();
+                    rows.forEach(row -> {
+                        Long checkedAt = row.getLong("checked_at");
+                        if (null == checkedAt) {
+                            return;
+                        }
+                        // Without any other status since the lookup start, stable for at least the results since then
+                        Long stableSince = null != row.getLong("changed_at") ? row.getLong("changed_at") : row.getLong("first_at");
+                        lastChecks.put(row.getString("name"), new LastCheck(checkedAt, null != stableSince ? stableSince : -1));
+                    });
+                    return lastChecks;
+                })
+                .toSingle(Collections.emptyMap());
+    }
+
+    /**
+     * Read a history entry from its row, without going through a JsonObject
+     */
+    private static ServiceHistoryEntry fromRow(Row row) {
+        ServiceHistoryEntry entry = new ServiceHistoryEntry();
+        entry.setServiceName(row.getString("service_name"));
+        Long checkedAt = row.getLong("checked_at");
+        if (null != checkedAt) {
+            entry.setCheckedAt(new DateTime(checkedAt.longValue()));
+        }
+        entry.setStatus(ServiceStatusValueEnum.valueOfOrDefault(row.getString("status")));
+        entry.setLatency(row.getLong("latency"));
+        return entry;
+    }
+
+    /**
+     * Aggregate the poll results of a service in the range [from, to[ by time buckets, oldest first.
+     * Each bucket holds its start time, the number of checks, of successful checks, and the average and max latency.
+     *
+     * @param name   The name of the service
+     * @param from   The start of the range, in epoch milliseconds
+     * @param to     The end of the range, in epoch milliseconds
+     * @param bucket The duration of a bucket, in milliseconds
+     * @return A future holding the buckets
+     */
+    public Single<List<JsonObject>> findBucketsByService(String name, long from, long to, long bucket) {
+        return dbConnector.query("SELECT (checked_at / ?) * ? AS bucket, COUNT(*) AS checks, " +
+                                "SUM(CASE WHEN status = 'OK' THEN 1 ELSE 0 END) AS ok, " +
+                                "AVG(latency) AS avg_latency, MAX(latency) AS max_latency " +
+                                "FROM service_history WHERE service_name = ? AND checked_at >= ? AND checked_at < ? " +
+                                "GROUP BY bucket ORDER BY bucket",
+                        new JsonArray(Arrays.asList(bucket, bucket, name, from, to)))
+                .map(rows -> StreamSupport
+                        .stream(rows.spliterator(), false)
+                        .map(Row::toJson)
+                        .collect(Collectors.toList()))
+                .toSingle();
+    }
+
+    /**
+     * The last poll result of a service
+     */
+    @Getter
+    public static final class LastCheck {
+        /**
+         * The time of the last result, in epoch milliseconds
+         */
+        private final long checkedAt;
+        /**
+         * The time of the last result with another status, else of the first one looked at, in epoch milliseconds.
+         * -1 if no result was looked at.
+         */
+        private final long stableSince;
+
+        public LastCheck(long checkedAt, long stableSince) {
+            this.checkedAt = checkedAt;
+            this.stableSince = stableSince;
+        }
+    }
+
+    /**
+     * Delete the poll results older than {before}, by chunks of {chunkSize} rows, each in its own transaction
+     * so that the poller's writes can interleave.
+     *
+     * @param before    The retention limit, in epoch milliseconds
+     * @param chunkSize The maximum number of rows deleted per statement
+     * @return A future holding the number of deleted rows
+     */
+    public Single<Long> deleteOlderThan(long before, int chunkSize) {
+        return deleteChunk(before, chunkSize)
+                .flatMap(deleted -> deleted < chunkSize
+                        ? Single.just((long) deleted)
+                        : deleteOlderThan(before, chunkSize).map(next -> deleted + next));
+    }
+
+    private Single<Integer> deleteChunk(long before, int chunkSize) {
+        return dbConnector.query("DELETE FROM service_history WHERE rowid IN " +
+                                "(SELECT rowid FROM service_history WHERE checked_at < ? LIMIT ?)",
+                        new JsonArray(Arrays.asList(before, chunkSize)))
+                .map(rows -> rows.rowCount())
+                .toSingle();
+    }
+}
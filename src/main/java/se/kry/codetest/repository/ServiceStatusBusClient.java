@@ -0,0 +1,174 @@
+package se.kry.codetest.repository;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.eventbus.EventBus;
+import io.vertx.reactivex.core.eventbus.Message;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Store used by the API verticle instances.
+ * <p>
+ * Reads are served from the registry shared by all the instances. Writes are sent over the event bus to the single
+ * verticle owning the {@link ServiceStatusRepository}, registered with {@link #serve(EventBus, ServiceStatusRepository)},
+ * so that the DB only ever has one writer.
+ */
+@Slf4j
+public class ServiceStatusBusClient implements ServiceStatusStore {
+    public static final String CREATE_ADDRESS = "service.create";
+    public static final String CREATE_MANY_ADDRESS = "service.create-many";
+    public static final String UPDATE_ADDRESS = "service.update";
+    public static final String DELETE_ADDRESS = "service.delete";
+
+    /**
+     * Failure code of the replies for the InvalidParameterException raised by the repository
+     */
+    private static final int INVALID_PARAMETER_CODE = 400;
+    private static final int INTERNAL_ERROR_CODE = 500;
+    /**
+     * Reply timeout of a bulk write, in milliseconds: the default one, plus a share per service, so that a large
+     * transaction is not reported as failed while it commits
+     */
+    private static final long BULK_TIMEOUT_PER_SERVICE = 1;
+
+    private final EventBus eventBus;
+    private final ServiceStatusRegistry registry;
+
+    public ServiceStatusBusClient(EventBus eventBus, ServiceStatusRegistry registry) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.eventBus = eventBus;
+        this.registry = registry;
+    }
+
+    /**
+     * Handle the writes sent by the clients with {repository}. Must be registered exactly once.
+     *
+     * @param eventBus   The event bus
+     * @param repository The repository executing the writes
+     */
+    public static void serve(EventBus eventBus, ServiceStatusRepository repository) {
+        eventBus.<JsonObject>consumer(CREATE_ADDRESS, message ->
+                reply(message, repository.createOne(fromMessage(message.body()))));
+        eventBus.<JsonArray>consumer(CREATE_MANY_ADDRESS, message -> repository.createMany(message.body()
+                        .stream()
+                        .map(service -> fromMessage((JsonObject) service))
+                        .collect(Collectors.toList()))
+                .subscribe(
+                        inserted -> message.reply(new JsonArray(new ArrayList<>(inserted))),
+                        cause -> {
+                            log.error("Service bulk write failed: {}", cause.getMessage());
+                            message.fail(INTERNAL_ERROR_CODE, cause.getMessage());
+                        }
+                ));
+        eventBus.<JsonObject>consumer(UPDATE_ADDRESS, message -> reply(message, repository.update(
+                message.body().getString("owner"), message.body().getString("name"),
+                ServiceStatus.fromJson(message.body().getJsonObject("service")))));
+        eventBus.<JsonObject>consumer(DELETE_ADDRESS, message -> reply(message, repository.deleteByName(
+                message.body().getString("owner"), message.body().getString("name"))));
+    }
+
+    @Override
+    public Maybe<ServiceStatus> findByName(String owner, String name) {
+        return registry.findByName(owner, name)
+                .map(Maybe::just)
+                .orElseGet(Maybe::empty);
+    }
+
+    @Override
+    public Single<List<ServiceStatus>> findAll(String owner) {
+        return Single.fromCallable(() -> registry.findAll(owner));
+    }
+
+    @Override
+    public Single<List<ServiceStatus>> findPage(String owner, String cursor, int limit) {
+        return Single.fromCallable(() -> registry.findPage(owner, cursor, limit));
+    }
+
+    @Override
+    public Iterator<ServiceStatus> iterateAll(String owner) {
+        return registry.iterator(owner);
+    }
+
+    @Override
+    public long revision(String owner) {
+        return registry.getRevision(owner);
+    }
+
+    @Override
+    public Completable createOne(ServiceStatus service) {
+        return send(CREATE_ADDRESS, toMessage(service));
+    }
+
+    @Override
+    public Single<List<Boolean>> createMany(List<ServiceStatus> services) {
+        JsonArray body = new JsonArray(services.stream().map(ServiceStatusBusClient::toMessage).collect(Collectors.toList()));
+        DeliveryOptions options = new DeliveryOptions()
+                .setSendTimeout(DeliveryOptions.DEFAULT_TIMEOUT + services.size() * BULK_TIMEOUT_PER_SERVICE);
+        return eventBus.<JsonArray>rxRequest(CREATE_MANY_ADDRESS, body, options)
+                .map(reply -> reply.body()
+                        .stream()
+                        .map(inserted -> (Boolean) inserted)
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Completable deleteByName(String owner, String name) {
+        return send(DELETE_ADDRESS, new JsonObject().put("owner", owner).put("name", name));
+    }
+
+    @Override
+    public Completable update(String owner, String oldName, ServiceStatus newService) {
+        return send(UPDATE_ADDRESS, new JsonObject().put("owner", owner).put("name", oldName).put("service", newService.toJson()));
+    }
+
+    /**
+     * The json of a service leaves its owner out: it travels next to it
+     */
+    private static JsonObject toMessage(ServiceStatus service) {
+        return new JsonObject().put("owner", service.getOwner()).put("service", service.toJson());
+    }
+
+    private static ServiceStatus fromMessage(JsonObject message) {
+        ServiceStatus service = ServiceStatus.fromJson(message.getJsonObject("service"));
+        service.setOwner(message.getString("owner"));
+        return service;
+    }
+
+    private Completable send(String address, JsonObject body) {
+        return eventBus.<Void>rxRequest(address, body)
+                .ignoreElement()
+                .onErrorResumeNext(cause -> {
+                    if (cause instanceof ReplyException
+                            && ((ReplyException) cause).failureCode() == INVALID_PARAMETER_CODE) {
+                        return Completable.error(new InvalidParameterException(cause.getMessage()));
+                    }
+                    return Completable.error(cause);
+                });
+    }
+
+    private static void reply(Message<JsonObject> message, Completable write) {
+        write.subscribe(
+                () -> message.reply(null),
+                cause -> {
+                    if (cause instanceof InvalidParameterException) {
+                        message.fail(INVALID_PARAMETER_CODE, cause.getMessage());
+                    } else {
+                        log.error("Service write failed: {}", cause.getMessage());
+                        message.fail(INTERNAL_ERROR_CODE, cause.getMessage());
+                    }
+                }
+        );
+    }
+}
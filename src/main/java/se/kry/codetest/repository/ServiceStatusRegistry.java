@@ -0,0 +1,362 @@
+package se.kry.codetest.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory view of the service table, keyed by service key and partitioned by owner.
+ * <p>
+ * Loaded once at startup and kept in sync by {@link ServiceStatusRepository} after each successful write,
+ * so that reads never have to go to the DB. Stored instances are never mutated: every change replaces the entry.
+ * <p>
+ * The services of each owner are held in their own partition, sorted by name, so that listing the services of an
+ * owner only walks theirs. Every change also bumps a revision counter, global and of the partition changed,
+ * letting the readers tell cheaply whether anything changed since they last looked.
+ * <p>
+ * The writes are serialized, the reads never wait.
+ */
+@Slf4j
+public class ServiceStatusRegistry {
+    private final Map<String, ServiceStatus> services = new ConcurrentHashMap<>();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong revision = new AtomicLong();
+    /**
+     * The revision of the last local change of each service, kept until no running sync may be older than it
+     */
+    private final Map<String, Long> changedAt = new HashMap<>();
+
+    /**
+     * Notified after each change of the registry, on the thread that made the change
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        /**
+         * @param previous The service before the change, null if it has just been created
+         * @param current  The service after the change, null if it has just been removed
+         */
+        void onChange(ServiceStatus previous, ServiceStatus current);
+    }
+
+    /**
+     * The services of an owner, by name
+     */
+    private static class Partition {
+        private final NavigableMap<String, ServiceStatus> services = new ConcurrentSkipListMap<>();
+        /**
+         * Taken from the global revision, so that a partition dropped once empty and created again never goes back
+         * to a revision it had before
+         */
+        private volatile long revision;
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replace the whole content of the registry. The listeners are not notified.
+     *
+     * @param serviceStatuses The services to hold
+     */
+    public synchronized void load(Collection<ServiceStatus> serviceStatuses) {
+        services.clear();
+        partitions.clear();
+        changedAt.clear();
+        long loaded = revision.incrementAndGet();
+        serviceStatuses.forEach(service -> {
+            services.put(service.getKey(), service);
+            Partition partition = partitions.computeIfAbsent(service.getOwner(), owner -> new Partition());
+            partition.services.put(service.getName(), service);
+            partition.revision = loaded;
+        });
+        log.info("Service registry loaded with {} service(s) of {} owner(s)", services.size(), partitions.size());
+    }
+
+    /**
+     * Bring the registry in line with a read of the DB, notifying the listeners of each difference. The read may be
+     * older than the registry: each service is reconciled on its own, the services changed locally since the read
+     * started being kept as they are, as well as the ones stored with an older version.
+     * <p>
+     * The syncs must not overlap.
+     *
+     * @param serviceStatuses All the services, as stored when the read started
+     * @param since           The revision of the registry when the read started
+     */
+    public void sync(Collection<ServiceStatus> serviceStatuses, long since) {
+        Map<String, ServiceStatus> stored = new HashMap<>();
+        serviceStatuses.forEach(service -> stored.put(service.getKey(), service));
+
+        for (String key : services.keySet()) {
+            if (!stored.containsKey(key)) {
+                reconcile(key, null, since);
+            }
+        }
+        stored.forEach((key, service) -> reconcile(key, service, since));
+        synchronized (this) {
+            changedAt.values().removeIf(changed -> changed <= since);
+        }
+    }
+
+    /**
+     * @return The services of all the owners, in no particular order
+     */
+    public List<ServiceStatus> findAll() {
+        return new ArrayList<>(services.values());
+    }
+
+    /**
+     * @param owner The owner of the services
+     * @return Their services, in name order
+     */
+    public List<ServiceStatus> findAll(String owner) {
+        Partition partition = partitions.get(owner);
+        return null != partition ? new ArrayList<>(partition.services.values()) : new ArrayList<>();
+    }
+
+    /**
+     * @param owner  The owner of the services
+     * @param cursor The name after which the page starts, null to start from the first service
+     * @param limit  The maximum number of services
+     * @return The services of {owner} following {cursor} in name order
+     */
+    public List<ServiceStatus> findPage(String owner, String cursor, int limit) {
+        Partition partition = partitions.get(owner);
+        if (null == partition) {
+            return new ArrayList<>();
+        }
+        NavigableMap<String, ServiceStatus> owned = partition.services;
+        Collection<ServiceStatus> tail = null == cursor ? owned.values() : owned.tailMap(cursor, false).values();
+        List<ServiceStatus> output = new ArrayList<>(Math.min(limit, owned.size()));
+        Iterator<ServiceStatus> iterator = tail.iterator();
+        while (output.size() < limit && iterator.hasNext()) {
+            output.add(iterator.next());
+        }
+        return output;
+    }
+
+    /**
+     * Iterate over the services of an owner in name order without copying them. The iteration reflects some of the
+     * changes made while it runs, but never fails because of them.
+     *
+     * @param owner The owner of the services
+     * @return An iterator over their services
+     */
+    public Iterator<ServiceStatus> iterator(String owner) {
+        Partition partition = partitions.get(owner);
+        return null != partition ? partition.services.values().iterator() : Collections.emptyIterator();
+    }
+
+    /**
+     * @param key The key of the service, see {@link ServiceStatus#getKey()}
+     */
+    public Optional<ServiceStatus> findByKey(String key) {
+        if (null == key) return Optional.empty();
+        return Optional.ofNullable(services.get(key));
+    }
+
+    public Optional<ServiceStatus> findByName(String owner, String name) {
+        if (null == name) return Optional.empty();
+        return findByKey(ServiceStatus.keyOf(owner, name));
+    }
+
+    public boolean contains(String owner, String name) {
+        return findByName(owner, name).isPresent();
+    }
+
+    public void put(ServiceStatus service) {
+        ServiceStatus previous;
+        synchronized (this) {
+            previous = services.put(service.getKey(), service);
+            Partition partition = partitions.computeIfAbsent(service.getOwner(), owner -> new Partition());
+            partition.services.put(service.getName(), service);
+            bump(partition);
+            changedAt.put(service.getKey(), revision.get());
+        }
+        notifyListeners(previous, service);
+    }
+
+    /**
+     * @param key The key of the service, see {@link ServiceStatus#getKey()}
+     */
+    public void remove(String key) {
+        ServiceStatus previous;
+        synchronized (this) {
+            previous = services.remove(key);
+            if (null == previous) {
+                return;
+            }
+            removeFromPartition(previous);
+            changedAt.put(key, revision.get());
+        }
+        notifyListeners(previous, null);
+    }
+
+    /**
+     * Replace the service registered under {oldKey} by {newService}
+     *
+     * @param oldKey     The key the service is currently registered with
+     * @param newService The new value, possibly with a different name
+     */
+    public void replace(String oldKey, ServiceStatus newService) {
+        ServiceStatus previous;
+        synchronized (this) {
+            previous = services.remove(oldKey);
+            if (null != previous) {
+                removeFromPartition(previous);
+            }
+            services.put(newService.getKey(), newService);
+            Partition partition = partitions.computeIfAbsent(newService.getOwner(), owner -> new Partition());
+            partition.services.put(newService.getName(), newService);
+            bump(partition);
+            changedAt.put(oldKey, revision.get());
+            changedAt.put(newService.getKey(), revision.get());
+        }
+        notifyListeners(previous, newService);
+    }
+
+    /**
+     * Set the status of a registered service. Nothing happens if the service is unknown.
+     *
+     * @param key    The key of the service
+     * @param status The new status
+     */
+    public void setStatus(String key, ServiceStatusValueEnum status) {
+        ServiceStatus current = services.get(key);
+        if (null != current) {
+            setStatus(key, current.getVersion(), status);
+        }
+    }
+
+    /**
+     * Set the status of a registered service, only if it still has the given version
+     *
+     * @param key     The key of the service
+     * @param version The version of the service the status was computed for
+     * @param status  The new status
+     */
+    public void setStatus(String key, long version, ServiceStatusValueEnum status) {
+        ServiceStatus current;
+        ServiceStatus updated;
+        synchronized (this) {
+            current = services.get(key);
+            if (null == current || current.getVersion() != version || current.getStatus() == status) {
+                return;
+            }
+            updated = current.copy();
+            updated.setStatus(status);
+            services.put(key, updated);
+            Partition partition = partitions.get(updated.getOwner());
+            partition.services.put(updated.getName(), updated);
+            bump(partition);
+            changedAt.put(key, revision.get());
+        }
+        notifyListeners(current, updated);
+    }
+
+    /**
+     * Apply the stored value of a service, unless it changed locally since the read or is stored with an older version
+     *
+     * @param key    The key of the service
+     * @param stored Its stored value, null if it is not stored
+     * @param since  The revision of the registry when the read started
+     */
+    private void reconcile(String key, ServiceStatus stored, long since) {
+        ServiceStatus previous;
+        synchronized (this) {
+            previous = services.get(key);
+            if (changedAt.getOrDefault(key, since) > since || Objects.equals(previous, stored)
+                    || (null != previous && null != stored && previous.getVersion() > stored.getVersion())) {
+                return;
+            }
+            if (null != previous) {
+                services.remove(key);
+                removeFromPartition(previous);
+            }
+            if (null != stored) {
+                services.put(key, stored);
+                Partition partition = partitions.computeIfAbsent(stored.getOwner(), owner -> new Partition());
+                partition.services.put(stored.getName(), stored);
+                bump(partition);
+            }
+        }
+        notifyListeners(previous, stored);
+    }
+
+    public int size() {
+        return services.size();
+    }
+
+    /**
+     * The revision is bumped after the change is applied, so content read after the revision is at least as
+     * recent as the revision.
+     *
+     * @return The number of changes applied to the registry so far
+     */
+    public long getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * Same as {@link #getRevision()}, for the services of a single owner: the changes of the other owners leave it as is
+     *
+     * @param owner The owner of the services
+     * @return A number changing after every change of their services, 0 while they have none
+     */
+    public long getRevision(String owner) {
+        Partition partition = partitions.get(owner);
+        return null != partition ? partition.revision : 0;
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private void removeFromPartition(ServiceStatus service) {
+        Partition partition = partitions.get(service.getOwner());
+        partition.services.remove(service.getName());
+        if (partition.services.isEmpty()) {
+            // Back to the revision of an owner without services
+            partitions.remove(service.getOwner());
+            revision.incrementAndGet();
+        } else {
+            bump(partition);
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private void bump(Partition partition) {
+        partition.revision = revision.incrementAndGet();
+    }
+
+    private void notifyListeners(ServiceStatus previous, ServiceStatus current) {
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.onChange(previous, current);
+            } catch (RuntimeException ex) {
+                log.error("Service registry listener failed: {}", ex.getMessage());
+            }
+        }
+    }
+}
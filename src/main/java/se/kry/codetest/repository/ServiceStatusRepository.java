@@ -3,148 +3,279 @@ package se.kry.codetest.repository;
 import io.reactivex.Completable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
-import io.vertx.reactivex.sqlclient.Row;
 import lombok.extern.slf4j.Slf4j;
 import org.joda.time.DateTime;
 import se.kry.codetest.DBConnector;
 import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.storage.ServiceStorage;
+import se.kry.codetest.storage.SqliteServiceStorage;
 
 import java.security.InvalidParameterException;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
-public class ServiceStatusRepository {
-    final private DBConnector dbConnector;
+public class ServiceStatusRepository implements ServiceStatusStore {
+    public static final String NOT_FOUND_MESSAGE = "Service with this name does not exist";
+
+    final private ServiceStorage storage;
+    final private ServiceStatusRegistry registry;
+    final private AtomicBoolean syncing = new AtomicBoolean(false);
 
     public ServiceStatusRepository(DBConnector connector) {
+        this(connector, new ServiceStatusRegistry());
+    }
+
+    public ServiceStatusRepository(DBConnector connector, ServiceStatusRegistry registry) {
+        this(new SqliteServiceStorage(connector), registry);
+    }
+
+    /**
+     * @param storage  The engine persisting the services
+     * @param registry The in-memory registry serving the reads
+     */
+    public ServiceStatusRepository(ServiceStorage storage, ServiceStatusRegistry registry) {
         log.debug("Instantiating ServiceStatusRepository...");
-        this.dbConnector = connector;
+        this.storage = storage;
+        this.registry = registry;
     }
 
     /**
-     * Get the first result where name = {name}
+     * Load the whole service table in the in-memory registry. Must be called once before serving reads.
      *
-     * @param name The name to search against
-     * @return A future holding a PollService instance or null if no service is found
+     * @return A future holding the success of the operation
      */
-    public Maybe<ServiceStatus> findByName(String name) {
-        return dbConnector.query("SELECT * FROM service WHERE name = ? LIMIT 1", new JsonArray(Collections.singletonList(name)))
-                .flatMap(rows -> {
-                    List<JsonObject> results = StreamSupport
-                            .stream(rows.spliterator(), false)
-                            .map(Row::toJson)
-                            .collect(Collectors.toList());
-
-                    if (results.isEmpty()) {
-                        return Maybe.empty();
-                    }
+    public Completable load() {
+        return storage.loadAll()
+                .doOnSuccess(registry::load)
+                .ignoreElement();
+    }
 
-                    return Maybe.just(ServiceStatus.fromJson(results.get(0)));
-                });
+    /**
+     * Reload the service table and apply the differences to the registry, to pick up the writes made by other nodes.
+     * The services written locally while the reload ran are kept as they are, see
+     * {@link ServiceStatusRegistry#sync(java.util.Collection, long)}. Nothing happens while another sync is running.
+     *
+     * @return A future holding the success of the operation
+     */
+    public Completable sync() {
+        return Completable.defer(() -> {
+            if (!syncing.compareAndSet(false, true)) {
+                log.debug("A sync is already running, skipping this one");
+                return Completable.complete();
+            }
+            long revision = registry.getRevision();
+            return storage.loadAll()
+                    .doOnSuccess(services -> registry.sync(services, revision))
+                    .ignoreElement()
+                    .doFinally(() -> syncing.set(false));
+        });
     }
 
     /**
-     * Get all the services in the base
+     * Get the service of {owner} where name = {name}
      *
+     * @param owner The owner of the service
+     * @param name  The name to search against
+     * @return A future holding a PollService instance or empty if no service is found
+     */
+    @Override
+    public Maybe<ServiceStatus> findByName(String owner, String name) {
+        return registry.findByName(owner, name)
+                .map(Maybe::just)
+                .orElseGet(Maybe::empty);
+    }
+
+    /**
+     * Get all the services of an owner, in name order
+     *
+     * @param owner The owner of the services
      * @return A future holding the list of found PollService
      */
-    public Single<List<ServiceStatus>> findAll() {
-        return dbConnector.query("SELECT * FROM service")
-                .flatMap(rows -> {
-                            List<ServiceStatus> rowsJson = StreamSupport
-                                    .stream(rows.spliterator(), false)
-                                    .map(x -> ServiceStatus.fromJson(x.toJson()))
-                                    .collect(Collectors.toList());
+    @Override
+    public Single<List<ServiceStatus>> findAll(String owner) {
+        return Single.fromCallable(() -> registry.findAll(owner));
+    }
+
+    /**
+     * Get a page of the services of an owner, in name order
+     *
+     * @param owner  The owner of the services
+     * @param cursor The name of the last service of the previous page, null for the first page
+     * @param limit  The maximum number of services
+     * @return A future holding the services
+     */
+    @Override
+    public Single<List<ServiceStatus>> findPage(String owner, String cursor, int limit) {
+        return Single.fromCallable(() -> registry.findPage(owner, cursor, limit));
+    }
+
+    /**
+     * Iterate over all the services of an owner in name order, without loading them in a list first
+     *
+     * @param owner The owner of the services
+     * @return An iterator over the services
+     */
+    @Override
+    public Iterator<ServiceStatus> iterateAll(String owner) {
+        return registry.iterator(owner);
+    }
 
-                            return Maybe.just(rowsJson);
-                        })
-                .toSingle();
+    /**
+     * @param owner The owner of the services
+     * @return A number changing after every write to their services. Read it before the services it describes.
+     */
+    @Override
+    public long revision(String owner) {
+        return registry.getRevision(owner);
     }
 
     /**
      * Insert a new ServiceStatus in the base
      *
-     * @param service The service to insert
+     * @param service The service to insert, holding its owner
      * @return A future holding the success of the operation
      *
-     * @throws InvalidParameterException A service with this name already exists
+     * @throws InvalidParameterException The owner already has a service with this name
      */
+    @Override
     public Completable createOne(ServiceStatus service) {
-        return findByName(service.getName())
-                .isEmpty()
-                .flatMap(serviceEmpty -> {
-                    if (!serviceEmpty) {
-                        return Single.error(new InvalidParameterException("Service with this name already exist"));
-                    } else {
-                        return dbConnector.query("INSERT INTO service (url, name, created_at) values(?, ?, ?)",
-                                        new JsonArray(Arrays.asList(service.getUrl(), service.getName(), new DateTime().getMillis())))
-                                .toSingle();
+        if (registry.contains(service.getOwner(), service.getName())) {
+            return Completable.error(new InvalidParameterException(ServiceStorage.NAME_CONFLICT_MESSAGE));
+        }
+
+        ServiceStatus created = service.copy();
+        created.setCreatedAt(new DateTime());
+        created.setStatus(ServiceStatusValueEnum.UNKNOWN);
+        created.setVersion(0);
+
+        return storage.insert(created)
+                .doOnComplete(() -> registry.put(created));
+    }
+
+    /**
+     * Insert several new services at once, in a single transaction. A service whose name is already used by its
+     * owner, for a stored service or one earlier in the list, is skipped without failing the others.
+     *
+     * @param services The services to insert, holding their owner
+     * @return A future holding, for each service in order, true if it was inserted and false on a name conflict
+     */
+    @Override
+    public Single<List<Boolean>> createMany(List<ServiceStatus> services) {
+        DateTime createdAt = new DateTime();
+        List<ServiceStatus> created = new ArrayList<>(services.size());
+        for (ServiceStatus service : services) {
+            ServiceStatus copy = service.copy();
+            copy.setCreatedAt(createdAt);
+            copy.setStatus(ServiceStatusValueEnum.UNKNOWN);
+            copy.setVersion(0);
+            created.add(copy);
+        }
+
+        return storage.insertAll(created)
+                .doOnSuccess(inserted -> {
+                    for (int i = 0; i < inserted.size(); i++) {
+                        if (inserted.get(i)) {
+                            registry.put(created.get(i));
+                        }
                     }
-                })
-                .ignoreElement();
+                });
     }
 
     /**
-     * Set the status value in the line where the name = {name}
+     * Set the status value in the line where the owner = {owner} and the name = {name}
      *
+     * @param owner  The owner of the service
      * @param name   The name to search against in the base
      * @param status The status to set
      * @return A future holding the success of the operation
      *
      * @throws InvalidParameterException No service with this name was found
      */
-    public Completable setStatus(String name, String status) {
-        return findByName(name)
-                .isEmpty()
-                .flatMap(serviceEmpty -> {
-                    if (serviceEmpty) {
-                        return Single.error(new InvalidParameterException("Service with this name does not exist"));
+    public Completable setStatus(String owner, String name, String status) {
+        ServiceStatusValueEnum value = ServiceStatusValueEnum.valueOfOrDefault(status);
+        return storage.setStatus(owner, name, value)
+                .flatMapCompletable(found -> {
+                    if (!found) {
+                        return Completable.error(new InvalidParameterException(NOT_FOUND_MESSAGE));
                     }
-                    return dbConnector.query(
-                            "UPDATE service SET status = ? WHERE name = ?",
-                            new JsonArray(Arrays.asList(status, name))
-                    ).toSingle();
-                })
-                .ignoreElement();
+                    registry.setStatus(ServiceStatus.keyOf(owner, name), value);
+                    return Completable.complete();
+                });
     }
 
     /**
-     * Delete a status from its name
+     * Set the status of several services at once, in a single transaction.
+     * <p>
+     * Each status is only written if the service still has the version it was polled with:
+     * services deleted, renamed or updated since then are silently ignored.
      *
-     * @param name the name to search against
+     * @param statuses The services holding their new status
      * @return A future holding the success of the operation
      */
-    public Completable deleteByName(String name) {
-        return findByName(name)
-                .isEmpty()
-                .flatMap(serviceEmpty -> {
-                    if (serviceEmpty) {
-                        return Single.error(new InvalidParameterException("Service with this name does not exist"));
-                    }
-                    return dbConnector.query("DELETE FROM service WHERE name = ?",
-                            new JsonArray(Collections.singletonList(name))).toSingle();
-                })
-                .ignoreElement();
+    public Completable setStatuses(Collection<ServiceStatus> statuses) {
+        return storage.setStatuses(statuses)
+                .doOnComplete(() -> statuses.forEach(service ->
+                        registry.setStatus(service.getKey(), service.getVersion(), service.getStatus())
+                ));
     }
 
-    public Completable update(String oldName, ServiceStatus newService) {
-        return findByName(oldName)
-                .isEmpty()
-                .flatMap(serviceEmpty -> {
-                    if (serviceEmpty) {
-                        return Single.error(new InvalidParameterException("Service with this name does not exist"));
+    /**
+     * Delete a status from its owner and name
+     *
+     * @param owner The owner of the service
+     * @param name  the name to search against
+     * @return A future holding the success of the operation
+     *
+     * @throws InvalidParameterException No service with this name was found
+     */
+    @Override
+    public Completable deleteByName(String owner, String name) {
+        return storage.delete(owner, name)
+                .flatMapCompletable(found -> {
+                    if (!found) {
+                        return Completable.error(new InvalidParameterException(NOT_FOUND_MESSAGE));
                     }
+                    registry.remove(ServiceStatus.keyOf(owner, name));
+                    return Completable.complete();
+                });
+    }
 
-                    return dbConnector.query("UPDATE service SET name = ?, url = ?, status = 'UNKNOWN' where name = ?",
-                            new JsonArray(Arrays.asList(newService.getName(), newService.getUrl(), oldName)))
-                            .toSingle();
-                })
-                .ignoreElement();
+    /**
+     * Update the definition (name, url, poll interval and timeouts) of a service. Its status is reset and its version incremented.
+     *
+     * @param owner      The owner of the service, who keeps it
+     * @param oldName    The current name of the service
+     * @param newService The service holding the new definition
+     * @return A future holding the success of the operation
+     *
+     * @throws InvalidParameterException No service with this name was found, or the new name is already used
+     */
+    @Override
+    public Completable update(String owner, String oldName, ServiceStatus newService) {
+        return storage.update(owner, oldName, newService)
+                .flatMapCompletable(found -> {
+                    if (!found) {
+                        return Completable.error(new InvalidParameterException(NOT_FOUND_MESSAGE));
+                    }
+                    registry.findByName(owner, oldName).ifPresent(current -> {
+                        ServiceStatus updated = current.copy();
+                        updated.setName(newService.getName());
+                        updated.setUrl(newService.getUrl());
+                        updated.setPollInterval(newService.getPollInterval());
+                        updated.setConnectTimeout(newService.getConnectTimeout());
+                        updated.setIdleTimeout(newService.getIdleTimeout());
+                        updated.setTotalTimeout(newService.getTotalTimeout());
+                        updated.setProbeMethod(newService.getProbeMethod());
+                        updated.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                        updated.setVersion(current.getVersion() + 1);
+                        registry.replace(current.getKey(), updated);
+                    });
+                    return Completable.complete();
+                });
     }
 }
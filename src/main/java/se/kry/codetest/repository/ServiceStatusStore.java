@@ -0,0 +1,35 @@
+package se.kry.codetest.repository;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import se.kry.codetest.model.ServiceStatus;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The operations on the services used by the API, scoped to the owner of the services.
+ * <p>
+ * Implemented by {@link ServiceStatusRepository}, which writes to the storage engine itself, and by
+ * {@link ServiceStatusBusClient}, which hands the writes over to the verticle owning the repository.
+ */
+public interface ServiceStatusStore {
+    Maybe<ServiceStatus> findByName(String owner, String name);
+
+    Single<List<ServiceStatus>> findAll(String owner);
+
+    Single<List<ServiceStatus>> findPage(String owner, String cursor, int limit);
+
+    Iterator<ServiceStatus> iterateAll(String owner);
+
+    long revision(String owner);
+
+    Completable createOne(ServiceStatus service);
+
+    Single<List<Boolean>> createMany(List<ServiceStatus> services);
+
+    Completable deleteByName(String owner, String name);
+
+    Completable update(String owner, String oldName, ServiceStatus newService);
+}
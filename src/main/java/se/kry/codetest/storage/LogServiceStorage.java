@@ -0,0 +1,824 @@
+package se.kry.codetest.storage;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.reactivex.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
+import se.kry.codetest.model.ProbeMethodEnum;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the service table in memory, and persists each change as a record appended to a memory-mapped log file.
+ * <p>
+ * Once the log grows past the compaction size, a new log is started and the table, as it was when the new log
+ * started, is written to a snapshot file on a worker thread. The logs older than the snapshot are then deleted.
+ * The appends never create nor map a file: the next log is prepared on a worker thread once the current one is half
+ * full, and the mapping of a log outgrowing its size, its compaction lagging, is grown ahead on a worker thread too.
+ * On startup, the table is rebuilt from the snapshot and the logs following it. Each record holds its length and
+ * checksum: the replay stops at the first torn record, left by a crash during an append. The records identify the
+ * services by key, which is the name for most services of the default owner, as in the records predating the owners.
+ * The only exception, a name holding the key separator, is resolved on replay.
+ * <p>
+ * The log is written through the page cache and synced to the disk every {@link #FORCE_PERIOD} ms: a crash of the
+ * process loses nothing, a power loss may lose the changes of the last period.
+ * <p>
+ * The history stays in the DB: when given its repository, the history of a deleted service is deleted, and the one
+ * of a renamed service moved, once the change is appended. Unlike with the service table, this is not atomic: a
+ * crash in between leaves the history in place.
+ * <p>
+ * The files are owned by a single process: this engine does not support the cluster mode.
+ */
+@Slf4j
+public class LogServiceStorage implements ServiceStorage {
+    public static final String SNAPSHOT_FILE = "services.snapshot";
+    private static final Pattern LOG_FILE = Pattern.compile("services-(\\d+)\\.log");
+    private static final long FORCE_PERIOD = 1000;
+
+    private static final int SNAPSHOT_MAGIC = 0x53525653;
+    private static final int LOG_MAGIC = 0x5352564c;
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * Magic number, format version and generation
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Length and checksum of a record
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte REPLACE = 3;
+    private static final byte STATUS = 4;
+
+    private final Vertx vertx;
+    private final Path dir;
+    private final int compactSize;
+    /**
+     * By service key. Stored instances are never mutated: every change replaces the entry
+     */
+    private final Map<String, ServiceStatus> services;
+    private final boolean fresh;
+    /**
+     * The history of the services, null to leave it untouched
+     */
+    private final ServiceHistoryRepository historyRepository;
+
+    private long generation;
+    private FileChannel logChannel;
+    private MappedByteBuffer logBuffer;
+    /**
+     * The log of the next generation, mapped ahead of the compaction. Null until prepared.
+     */
+    private LogFile nextLog;
+    private boolean preparing = false;
+    private boolean growing = false;
+    private boolean dirty = false;
+    private boolean compacting = false;
+    private boolean closed = false;
+    private long forceTimerId = -1;
+
+    /**
+     * A mapped log file
+     */
+    private static class LogFile {
+        private final long generation;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private LogFile(long generation, FileChannel channel, MappedByteBuffer buffer) {
+            this.generation = generation;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * The content of a storage directory: the table and the log to append to
+     */
+    private static class Replay {
+        private final Map<String, ServiceStatus> services = new HashMap<>();
+        private long snapshotGeneration = 0;
+        private long lastGeneration = -1;
+        private int lastLogEnd = HEADER_SIZE;
+    }
+
+    private LogServiceStorage(Vertx vertx, Path dir, int compactSize, Replay replay,
+                              ServiceHistoryRepository historyRepository) throws IOException {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.vertx = vertx;
+        this.historyRepository = historyRepository;
+        this.dir = dir;
+        this.compactSize = compactSize;
+        this.services = replay.services;
+        this.fresh = replay.lastGeneration < 0 && !Files.exists(dir.resolve(SNAPSHOT_FILE));
+
+        if (replay.lastGeneration < 0) {
+            use(openLog(dir, compactSize, replay.snapshotGeneration, HEADER_SIZE));
+        } else {
+            use(openLog(dir, compactSize, replay.lastGeneration, replay.lastLogEnd));
+        }
+    }
+
+    /**
+     * Rebuild the table from the files of {dir}, created if needed, and open the last log for the appends
+     *
+     * @param vertx       The Vert.x instance, running the file operations and the periodic syncs
+     * @param dir         The directory of the files
+     * @param compactSize The size of the log above which it is compacted, in bytes
+     * @return A future holding the storage
+     */
+    public static Single<LogServiceStorage> open(Vertx vertx, Path dir, int compactSize) {
+        return open(vertx, dir, compactSize, null);
+    }
+
+    /**
+     * Rebuild the table from the files of {dir}, created if needed, and open the last log for the appends
+     *
+     * @param vertx             The Vert.x instance, running the file operations and the periodic syncs
+     * @param dir               The directory of the files
+     * @param compactSize       The size of the log above which it is compacted, in bytes
+     * @param historyRepository The history of the services, following their deletes and renames. Null to leave it.
+     * @return A future holding the storage
+     */
+    public static Single<LogServiceStorage> open(Vertx vertx, Path dir, int compactSize,
+                                                 ServiceHistoryRepository historyRepository) {
+        return vertx.<LogServiceStorage>rxExecuteBlocking(promise -> {
+                    try {
+                        Files.createDirectories(dir);
+                        Replay replay = replay(dir, true);
+                        LogServiceStorage storage = new LogServiceStorage(vertx, dir, compactSize, replay, historyRepository);
+                        log.info("Log storage opened in {} with {} service(s), appending to generation {}",
+                                dir, replay.services.size(), storage.generation);
+                        promise.complete(storage);
+                    } catch (IOException ex) {
+                        promise.fail(ex);
+                    }
+                }, false)
+                .toSingle()
+                .doOnSuccess(LogServiceStorage::startForcing);
+    }
+
+    /**
+     * Read the table stored in {dir}, without opening it for the appends. The storage may be open meanwhile.
+     *
+     * @param dir The directory of the files
+     * @return The stored services
+     *
+     * @throws IOException The files could not be read
+     */
+    public static List<ServiceStatus> readAll(Path dir) throws IOException {
+        return new ArrayList<>(replay(dir, false).services.values());
+    }
+
+    /**
+     * @return True if the directory held no file when the storage was opened
+     */
+    public boolean isFresh() {
+        return fresh;
+    }
+
+    /**
+     * Store services read from another storage. Existing services with the same names are replaced.
+     *
+     * @param imported The services to store
+     * @return A future holding the success of the operation
+     */
+    public Completable importAll(Collection<ServiceStatus> imported) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                for (ServiceStatus service : imported) {
+                    ServiceStatus stored = service.copy();
+                    append(encode(PUT, null, stored));
+                    services.put(stored.getKey(), stored);
+                }
+            }
+            log.info("{} service(s) imported in the log storage", imported.size());
+        });
+    }
+
+    @Override
+    public Single<List<ServiceStatus>> loadAll() {
+        return Single.fromCallable(() -> {
+            synchronized (this) {
+                return new ArrayList<>(services.values());
+            }
+        });
+    }
+
+    @Override
+    public Completable insert(ServiceStatus service) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                if (services.containsKey(service.getKey())) {
+                    throw new InvalidParameterException(NAME_CONFLICT_MESSAGE);
+                }
+                ServiceStatus stored = service.copy();
+                append(encode(PUT, null, stored));
+                services.put(stored.getKey(), stored);
+            }
+        });
+    }
+
+    @Override
+    public Single<List<Boolean>> insertAll(List<ServiceStatus> services) {
+        return Single.fromCallable(() -> {
+            List<Boolean> inserted = new ArrayList<>(services.size());
+            synchronized (this) {
+                for (ServiceStatus service : services) {
+                    if (this.services.containsKey(service.getKey())) {
+                        inserted.add(false);
+                        continue;
+                    }
+                    ServiceStatus stored = service.copy();
+                    append(encode(PUT, null, stored));
+                    this.services.put(stored.getKey(), stored);
+                    inserted.add(true);
+                }
+            }
+            return inserted;
+        });
+    }
+
+    @Override
+    public Single<Boolean> setStatus(String owner, String name, ServiceStatusValueEnum status) {
+        return Single.fromCallable(() -> {
+            synchronized (this) {
+                ServiceStatus current = services.get(ServiceStatus.keyOf(owner, name));
+                if (null == current) {
+                    return false;
+                }
+                writeStatus(current, status);
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public Completable setStatuses(Collection<ServiceStatus> statuses) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                for (ServiceStatus service : statuses) {
+                    ServiceStatus current = services.get(service.getKey());
+                    if (null != current && current.getVersion() == service.getVersion()) {
+                        writeStatus(current, service.getStatus());
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public Single<Boolean> delete(String owner, String name) {
+        String key = ServiceStatus.keyOf(owner, name);
+        return Single.fromCallable(() -> {
+            synchronized (this) {
+                if (!services.containsKey(key)) {
+                    return false;
+                }
+                append(encodeKey(REMOVE, key));
+                services.remove(key);
+                return true;
+            }
+        }).flatMap(found -> found && null != historyRepository
+                ? historyRepository.deleteByService(key).toSingleDefault(true)
+                : Single.just(found));
+    }
+
+    @Override
+    public Single<Boolean> update(String owner, String oldName, ServiceStatus newService) {
+        String oldKey = ServiceStatus.keyOf(owner, oldName);
+        return Single.fromCallable(() -> {
+            synchronized (this) {
+                ServiceStatus current = services.get(oldKey);
+                if (null == current) {
+                    return false;
+                }
+                if (!oldName.equals(newService.getName()) && services.containsKey(ServiceStatus.keyOf(owner, newService.getName()))) {
+                    throw new InvalidParameterException(NAME_CONFLICT_MESSAGE);
+                }
+
+                ServiceStatus updated = current.copy();
+                updated.setName(newService.getName());
+                updated.setUrl(newService.getUrl());
+                updated.setPollInterval(newService.getPollInterval());
+                updated.setConnectTimeout(newService.getConnectTimeout());
+                updated.setIdleTimeout(newService.getIdleTimeout());
+                updated.setTotalTimeout(newService.getTotalTimeout());
+                updated.setProbeMethod(newService.getProbeMethod());
+                updated.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                updated.setVersion(current.getVersion() + 1);
+
+                append(encode(REPLACE, oldKey, updated));
+                services.remove(oldKey);
+                services.put(updated.getKey(), updated);
+                return true;
+            }
+        }).flatMap(found -> {
+            String newKey = ServiceStatus.keyOf(owner, newService.getName());
+            return found && null != historyRepository && !oldKey.equals(newKey)
+                    ? historyRepository.moveService(oldKey, newKey).toSingleDefault(true)
+                    : Single.just(found);
+        });
+    }
+
+    /**
+     * Stop the periodic syncs, and sync and close the log
+     *
+     * @return A future holding the success of the operation
+     */
+    public Completable close() {
+        return vertx.rxExecuteBlocking(promise -> {
+            synchronized (this) {
+                try {
+                    closed = true;
+                    if (forceTimerId >= 0) {
+                        vertx.cancelTimer(forceTimerId);
+                        forceTimerId = -1;
+                    }
+                    logBuffer.force();
+                    logChannel.close();
+                    if (null != nextLog) {
+                        nextLog.channel.close();
+                        nextLog = null;
+                    }
+                    promise.complete();
+                } catch (IOException ex) {
+                    promise.fail(ex);
+                }
+            }
+        }, false).ignoreElement();
+    }
+
+    /**
+     * The size of the current log, in bytes
+     */
+    public synchronized int logSize() {
+        return logBuffer.position();
+    }
+
+    private void writeStatus(ServiceStatus current, ServiceStatusValueEnum status) throws IOException {
+        if (current.getStatus() == status) {
+            return;
+        }
+        ServiceStatus updated = current.copy();
+        updated.setStatus(status);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(STATUS);
+        output.writeUTF(current.getKey());
+        output.writeUTF(status.name());
+        append(bytes.toByteArray());
+        services.put(updated.getKey(), updated);
+    }
+
+    /**
+     * Append a record to the log. Starts a compaction once the log is large enough, and the preparation of the next
+     * log or the growth of the mapping ahead of their need. Must be called holding the lock.
+     */
+    private void append(byte[] payload) throws IOException {
+        int needed = RECORD_HEADER_SIZE + payload.length;
+        if (logBuffer.remaining() < needed) {
+            // Only when the appends outran the growth of the mapping, or for a record larger than the growth
+            log.warn("Log mapping full, growing it on the calling thread");
+            int position = logBuffer.position();
+            long capacity = Math.max(2L * logBuffer.capacity(), (long) position + needed);
+            logBuffer = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            logBuffer.position(position);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        // The length goes last, so that a record is never seen with a length but without its content
+        int start = logBuffer.position();
+        logBuffer.position(start + 4);
+        logBuffer.putInt((int) crc.getValue());
+        logBuffer.put(payload);
+        logBuffer.putInt(start, payload.length);
+        dirty = true;
+
+        if (logBuffer.position() >= compactSize && !compacting && null != nextLog) {
+            compact();
+        } else if (logBuffer.position() >= compactSize / 2 && null == nextLog && !preparing) {
+            prepareNextLog();
+        }
+        if (logBuffer.remaining() < logBuffer.capacity() / 4 && !growing) {
+            growLog();
+        }
+    }
+
+    /**
+     * Create and map the log of the next generation on a worker thread, then compact right away if the current log
+     * already needs it. Must be called holding the lock.
+     */
+    private void prepareNextLog() {
+        preparing = true;
+        long nextGeneration = generation + 1;
+        vertx.<Void>rxExecuteBlocking(promise -> {
+                    try {
+                        LogFile prepared = openLog(dir, compactSize, nextGeneration, HEADER_SIZE);
+                        synchronized (this) {
+                            if (closed) {
+                                prepared.channel.close();
+                            } else {
+                                nextLog = prepared;
+                                if (logBuffer.position() >= compactSize && !compacting) {
+                                    compact();
+                                }
+                            }
+                        }
+                        promise.complete();
+                    } catch (IOException ex) {
+                        promise.fail(ex);
+                    }
+                }, false)
+                .doFinally(() -> {
+                    synchronized (this) {
+                        preparing = false;
+                    }
+                })
+                .subscribe(
+                        done -> {},
+                        error -> log.error("Log preparation failed: {}", error.getMessage())
+                );
+    }
+
+    /**
+     * Map twice the current size of the log on a worker thread, then switch the appends to the larger mapping.
+     * Must be called holding the lock.
+     */
+    private void growLog() {
+        growing = true;
+        FileChannel channel = logChannel;
+        long capacity = 2L * logBuffer.capacity();
+        vertx.<Void>rxExecuteBlocking(promise -> {
+                    try {
+                        MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                        synchronized (this) {
+                            // Both mappings share the pages of the file: the appends made meanwhile are kept
+                            if (logChannel == channel && capacity > logBuffer.capacity()) {
+                                grown.position(logBuffer.position());
+                                logBuffer = grown;
+                            }
+                        }
+                        promise.complete();
+                    } catch (IOException ex) {
+                        promise.fail(ex);
+                    }
+                }, false)
+                .doFinally(() -> {
+                    synchronized (this) {
+                        growing = false;
+                    }
+                })
+                .subscribe(
+                        done -> {},
+                        error -> log.error("Log growth failed: {}", error.getMessage())
+                );
+    }
+
+    /**
+     * Switch to the prepared log, then write the table as it was at the switch to a snapshot on a worker thread.
+     * Must be called holding the lock.
+     */
+    private void compact() {
+        compacting = true;
+        List<ServiceStatus> content = new ArrayList<>(services.values());
+        long snapshotGeneration = nextLog.generation;
+        FileChannel previousChannel = logChannel;
+        MappedByteBuffer previousBuffer = logBuffer;
+        use(nextLog);
+        nextLog = null;
+
+        vertx.<Void>rxExecuteBlocking(promise -> {
+                    try {
+                        // Kept until the snapshot is written, in case it fails
+                        previousBuffer.force();
+                        previousChannel.close();
+                        writeSnapshot(content, snapshotGeneration);
+                        deleteLogsBefore(snapshotGeneration);
+                        promise.complete();
+                    } catch (IOException ex) {
+                        promise.fail(ex);
+                    }
+                }, false)
+                .doFinally(() -> {
+                    synchronized (this) {
+                        compacting = false;
+                    }
+                })
+                .subscribe(
+                        done -> {},
+                        error -> log.error("Log compaction failed: {}", error.getMessage()),
+                        () -> log.debug("Log compacted into a snapshot of {} service(s)", content.size())
+                );
+    }
+
+    private void writeSnapshot(List<ServiceStatus> content, long snapshotGeneration) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putLong(snapshotGeneration).flip();
+            channel.write(header);
+            for (ServiceStatus service : content) {
+                byte[] payload = encode(PUT, null, service);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+                record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteLogsBefore(long generation) throws IOException {
+        for (Map.Entry<Long, Path> entry : listLogs(dir).entrySet()) {
+            if (entry.getKey() < generation) {
+                Files.deleteIfExists(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Map the log of a generation, created if needed, and position it at {end}. Anything after {end} is erased, so
+     * that a torn record is never followed by older ones. Blocking: runs on a worker thread.
+     */
+    private static LogFile openLog(Path dir, int compactSize, long logGeneration, int end) throws IOException {
+        Path path = dir.resolve(logFileName(logGeneration));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long capacity = Math.max(2L * compactSize, channel.size());
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        buffer.putInt(0, LOG_MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(8, logGeneration);
+        for (int i = end; i < capacity; i++) {
+            if (buffer.get(i) != 0) buffer.put(i, (byte) 0);
+        }
+        buffer.position(end);
+        return new LogFile(logGeneration, channel, buffer);
+    }
+
+    /**
+     * Append to a log from now on. Must be called holding the lock.
+     */
+    private void use(LogFile logFile) {
+        this.generation = logFile.generation;
+        this.logChannel = logFile.channel;
+        this.logBuffer = logFile.buffer;
+    }
+
+    private void startForcing() {
+        forceTimerId = vertx.setPeriodic(FORCE_PERIOD, id -> {
+            MappedByteBuffer buffer;
+            synchronized (this) {
+                if (!dirty) return;
+                dirty = false;
+                buffer = logBuffer;
+            }
+            vertx.executeBlocking(promise -> {
+                buffer.force();
+                promise.complete();
+            }, false, result -> {
+                if (result.failed()) log.error("Log sync failed: {}", result.cause().getMessage());
+            });
+        });
+    }
+
+    /**
+     * Rebuild the table from the snapshot and the logs following it
+     *
+     * @param cleanup True to delete the logs older than the snapshot
+     */
+    private static Replay replay(Path dir, boolean cleanup) throws IOException {
+        Replay replay = new Replay();
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+            replay.snapshotGeneration = readHeader(buffer, SNAPSHOT_MAGIC, snapshot);
+            if (readRecords(buffer, replay.services) != buffer.limit()) {
+                throw new IOException("Corrupted snapshot " + snapshot);
+            }
+        }
+
+        for (Map.Entry<Long, Path> entry : listLogs(dir).entrySet()) {
+            if (entry.getKey() < replay.snapshotGeneration) {
+                if (cleanup) Files.deleteIfExists(entry.getValue());
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE) continue;
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                readHeader(buffer, LOG_MAGIC, entry.getValue());
+                replay.lastGeneration = entry.getKey();
+                replay.lastLogEnd = readRecords(buffer, replay.services);
+            }
+        }
+        return replay;
+    }
+
+    private static long readHeader(ByteBuffer buffer, int magic, Path path) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt() != magic) {
+            throw new IOException("Not a storage file: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + version + " of " + path);
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * Apply the records from the position of {buffer}, until its end, an empty slot or a torn record
+     *
+     * @return The position following the last applied record
+     */
+    private static int readRecords(ByteBuffer buffer, Map<String, ServiceStatus> services) throws IOException {
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                return start;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Torn record found at offset {}, ignoring the rest of the log", start);
+                return start;
+            }
+            apply(payload, services);
+        }
+        return buffer.position();
+    }
+
+    private static void apply(byte[] payload, Map<String, ServiceStatus> services) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = input.readByte();
+        switch (type) {
+            case PUT: {
+                ServiceStatus service = readService(input);
+                services.put(service.getKey(), service);
+                break;
+            }
+            case REMOVE:
+                services.remove(resolveKey(input.readUTF(), services));
+                break;
+            case REPLACE: {
+                services.remove(resolveKey(input.readUTF(), services));
+                ServiceStatus service = readService(input);
+                services.put(service.getKey(), service);
+                break;
+            }
+            case STATUS: {
+                String key = resolveKey(input.readUTF(), services);
+                ServiceStatusValueEnum status = ServiceStatusValueEnum.valueOfOrDefault(input.readUTF());
+                ServiceStatus current = services.get(key);
+                if (null != current) {
+                    ServiceStatus updated = current.copy();
+                    updated.setStatus(status);
+                    services.put(key, updated);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * A record predating the owners holds the name of its service, which is not its key when holding a separator.
+     * Such a record targets an existing service: if no service has its key, it is the name of a default owner one.
+     */
+    private static String resolveKey(String key, Map<String, ServiceStatus> services) {
+        if (services.containsKey(key)) {
+            return key;
+        }
+        return ServiceStatus.keyOf(ServiceStatus.DEFAULT_OWNER, key);
+    }
+
+    private static byte[] encodeKey(byte type, String key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(type);
+        output.writeUTF(key);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param previousKey The key replaced by the service, for the REPLACE records only
+     */
+    private static byte[] encode(byte type, String previousKey, ServiceStatus service) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(type);
+        if (null != previousKey) {
+            output.writeUTF(previousKey);
+        }
+        output.writeUTF(service.getName());
+        output.writeUTF(service.getUrl());
+        output.writeLong(null != service.getCreatedAt() ? service.getCreatedAt().getMillis() : -1);
+        output.writeUTF(null != service.getStatus() ? service.getStatus().name() : ServiceStatusValueEnum.UNKNOWN.name());
+        output.writeLong(service.getVersion());
+        output.writeInt(service.getPollInterval());
+        writeOptional(output, service.getConnectTimeout());
+        writeOptional(output, service.getIdleTimeout());
+        writeOptional(output, service.getTotalTimeout());
+        output.writeUTF(null != service.getProbeMethod() ? service.getProbeMethod().name() : "");
+        output.writeUTF(service.getOwner());
+        return bytes.toByteArray();
+    }
+
+    private static ServiceStatus readService(DataInputStream input) throws IOException {
+        ServiceStatus service = new ServiceStatus();
+        service.setName(input.readUTF());
+        service.setUrl(input.readUTF());
+        long createdAt = input.readLong();
+        service.setCreatedAt(createdAt >= 0 ? new DateTime(createdAt) : null);
+        service.setStatus(ServiceStatusValueEnum.valueOfOrDefault(input.readUTF()));
+        service.setVersion(input.readLong());
+        service.setPollInterval(input.readInt());
+        service.setConnectTimeout(readOptional(input));
+        service.setIdleTimeout(readOptional(input));
+        service.setTotalTimeout(readOptional(input));
+        // Added after the first records were written: a service is always last in its record, so they may be missing
+        if (input.available() > 0) {
+            service.setProbeMethod(ProbeMethodEnum.valueOfOrNull(input.readUTF()));
+        }
+        if (input.available() > 0) {
+            service.setOwner(input.readUTF());
+        }
+        return service;
+    }
+
+    private static void writeOptional(DataOutputStream output, Integer value) throws IOException {
+        output.writeInt(null != value ? value : -1);
+    }
+
+    private static Integer readOptional(DataInputStream input) throws IOException {
+        int value = input.readInt();
+        return value >= 0 ? value : null;
+    }
+
+    /**
+     * @param generation The generation of a log
+     * @return The name of its file
+     */
+    public static String logFileName(long generation) {
+        return String.format("services-%020d.log", generation);
+    }
+
+    /**
+     * @return The log files of {dir}, by generation
+     */
+    private static TreeMap<Long, Path> listLogs(Path dir) throws IOException {
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            return logs;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    logs.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+        return logs;
+    }
+}
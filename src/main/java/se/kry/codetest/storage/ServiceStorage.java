@@ -0,0 +1,80 @@
+package se.kry.codetest.storage;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.security.InvalidParameterException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistence of the service table, behind {@link se.kry.codetest.repository.ServiceStatusRepository}.
+ * <p>
+ * The engines only store the services: the repository keeps the in-memory registry serving the reads, and turns the
+ * missing services into errors. A service is identified by its owner and its name, unique among the services of
+ * its owner.
+ */
+public interface ServiceStorage {
+    String NAME_CONFLICT_MESSAGE = "Service with this name already exist";
+
+    /**
+     * @return A future holding all the stored services
+     */
+    Single<List<ServiceStatus>> loadAll();
+
+    /**
+     * @param service The service to store, with its creation date, status and version set
+     * @return A future holding the success of the operation
+     *
+     * @throws InvalidParameterException The owner of the service already has a service with this name
+     */
+    Completable insert(ServiceStatus service);
+
+    /**
+     * Store several services at once, in a single transaction. A service whose name is already used by its owner,
+     * stored or earlier in the list, is skipped without failing the others.
+     *
+     * @param services The services to store, with their creation date, status and version set
+     * @return A future holding, for each service in order, true if it was stored and false on a name conflict
+     */
+    Single<List<Boolean>> insertAll(List<ServiceStatus> services);
+
+    /**
+     * @param owner  The owner of the service
+     * @param name   The name of the service
+     * @param status The status to set
+     * @return A future holding false if the owner has no service with this name
+     */
+    Single<Boolean> setStatus(String owner, String name, ServiceStatusValueEnum status);
+
+    /**
+     * Set the status of several services at once. Each status is only written if the service still has the version
+     * it was polled with: the other ones are silently ignored.
+     *
+     * @param statuses The services holding their new status
+     * @return A future holding the success of the operation
+     */
+    Completable setStatuses(Collection<ServiceStatus> statuses);
+
+    /**
+     * @param owner The owner of the service
+     * @param name  The name of the service
+     * @return A future holding false if the owner has no service with this name
+     */
+    Single<Boolean> delete(String owner, String name);
+
+    /**
+     * Replace the definition (name, url, poll interval and timeouts) of a service, reset its status to UNKNOWN and
+     * increment its version
+     *
+     * @param owner      The owner of the service, who keeps it
+     * @param oldName    The current name of the service
+     * @param newService The service holding the new definition
+     * @return A future holding false if the owner has no service with this name
+     *
+     * @throws InvalidParameterException The new name is already used by the owner
+     */
+    Single<Boolean> update(String owner, String oldName, ServiceStatus newService);
+}
@@ -0,0 +1,159 @@
+package se.kry.codetest.storage;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.sqlclient.Row;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import se.kry.codetest.DBConnector;
+import se.kry.codetest.model.ProbeMethodEnum;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.security.InvalidParameterException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stores the services in the service table of the SQLite DB
+ */
+@Slf4j
+public class SqliteServiceStorage implements ServiceStorage {
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private final DBConnector dbConnector;
+
+    public SqliteServiceStorage(DBConnector dbConnector) {
+        log.debug("Instantiating {}...", this.getClass().getName());
+        this.dbConnector = dbConnector;
+    }
+
+    @Override
+    public Single<List<ServiceStatus>> loadAll() {
+        return dbConnector.query("SELECT * FROM service")
+                .map(rows -> StreamSupport
+                        .stream(rows.spliterator(), false)
+                        .map(SqliteServiceStorage::fromRow)
+                        .collect(Collectors.toList()))
+                .toSingle(Collections.emptyList());
+    }
+
+    /**
+     * Read a service from its row, without going through a JsonObject
+     */
+    private static ServiceStatus fromRow(Row row) {
+        ServiceStatus service = new ServiceStatus();
+        service.setName(row.getString("name"));
+        String owner = row.getString("owner");
+        service.setOwner(null != owner ? owner : ServiceStatus.DEFAULT_OWNER);
+        service.setUrl(row.getString("url"));
+        Long createdAt = row.getLong("created_at");
+        if (null != createdAt) {
+            service.setCreatedAt(new DateTime(createdAt.longValue()));
+        }
+        service.setStatus(ServiceStatusValueEnum.valueOfOrDefault(row.getString("status")));
+        Long version = row.getLong("version");
+        service.setVersion(null != version ? version : 0L);
+        Integer pollInterval = row.getInteger("poll_interval");
+        service.setPollInterval(null != pollInterval ? pollInterval : ServiceStatus.DEFAULT_POLL_INTERVAL);
+        service.setConnectTimeout(row.getInteger("connect_timeout"));
+        service.setIdleTimeout(row.getInteger("idle_timeout"));
+        service.setTotalTimeout(row.getInteger("total_timeout"));
+        service.setProbeMethod(ProbeMethodEnum.valueOfOrNull(row.getString("probe_method")));
+        return service;
+    }
+
+    @Override
+    public Completable insert(ServiceStatus service) {
+        return dbConnector.query("INSERT INTO service (url, name, owner, created_at, poll_interval, connect_timeout, idle_timeout, total_timeout, probe_method) " +
+                                "values(?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        insertParams(service))
+                .toSingle()
+                .onErrorResumeNext(cause -> Single.error(translateConstraintViolation(cause)))
+                .ignoreElement();
+    }
+
+    @Override
+    public Single<List<Boolean>> insertAll(List<ServiceStatus> services) {
+        List<JsonArray> params = services
+                .stream()
+                .map(SqliteServiceStorage::insertParams)
+                .collect(Collectors.toList());
+
+        // A prepared statement executed as one batch: a single transaction, and a row count per service telling the conflicts
+        return dbConnector.batchCounts("INSERT OR IGNORE INTO service (url, name, owner, created_at, poll_interval, connect_timeout, idle_timeout, total_timeout, probe_method) " +
+                                "values(?, ?, ?, ?, ?, ?, ?, ?, ?)", params)
+                .map(counts -> counts.stream().map(count -> count > 0).collect(Collectors.toList()));
+    }
+
+    @Override
+    public Single<Boolean> setStatus(String owner, String name, ServiceStatusValueEnum status) {
+        return dbConnector.query(
+                        "UPDATE service SET status = ? WHERE owner = ? AND name = ?",
+                        new JsonArray(Arrays.asList(status.name(), owner, name))
+                )
+                .toSingle()
+                .map(rows -> rows.rowCount() > 0);
+    }
+
+    @Override
+    public Completable setStatuses(Collection<ServiceStatus> statuses) {
+        List<JsonArray> params = statuses
+                .stream()
+                .map(service -> new JsonArray(Arrays.asList(service.getStatus().name(), service.getOwner(), service.getName(), service.getVersion())))
+                .collect(Collectors.toList());
+
+        return dbConnector.batch("UPDATE service SET status = ? WHERE owner = ? AND name = ? AND version = ?", params);
+    }
+
+    @Override
+    public Single<Boolean> delete(String owner, String name) {
+        return dbConnector.query("DELETE FROM service WHERE owner = ? AND name = ?",
+                        new JsonArray(Arrays.asList(owner, name)))
+                .toSingle()
+                .map(rows -> rows.rowCount() > 0);
+    }
+
+    @Override
+    public Single<Boolean> update(String owner, String oldName, ServiceStatus newService) {
+        return dbConnector.query("UPDATE service SET name = ?, url = ?, poll_interval = ?, connect_timeout = ?, idle_timeout = ?, total_timeout = ?, " +
+                                "probe_method = ?, status = 'UNKNOWN', version = version + 1 where owner = ? AND name = ?",
+                        new JsonArray(Arrays.asList(newService.getName(), newService.getUrl(), newService.getPollInterval(),
+                                newService.getConnectTimeout(), newService.getIdleTimeout(), newService.getTotalTimeout(), probeMethodOf(newService),
+                                owner, oldName)))
+                .toSingle()
+                .onErrorResumeNext(cause -> Single.error(translateConstraintViolation(cause)))
+                .map(rows -> rows.rowCount() > 0);
+    }
+
+    private static JsonArray insertParams(ServiceStatus service) {
+        return new JsonArray(Arrays.asList(service.getUrl(), service.getName(), service.getOwner(), service.getCreatedAt().getMillis(),
+                service.getPollInterval(), service.getConnectTimeout(), service.getIdleTimeout(), service.getTotalTimeout(), probeMethodOf(service)));
+    }
+
+    private static String probeMethodOf(ServiceStatus service) {
+        return null != service.getProbeMethod() ? service.getProbeMethod().name() : null;
+    }
+
+    /**
+     * Turn a violation of the unique service name index into an {@link InvalidParameterException}
+     *
+     * @param cause The error raised by the DB
+     * @return The error to propagate
+     */
+    private static Throwable translateConstraintViolation(Throwable cause) {
+        if (cause instanceof SQLException
+                && ((SQLException) cause).getErrorCode() == SQLITE_CONSTRAINT
+                && StringUtils.contains(cause.getMessage(), "UNIQUE")) {
+            return new InvalidParameterException(NAME_CONFLICT_MESSAGE);
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,66 @@
+package se.kry.codetest.storage;
+
+import io.vertx.core.json.JsonObject;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Choice and tuning of the engine persisting the services, read from the environment
+ */
+@Data
+public class StorageOptions {
+    public static final String ENGINE = "STORAGE_ENGINE";
+    public static final String DIR = "STORAGE_DIR";
+    public static final String COMPACT_SIZE = "STORAGE_COMPACT_SIZE";
+
+    public static final List<String> KEYS = Arrays.asList(ENGINE, DIR, COMPACT_SIZE);
+
+    public enum Engine {
+        /**
+         * The service table of the SQLite DB
+         */
+        SQLITE,
+        /**
+         * An in-memory table persisted as an append-only change log and a snapshot, see {@link LogServiceStorage}
+         */
+        LOG
+    }
+
+    private Engine engine = Engine.SQLITE;
+    /**
+     * Directory of the log engine files. Null to use a directory next to the DB file.
+     */
+    private String dir;
+    /**
+     * Size of the change log above which it is compacted into a new snapshot, in bytes
+     */
+    private int compactSize = 4 * 1024 * 1024;
+
+    /**
+     * Create the options from a config holding the STORAGE_* keys. Missing keys keep their default value.
+     *
+     * @param config The config
+     * @return A StorageOptions instance
+     *
+     * @throws IllegalArgumentException The engine is unknown
+     */
+    public static StorageOptions fromConfig(@NonNull JsonObject config) {
+        StorageOptions output = new StorageOptions();
+        output.setEngine(Engine.valueOf(config.getString(ENGINE, output.getEngine().name()).toUpperCase()));
+        output.setDir(config.getString(DIR, output.getDir()));
+        output.setCompactSize(Math.max(64 * 1024, config.getInteger(COMPACT_SIZE, output.getCompactSize())));
+
+        return output;
+    }
+
+    /**
+     * @param dbPath The path of the SQLite DB
+     * @return The directory of the log engine files
+     */
+    public String dirFor(String dbPath) {
+        return null != dir ? dir : dbPath + ".services";
+    }
+}
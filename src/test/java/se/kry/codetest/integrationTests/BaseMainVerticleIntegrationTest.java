@@ -1,61 +1,105 @@
 package se.kry.codetest.integrationTests;
 
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.sqlclient.Row;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
 import se.kry.codetest.DBConnector;
 import se.kry.codetest.MainVerticle;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.storage.LogServiceStorage;
+import se.kry.codetest.storage.StorageOptions;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @Slf4j
 @ExtendWith(VertxExtension.class)
 public abstract class BaseMainVerticleIntegrationTest {
 
-    static final protected String DB_NAME = "pollerTest.db";
+    static final protected String DB_PREFIX = "pollerTest-";
     static final protected int APP_PORT = 8084;
     static final protected String BASE_HOST = "localhost";
 
     protected final static String BASE_URI = "/api/v1/";
+    /**
+     * The storage engine of the services, set with -Dstorage.engine (sqlite or log)
+     */
+    protected final static StorageOptions.Engine STORAGE_ENGINE =
+            StorageOptions.Engine.valueOf(System.getProperty("storage.engine", "sqlite").toUpperCase());
 
     protected DBConnector connector = null;
+    /**
+     * A new file per test, only deleted when the JVM exits. The connections of a test may still be closing when the
+     * next one starts: deleting their file would let the new file reuse its inode, and SQLite would then mix up the
+     * locks of both files.
+     */
+    protected String dbName = null;
 
     @BeforeEach
     void deploy_verticle(Vertx vertx, VertxTestContext testContext) {
-        vertx.rxDeployVerticle(new MainVerticle(APP_PORT, DB_NAME))
-                .flatMapMaybe(id -> {
-                    this.connector = new DBConnector(vertx, DB_NAME);
-                    return this.connector.query("delete from service;");
-                })
+        // The DB is seeded before the deployment, as the verticle loads the services in memory on startup
+        this.dbName = DB_PREFIX + UUID.randomUUID() + ".db";
+        new File(dbName).deleteOnExit();
+        new File(dbName + "-wal").deleteOnExit();
+        new File(dbName + "-shm").deleteOnExit();
+        String storageDir = new StorageOptions().dirFor(dbName);
+        new File(storageDir).deleteOnExit();
+        new File(storageDir, LogServiceStorage.logFileName(0)).deleteOnExit();
+        new File(storageDir, LogServiceStorage.SNAPSHOT_FILE).deleteOnExit();
+        this.connector = new DBConnector(vertx, dbName);
+        this.connector.start()
+                .andThen(this.connector.query("delete from service;").ignoreElement())
+                .andThen(this.connector.query("delete from service_history;").ignoreElement())
+                .andThen(Completable.defer(() -> prepareDb(vertx)))
+                .andThen(vertx.rxDeployVerticle(new MainVerticle(APP_PORT, dbName), new DeploymentOptions()
+                        .setConfig(new JsonObject().put(StorageOptions.ENGINE, STORAGE_ENGINE.name()))))
                 .doOnError(testContext::failNow)
-                .doOnSuccess(result ->
-                        prepareDb(vertx, testContext)
-                )
+                .doOnSuccess(id -> testContext.completeNow())
                 .subscribe();
     }
 
     @AfterEach
     void tearDown(Vertx vertx, VertxTestContext testContext) {
-        vertx.rxClose()
-                .doOnComplete(() -> {
-                    File dbFile = new File(DB_NAME);
-                    try {
-                        Files.deleteIfExists(dbFile.toPath());
-                    } catch (IOException ex) {
-                        log.error("Something went wrong when deleting the test db file. You might want to delete {} manually", DB_NAME);
-                        ex.printStackTrace();
-                    }
-                    testContext.completeNow();
-                }).subscribe();
+        vertx.rxClose().subscribe(testContext::completeNow, testContext::failNow);
     }
 
-    protected void prepareDb(Vertx vertx, VertxTestContext testContext) {
-        testContext.completeNow();
+    protected Completable prepareDb(Vertx vertx) {
+        return Completable.complete();
+    }
+
+    /**
+     * Read the services with a name from the storage engine in use, bypassing the app
+     *
+     * @param name The name of the services
+     * @return A future holding the stored services, as JSON objects with the DB column names
+     */
+    protected Single<List<JsonObject>> findStoredServices(String name) {
+        if (STORAGE_ENGINE == StorageOptions.Engine.LOG) {
+            return Single.fromCallable(() -> LogServiceStorage.readAll(Paths.get(new StorageOptions().dirFor(dbName)))
+                    .stream()
+                    .filter(service -> name.equals(service.getName()))
+                    .map(ServiceStatus::toJson)
+                    .collect(Collectors.toList()));
+        }
+        return this.connector.query("select * from service where name = ?", new JsonArray().add(name))
+                .toSingle()
+                .map(rows -> StreamSupport
+                        .stream(rows.spliterator(), false)
+                        .map(Row::toJson)
+                        .collect(Collectors.toList()));
     }
 }
@@ -15,6 +15,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(VertxExtension.class)
 public class MainVerticleTest extends BaseMainVerticleIntegrationTest {
@@ -51,4 +52,32 @@ public class MainVerticleTest extends BaseMainVerticleIntegrationTest {
                     testContext.completeNow();
                 })).subscribe();
     }
+
+    @Test
+    @DisplayName("Query url /metrics gives the HTTP, DB and Vert.x metrics in the Prometheus format")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void metrics_route_returns_the_metrics(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = client
+                .get(APP_PORT, BASE_HOST, BASE_URI + "service")
+                .rxSend()
+                .flatMap(response -> client.get(APP_PORT, BASE_HOST, "/metrics").rxSend());
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    String body = response.bodyAsString();
+                    assertEquals(200, response.statusCode());
+                    assertTrue(response.getHeader("content-type").startsWith("text/plain"));
+                    assertTrue(body.contains("http_server_requests_seconds_count{method=\"GET\",route=\"/api/v1/service\",status=\"200\",}"));
+                    assertTrue(body.contains("db_query_seconds_count{pool=\"read\",type=\"query\",}"));
+                    assertTrue(body.contains("db_pool_wait_seconds_bucket"));
+                    assertTrue(body.contains("poller_request_seconds_count{outcome=\"timeout\",}"));
+                    assertTrue(body.contains("vertx_eventloop_delay_seconds_max"));
+                    testContext.completeNow();
+                })).subscribe();
+    }
 }
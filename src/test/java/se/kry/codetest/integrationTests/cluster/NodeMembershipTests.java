@@ -0,0 +1,68 @@
+package se.kry.codetest.integrationTests.cluster;
+
+import io.reactivex.Completable;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.cluster.ClusterOptions;
+import se.kry.codetest.cluster.NodeMembership;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@ExtendWith(VertxExtension.class)
+public class NodeMembershipTests extends BaseMainVerticleIntegrationTest {
+    private static final long HEARTBEAT_PERIOD = 100;
+    private static final int SERVICE_COUNT = 100;
+
+    @Test
+    @DisplayName("Each service is owned by exactly one live node, and the services of a leaving node are taken over")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void nodes_should_share_the_services_and_take_over_on_leave(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        NodeMembership first = new NodeMembership(vertx, this.connector, options("first"), () -> {});
+        NodeMembership second = new NodeMembership(vertx, this.connector, options("second"), () -> {});
+
+        // Act
+        first.start()
+                .andThen(second.start())
+                // Let the first node see the second one on its next heartbeat
+                .andThen(Completable.timer(HEARTBEAT_PERIOD * 3, TimeUnit.MILLISECONDS))
+                // Assert
+                .doOnComplete(() -> testContext.verify(() -> {
+                    assertEquals(2, first.liveNodes().size());
+                    long ownedByFirst = IntStream.range(0, SERVICE_COUNT).filter(i -> first.owns("service-" + i)).count();
+                    IntStream.range(0, SERVICE_COUNT).forEach(i ->
+                            assertNotEquals(first.owns("service-" + i), second.owns("service-" + i)));
+                    assertNotEquals(0, ownedByFirst);
+                    assertNotEquals(SERVICE_COUNT, ownedByFirst);
+                }))
+                .andThen(second.stop())
+                .andThen(Completable.timer(HEARTBEAT_PERIOD * 3, TimeUnit.MILLISECONDS))
+                .andThen(first.stop())
+                .doOnComplete(() -> testContext.verify(() -> {
+                    assertEquals(1, first.liveNodes().size());
+                    IntStream.range(0, SERVICE_COUNT).forEach(i -> assertEquals(true, first.owns("service-" + i)));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    private static ClusterOptions options(String nodeId) {
+        ClusterOptions options = new ClusterOptions();
+        options.setEnabled(true);
+        options.setNodeId(nodeId);
+        options.setHeartbeatPeriod(HEARTBEAT_PERIOD);
+        options.setNodeTimeout(HEARTBEAT_PERIOD * 10);
+        return options;
+    }
+}
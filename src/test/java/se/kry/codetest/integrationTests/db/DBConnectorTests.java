@@ -0,0 +1,94 @@
+package se.kry.codetest.integrationTests.db;
+
+import io.reactivex.Flowable;
+import io.vertx.core.json.JsonArray;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import se.kry.codetest.DBConnector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class DBConnectorTests {
+    private static final int READ_COUNT = 5;
+
+    @Test
+    @DisplayName("The read statements are run without any statement discarded by the pool")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void connector_should_not_discard_the_read_statements(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Arrange
+        DBConnector connector = new DBConnector(vertx, dir.resolve("connectorTest.db").toString());
+        // The pool reports the statements it discards through the logs, written to the standard error
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream logs = new ByteArrayOutputStream();
+
+        connector.start()
+                .andThen(connector.query("INSERT INTO service (url, name, created_at) VALUES ('https://foo.com', 'foo', 0)"))
+                .ignoreElement()
+                .doOnComplete(() -> System.setErr(new PrintStream(logs, true)))
+                // Act
+                .andThen(Flowable.range(0, READ_COUNT)
+                        .concatMapSingle(i -> connector.query("SELECT name FROM service WHERE name = ?",
+                                        new JsonArray().add("foo"))
+                                .toSingle()))
+                .toList()
+                .doFinally(() -> System.setErr(stderr))
+                // Assert
+                .subscribe(results -> testContext.verify(() -> {
+                    assertEquals(READ_COUNT, results.size());
+                    assertFalse(logs.toString().contains("Problem with checked-in Statement"), logs.toString());
+                    testContext.completeNow();
+                }), testContext::failNow);
+    }
+
+    @Test
+    @DisplayName("The services dropped by the deduplication of the names are logged")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void connector_should_log_the_services_dropped_by_the_migrations(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) throws SQLException {
+        // Arrange: a DB of the first schema version, holding a name twice
+        String path = dir.resolve("legacy.db").toString();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE service (url VARCHAR(128) NOT NULL, name VARCHAR(255) NOT NULL, " +
+                    "created_at INTEGER(8) NOT NULL, status VARCHAR(8) DEFAULT \"UNKNOWN\")");
+            statement.execute("INSERT INTO service (url, name, created_at) VALUES " +
+                    "('https://first.com', 'foo', 0), ('https://second.com', 'foo', 1), ('https://bar.com', 'bar', 2)");
+            statement.execute("PRAGMA user_version = 1");
+        }
+        DBConnector connector = new DBConnector(vertx, path);
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream logs = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(logs, true));
+
+        // Act
+        connector.start()
+                .doFinally(() -> System.setErr(stderr))
+                .andThen(connector.query("SELECT url FROM service WHERE name = 'foo'"))
+                .toSingle()
+                // Assert
+                .subscribe(rows -> testContext.verify(() -> {
+                    assertEquals(1, rows.size());
+                    assertEquals("https://first.com", rows.iterator().next().getString("url"));
+                    assertTrue(logs.toString().contains("Dropping 1 service(s)"), logs.toString());
+                    assertTrue(logs.toString().contains("https://second.com"), logs.toString());
+                    testContext.completeNow();
+                }), testContext::failNow);
+    }
+}
@@ -0,0 +1,354 @@
+package se.kry.codetest.integrationTests.poller;
+
+import io.vertx.core.http.HttpMethod;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.BackgroundPoller;
+import se.kry.codetest.DBConnector;
+import se.kry.codetest.model.ProbeMethodEnum;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.poller.PollerOptions;
+import se.kry.codetest.poller.StatusBatchWriter;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+import se.kry.codetest.repository.ServiceStatusRepository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+public class BackgroundPollerTests {
+    private static final int STUB_PORT = 8085;
+    private static final int SERVICE_COUNT = 10;
+    private static final int MAX_PER_HOST = 2;
+
+    @Test
+    @DisplayName("The poller never runs more requests against a host than the per host limit")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void poller_should_respect_the_per_host_limit(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<ServiceStatus> services = IntStream.range(0, SERVICE_COUNT)
+                .mapToObj(i -> {
+                    ServiceStatus service = new ServiceStatus();
+                    service.setName("service-" + i);
+                    service.setUrl("http://localhost:" + STUB_PORT + "/" + i);
+                    service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                    return service;
+                })
+                .collect(Collectors.toList());
+
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(services);
+        DBConnector pollerConnector = new DBConnector(vertx, "pollerTest.db");
+        StatusBatchWriter writer = new StatusBatchWriter(new ServiceStatusRepository(pollerConnector, registry),
+                new ServiceHistoryRepository(pollerConnector), registry);
+        PollerOptions options = new PollerOptions();
+        options.setMaxPerHost(MAX_PER_HOST);
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, options);
+
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    vertx.setTimer(50, id -> {
+                        inFlight.decrementAndGet();
+                        request.response().end("OK");
+                    });
+                })
+                .rxListen(STUB_PORT)
+                // Act
+                .doOnSuccess(server -> {
+                    poller.start();
+                    services.forEach(poller::poll);
+                    vertx.setPeriodic(20, id -> {
+                        if (writer.pendingCount() < SERVICE_COUNT) return;
+                        vertx.cancelTimer(id);
+                        // Assert
+                        testContext.verify(() -> {
+                            assertEquals(MAX_PER_HOST, maxInFlight.get());
+                            testContext.completeNow();
+                        });
+                    });
+                })
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("The services of the other hosts keep being polled while a host hangs")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void poller_should_keep_polling_the_other_hosts_while_a_host_hangs(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        AtomicInteger hanging = new AtomicInteger();
+        // Both hosts are served by the stub, localhost never answering
+        List<ServiceStatus> services = IntStream.range(0, SERVICE_COUNT)
+                .mapToObj(i -> {
+                    ServiceStatus service = new ServiceStatus();
+                    service.setName("service-" + i);
+                    service.setUrl(i < SERVICE_COUNT / 2
+                            ? "http://localhost:" + STUB_PORT + "/hang/" + i
+                            : "http://127.0.0.1:" + STUB_PORT + "/" + i);
+                    service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                    return service;
+                })
+                .collect(Collectors.toList());
+
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(services);
+        DBConnector pollerConnector = new DBConnector(vertx, "pollerTest.db");
+        StatusBatchWriter writer = new StatusBatchWriter(new ServiceStatusRepository(pollerConnector, registry),
+                new ServiceHistoryRepository(pollerConnector), registry);
+        PollerOptions options = new PollerOptions();
+        options.setMaxPerHost(MAX_PER_HOST);
+        options.setMaxInFlight(MAX_PER_HOST + 1);
+
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, options);
+
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    if (request.path().startsWith("/hang/")) {
+                        hanging.incrementAndGet();
+                        return;
+                    }
+                    request.response().end("OK");
+                })
+                .rxListen(STUB_PORT)
+                // Act
+                .doOnSuccess(server -> {
+                    poller.start();
+                    services.forEach(poller::poll);
+                    vertx.setTimer(1000, id -> testContext.verify(() -> {
+                        // Assert
+                        assertEquals(MAX_PER_HOST, hanging.get());
+                        assertEquals(SERVICE_COUNT / 2, writer.pendingCount());
+                        testContext.completeNow();
+                    }));
+                })
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("A service answering slower than its total timeout is marked as failed")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void poller_should_fail_services_exceeding_their_total_timeout(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        ServiceStatus service = new ServiceStatus();
+        service.setName("slow");
+        service.setUrl("http://localhost:" + STUB_PORT + "/slow");
+        service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+        service.setTotalTimeout(200);
+
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(List.of(service));
+        DBConnector pollerConnector = new DBConnector(vertx, "pollerTest.db");
+        StatusBatchWriter writer = new StatusBatchWriter(new ServiceStatusRepository(pollerConnector, registry),
+                new ServiceHistoryRepository(pollerConnector), registry);
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, new PollerOptions());
+
+        vertx.createHttpServer()
+                // Never answers
+                .requestHandler(request -> {})
+                .rxListen(STUB_PORT)
+                // Act
+                .doOnSuccess(server -> {
+                    poller.start();
+                    poller.poll(service);
+                    vertx.setTimer(1000, id -> testContext.verify(() -> {
+                        // Assert
+                        assertEquals(1, writer.pendingCount());
+                        testContext.completeNow();
+                    }));
+                })
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("Each service is probed with its method, the large bodies being discarded")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void poller_should_probe_services_with_their_method(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        Map<String, HttpMethod> methods = new ConcurrentHashMap<>();
+        Map<String, ServiceStatusValueEnum> statuses = new ConcurrentHashMap<>();
+        List<ServiceStatus> services = Arrays.stream(ProbeMethodEnum.values())
+                .map(probeMethod -> {
+                    ServiceStatus service = new ServiceStatus();
+                    service.setName(probeMethod.name());
+                    service.setUrl("http://localhost:" + STUB_PORT + "/" + probeMethod.name());
+                    service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                    service.setProbeMethod(probeMethod);
+                    return service;
+                })
+                .collect(Collectors.toList());
+
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(services);
+        DBConnector pollerConnector = new DBConnector(vertx, "pollerTest.db");
+        StatusBatchWriter writer = new StatusBatchWriter(new ServiceStatusRepository(pollerConnector, registry),
+                new ServiceHistoryRepository(pollerConnector), registry) {
+            @Override
+            public void record(ServiceStatus service, ServiceStatusValueEnum status, long latency) {
+                statuses.put(service.getName(), status);
+            }
+        };
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, new PollerOptions());
+        Buffer largeBody = Buffer.buffer(new byte[4 * 1024 * 1024]);
+
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    methods.put(request.path().substring(1), request.method());
+                    request.response().end(largeBody);
+                })
+                .rxListen(STUB_PORT)
+                // Act
+                .doOnSuccess(server -> {
+                    poller.start();
+                    services.forEach(poller::poll);
+                    vertx.setPeriodic(20, id -> {
+                        if (statuses.size() < services.size()) return;
+                        vertx.cancelTimer(id);
+                        // Assert
+                        testContext.verify(() -> {
+                            assertEquals(HttpMethod.GET, methods.get(ProbeMethodEnum.GET.name()));
+                            assertEquals(HttpMethod.HEAD, methods.get(ProbeMethodEnum.HEAD.name()));
+                            assertEquals(HttpMethod.GET, methods.get(ProbeMethodEnum.GET_DISCARD.name()));
+                            statuses.values().forEach(status -> assertEquals(ServiceStatusValueEnum.OK, status));
+                            testContext.completeNow();
+                        });
+                    });
+                })
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("The services sharing an endpoint get the result of a single request")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void poller_should_poll_a_shared_endpoint_once(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        AtomicInteger requests = new AtomicInteger();
+        Map<String, ServiceStatusValueEnum> statuses = new ConcurrentHashMap<>();
+        List<String> urls = Arrays.asList("http://localhost:" + STUB_PORT + "/health",
+                "http://LOCALHOST:" + STUB_PORT + "/health", "HTTP://localhost:" + STUB_PORT + "/health#top");
+        List<ServiceStatus> services = IntStream.range(0, urls.size())
+                .mapToObj(i -> {
+                    ServiceStatus service = new ServiceStatus();
+                    service.setName("service-" + i);
+                    service.setUrl(urls.get(i));
+                    service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                    return service;
+                })
+                .collect(Collectors.toList());
+
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(services);
+        DBConnector pollerConnector = new DBConnector(vertx, "pollerTest.db");
+        StatusBatchWriter writer = new StatusBatchWriter(new ServiceStatusRepository(pollerConnector, registry),
+                new ServiceHistoryRepository(pollerConnector), registry) {
+            @Override
+            public void record(ServiceStatus service, ServiceStatusValueEnum status, long latency) {
+                statuses.put(service.getName(), status);
+            }
+        };
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, new PollerOptions());
+
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    requests.incrementAndGet();
+                    vertx.setTimer(50, id -> request.response().end("OK"));
+                })
+                .rxListen(STUB_PORT)
+                // Act
+                .doOnSuccess(server -> {
+                    poller.start();
+                    services.forEach(poller::poll);
+                    vertx.setTimer(500, id -> testContext.verify(() -> {
+                        // Assert
+                        assertEquals(1, requests.get());
+                        assertEquals(services.size(), statuses.size());
+                        statuses.values().forEach(status -> assertEquals(ServiceStatusValueEnum.OK, status));
+                        testContext.completeNow();
+                    }));
+                })
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("The services sharing an endpoint, due at different times, get it requested once per interval")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void poller_should_poll_a_shared_endpoint_once_per_interval(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        int memberCount = 4;
+        int rounds = 2;
+        long interval = 1000;
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger results = new AtomicInteger();
+        List<ServiceStatus> services = IntStream.range(0, memberCount)
+                .mapToObj(i -> {
+                    ServiceStatus service = new ServiceStatus();
+                    service.setName("service-" + i);
+                    service.setUrl("http://localhost:" + STUB_PORT + "/health");
+                    service.setPollInterval((int) (interval / 1000));
+                    service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+                    return service;
+                })
+                .collect(Collectors.toList());
+
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(services);
+        DBConnector pollerConnector = new DBConnector(vertx, "pollerTest.db");
+        StatusBatchWriter writer = new StatusBatchWriter(new ServiceStatusRepository(pollerConnector, registry),
+                new ServiceHistoryRepository(pollerConnector), registry) {
+            @Override
+            public void record(ServiceStatus service, ServiceStatusValueEnum status, long latency) {
+                results.incrementAndGet();
+            }
+        };
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, new PollerOptions());
+
+        vertx.createHttpServer()
+                .requestHandler(request -> {
+                    requests.incrementAndGet();
+                    vertx.setTimer(50, id -> request.response().end("OK"));
+                })
+                .rxListen(STUB_PORT)
+                // Act
+                .doOnSuccess(server -> {
+                    poller.start();
+                    // Each member is due at its own phase, spread over the interval
+                    for (int round = 0; round < rounds; round++) {
+                        for (int i = 0; i < memberCount; i++) {
+                            ServiceStatus service = services.get(i);
+                            long dueAt = round * interval + i * interval / memberCount;
+                            vertx.setTimer(dueAt + 1, id -> poller.poll(service));
+                        }
+                    }
+                    vertx.setTimer(rounds * interval + 200, id -> testContext.verify(() -> {
+                        // Assert
+                        assertEquals(rounds, requests.get());
+                        assertEquals(rounds * memberCount, results.get());
+                        testContext.completeNow();
+                    }));
+                })
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+}
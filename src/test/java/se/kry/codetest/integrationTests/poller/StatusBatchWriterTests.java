@@ -0,0 +1,172 @@
+package se.kry.codetest.integrationTests.poller;
+
+import io.reactivex.Completable;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.sqlclient.Row;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+import se.kry.codetest.model.ServiceHistoryEntry;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.poller.StatusBatchWriter;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+import se.kry.codetest.repository.ServiceStatusRepository;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+public class StatusBatchWriterTests extends BaseMainVerticleIntegrationTest {
+
+    @Override
+    protected Completable prepareDb(Vertx vertx) {
+        long date = new Date().getTime();
+        return this.connector.query("insert into service (url, name, created_at, status) " +
+                        "values ('https://example.com', 'foo', " + date + ", 'OK'), " +
+                        "('https://foo.com', 'bar', " + date + ", 'OK');")
+                .ignoreElement();
+    }
+
+    @Test
+    @DisplayName("Only the changed statuses are kept, and they are persisted on flush")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void status_writer_should_persist_changed_statuses_only(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        ServiceStatusRepository repository = new ServiceStatusRepository(this.connector, registry);
+        StatusBatchWriter writer = new StatusBatchWriter(repository, new ServiceHistoryRepository(this.connector), registry);
+
+        // Act
+        repository.load()
+                .doOnComplete(() -> {
+                    writer.record(registry.findByKey("foo").orElseThrow(), ServiceStatusValueEnum.OK, 10);
+                    writer.record(registry.findByKey("bar").orElseThrow(), ServiceStatusValueEnum.OK, 10);
+                    writer.record(registry.findByKey("bar").orElseThrow(), ServiceStatusValueEnum.FAIL, 10);
+                    testContext.verify(() -> assertEquals(1, writer.pendingCount()));
+                })
+                .andThen(writer.flush())
+                // Assert
+                .andThen(this.connector.query("select name, status from service").toSingle())
+                .doOnSuccess(rows -> testContext.verify(() -> {
+                    Map<String, String> statuses = StreamSupport
+                            .stream(rows.spliterator(), false)
+                            .map(Row::toJson)
+                            .collect(Collectors.toMap(json -> json.getString("name"), json -> json.getString("status")));
+
+                    assertEquals("OK", statuses.get("foo"));
+                    assertEquals("FAIL", statuses.get("bar"));
+                    assertEquals(ServiceStatusValueEnum.FAIL, registry.findByKey("bar").orElseThrow().getStatus());
+                    assertEquals(0, writer.pendingCount());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("A result recorded during a flush is compared to the flushed one, and persisted by the next flush")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void status_writer_should_keep_a_result_recorded_during_a_flush(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        ServiceStatusRepository repository = new ServiceStatusRepository(this.connector, registry);
+        StatusBatchWriter writer = new StatusBatchWriter(repository, new ServiceHistoryRepository(this.connector), registry);
+
+        // Act
+        repository.load()
+                .doOnComplete(() -> writer.record(registry.findByKey("foo").orElseThrow(), ServiceStatusValueEnum.FAIL, 10))
+                .andThen(Completable.defer(() -> {
+                    Completable flush = writer.flush().cache();
+                    flush.subscribe(() -> {}, error -> {});
+                    // The registry still holds OK while the FAIL result is being flushed
+                    writer.record(registry.findByKey("foo").orElseThrow(), ServiceStatusValueEnum.OK, 10);
+                    testContext.verify(() -> assertEquals(1, writer.pendingCount()));
+                    return flush;
+                }))
+                .andThen(writer.flush())
+                // Assert
+                .andThen(this.connector.query("select status from service where name = 'foo'").toSingle())
+                .doOnSuccess(rows -> testContext.verify(() -> {
+                    assertEquals("OK", rows.iterator().next().getString("status"));
+                    assertEquals(ServiceStatusValueEnum.OK, registry.findByKey("foo").orElseThrow().getStatus());
+                    assertEquals(0, writer.pendingCount());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("A result polled before the service was updated is dropped")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void status_writer_should_drop_results_of_updated_services(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        ServiceStatusRepository repository = new ServiceStatusRepository(this.connector, registry);
+        StatusBatchWriter writer = new StatusBatchWriter(repository, new ServiceHistoryRepository(this.connector), registry);
+        ServiceStatus newDefinition = new ServiceStatus();
+        newDefinition.setName("foo");
+        newDefinition.setUrl("https://example.org");
+
+        // Act
+        repository.load()
+                .andThen(Completable.defer(() -> {
+                    ServiceStatus polled = registry.findByKey("foo").orElseThrow();
+                    return repository.update(ServiceStatus.DEFAULT_OWNER, "foo", newDefinition)
+                            .doOnComplete(() -> writer.record(polled, ServiceStatusValueEnum.FAIL, 10));
+                }))
+                .andThen(writer.flush())
+                // Assert
+                .andThen(this.connector.query("select status, version from service where name = 'foo'").toSingle())
+                .doOnSuccess(rows -> testContext.verify(() -> {
+                    Row row = rows.iterator().next();
+                    assertEquals("UNKNOWN", row.getString("status"));
+                    assertEquals(1, row.getLong("version"));
+                    assertEquals(0, writer.pendingCount());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("Every result is appended to the history, changed or not")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void status_writer_should_append_every_result_to_history(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        ServiceStatusRepository repository = new ServiceStatusRepository(this.connector, registry);
+        ServiceHistoryRepository historyRepository = new ServiceHistoryRepository(this.connector);
+        StatusBatchWriter writer = new StatusBatchWriter(repository, historyRepository, registry);
+        long from = System.currentTimeMillis();
+
+        // Act
+        repository.load()
+                .doOnComplete(() -> {
+                    writer.record(registry.findByKey("foo").orElseThrow(), ServiceStatusValueEnum.OK, 10);
+                    writer.record(registry.findByKey("foo").orElseThrow(), ServiceStatusValueEnum.FAIL, 20);
+                    writer.record(registry.findByKey("foo").orElseThrow(), ServiceStatusValueEnum.OK, 30);
+                })
+                .andThen(writer.flush())
+                // Assert
+                .andThen(historyRepository.findByService("foo", from, System.currentTimeMillis() + 1000, 10))
+                .doOnSuccess(entries -> testContext.verify(() -> {
+                    assertEquals(3, entries.size());
+                    assertEquals(60, entries.stream().mapToLong(ServiceHistoryEntry::getLatency).sum());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+}
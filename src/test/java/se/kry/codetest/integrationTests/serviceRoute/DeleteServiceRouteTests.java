@@ -1,5 +1,6 @@
 package se.kry.codetest.integrationTests.serviceRoute;
 
+import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.Timeout;
@@ -9,17 +10,13 @@ import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
 import io.vertx.reactivex.ext.web.client.WebClient;
-import io.vertx.reactivex.sqlclient.Row;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
 
 import java.util.Date;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -30,12 +27,11 @@ public class DeleteServiceRouteTests extends BaseMainVerticleIntegrationTest {
     private static final String URI = BASE_URI + "/service/%s";
 
     @Override
-    protected void prepareDb(Vertx vertx, VertxTestContext testContext) {
+    protected Completable prepareDb(Vertx vertx) {
         long date = new Date().getTime();
-        this.connector.query("insert into service (url, name, created_at) " +
+        return this.connector.query("insert into service (url, name, created_at) " +
                         "values ('https://example.com', '" + DELETE_SERVICE_NAME + "', " + date + ");")
-                .doOnSuccess(result -> testContext.completeNow())
-                .subscribe();
+                .ignoreElement();
     }
 
     @Test
@@ -53,12 +49,8 @@ public class DeleteServiceRouteTests extends BaseMainVerticleIntegrationTest {
                         assertEquals(204, response.statusCode()))
                 )
                 // Verify in the DB
-                .flatMap(x -> this.connector.query("select * from service where name = '" + DELETE_SERVICE_NAME + "'").toSingle())
-                .doOnSuccess(rows -> testContext.verify(() -> {
-                    List<JsonObject> results = StreamSupport
-                            .stream(rows.spliterator(), false)
-                            .map(Row::toJson)
-                            .collect(Collectors.toList());
+                .flatMap(x -> findStoredServices(DELETE_SERVICE_NAME))
+                .doOnSuccess(results -> testContext.verify(() -> {
 
                     assertEquals(0, (long) results.size());
 
@@ -1,7 +1,9 @@
 package se.kry.codetest.integrationTests.serviceRoute;
 
+import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.Timeout;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
@@ -18,6 +20,7 @@ import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @ExtendWith(VertxExtension.class)
 public class GetAllServiceRouteTests extends BaseMainVerticleIntegrationTest {
@@ -25,12 +28,12 @@ public class GetAllServiceRouteTests extends BaseMainVerticleIntegrationTest {
     private final static String URI = BASE_URI + "/service";
 
     @Override
-    protected void prepareDb(Vertx vertx, VertxTestContext testContext) {
+    protected Completable prepareDb(Vertx vertx) {
         long date = new Date().getTime();
-        this.connector.query("insert into service (url, name, created_at) " +
+        return this.connector.query("insert into service (url, name, created_at) " +
                         "values ('https://example.com', 'example', " + date + "), " +
                         "('https://foo.com', 'bar', " + date + ");")
-                .doOnSuccess(x -> testContext.completeNow()).subscribe();
+                .ignoreElement();
     }
 
     @Test
@@ -51,4 +54,113 @@ public class GetAllServiceRouteTests extends BaseMainVerticleIntegrationTest {
                     testContext.completeNow();
                 })).subscribe();
     }
+
+    @Test
+    @DisplayName("GET /service with the ETag of the previous response and get 304 until a service changes")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_get_should_send_a_304_status_when_etag_matches(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+        JsonObject newService = new JsonObject()
+                .put("name", "foo")
+                .put("url", "https://example.org");
+
+        client.get(APP_PORT, BASE_HOST, URI)
+                .rxSend()
+                .map(response -> response.getHeader("etag"))
+                // Act
+                .flatMap(etag -> client.get(APP_PORT, BASE_HOST, URI)
+                        .putHeader("if-none-match", etag)
+                        .rxSend()
+                        // Assert
+                        .doOnSuccess(response -> testContext.verify(() -> {
+                            assertEquals(304, response.statusCode());
+                            assertEquals(etag, response.getHeader("etag"));
+                        }))
+                        .flatMap(response -> client.post(APP_PORT, BASE_HOST, URI).rxSendJsonObject(newService))
+                        .flatMap(response -> client.get(APP_PORT, BASE_HOST, URI)
+                                .putHeader("if-none-match", etag)
+                                .rxSend()))
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals(3, response.bodyAsJsonArray().size());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service accepting gzip and get a compressed response")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_get_should_compress_the_response(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, URI)
+                .putHeader("accept-encoding", "gzip")
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals("gzip", response.getHeader("content-encoding"));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service with a limit and get the services page by page, in name order")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_get_should_paginate_with_a_cursor(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+
+        // Act
+        client.get(APP_PORT, BASE_HOST, URI)
+                .addQueryParam("limit", "1")
+                .rxSend()
+                // Assert
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals(1, response.bodyAsJsonArray().size());
+                    assertEquals("bar", response.bodyAsJsonArray().getJsonObject(0).getString("name"));
+                    assertEquals("bar", response.getHeader("next-cursor"));
+                }))
+                .flatMap(response -> client.get(APP_PORT, BASE_HOST, URI)
+                        .addQueryParam("limit", "1")
+                        .addQueryParam("cursor", response.getHeader("next-cursor"))
+                        .rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals(1, response.bodyAsJsonArray().size());
+                    assertEquals("example", response.bodyAsJsonArray().getJsonObject(0).getString("name"));
+                    assertNull(response.getHeader("next-cursor"));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service with an invalid limit and get 400")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_get_should_send_a_400_status_when_limit_is_invalid(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, URI)
+                .addQueryParam("limit", "0")
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
 }
@@ -0,0 +1,58 @@
+package se.kry.codetest.integrationTests.serviceRoute;
+
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.http.HttpClientRequest;
+import io.vertx.reactivex.ext.web.client.WebClient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class GetServiceEventsRouteTests extends BaseMainVerticleIntegrationTest {
+    private static final String URI = BASE_URI + "/service/events";
+
+    @Test
+    @DisplayName("GET /service/events and receive an event when a service is created")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_events_as_get_should_stream_created_services(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        JsonObject newService = new JsonObject()
+                .put("name", "foo")
+                .put("url", "https://example.com");
+        StringBuilder received = new StringBuilder();
+
+        // Act
+        vertx.createHttpClient()
+                .rxRequest(HttpMethod.GET, APP_PORT, BASE_HOST, URI)
+                .flatMap(HttpClientRequest::rxSend)
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals("text/event-stream", response.getHeader("content-type"));
+
+                    // Assert
+                    response.handler(chunk -> testContext.verify(() -> {
+                        received.append(chunk.toString());
+                        if (received.toString().contains("event: created")) {
+                            assertTrue(received.toString().contains("\"name\":\"foo\""));
+                            testContext.completeNow();
+                        }
+                    }));
+                }))
+                .flatMap(response -> WebClient.create(vertx)
+                        .post(APP_PORT, BASE_HOST, BASE_URI + "/service")
+                        .rxSendJsonObject(newService))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+}
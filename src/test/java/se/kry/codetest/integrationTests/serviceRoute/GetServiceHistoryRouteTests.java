@@ -0,0 +1,159 @@
+package se.kry.codetest.integrationTests.serviceRoute;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.client.HttpResponse;
+import io.vertx.reactivex.ext.web.client.WebClient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+public class GetServiceHistoryRouteTests extends BaseMainVerticleIntegrationTest {
+    private static final String SERVICE_NAME = "foo";
+    private static final String URI = BASE_URI + "/service/%s/history";
+    private static final long NOW = new Date().getTime();
+
+    @Override
+    protected Completable prepareDb(Vertx vertx) {
+        return this.connector.query("insert into service (url, name, created_at) " +
+                        "values ('https://example.com', '" + SERVICE_NAME + "', " + NOW + ");")
+                .ignoreElement()
+                .andThen(this.connector.query("insert into service_history (service_name, checked_at, status, latency) values " +
+                                "('" + SERVICE_NAME + "', " + (NOW - 3000) + ", 'OK', 10), " +
+                                "('" + SERVICE_NAME + "', " + (NOW - 2000) + ", 'FAIL', 30), " +
+                                "('" + SERVICE_NAME + "', " + (NOW - 1000) + ", 'OK', 20);")
+                        .ignoreElement());
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/history and get 200 with the results in the range, most recent first")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_history_as_get_should_send_the_results_in_range(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, SERVICE_NAME))
+                .addQueryParam("from", String.valueOf(NOW - 2500))
+                .addQueryParam("to", String.valueOf(NOW))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    JsonArray body = response.bodyAsJsonArray();
+                    assertEquals(2, body.size());
+                    assertEquals(NOW - 1000, body.getJsonObject(0).getLong("checked_at"));
+                    assertEquals("FAIL", body.getJsonObject(1).getString("status"));
+                    testContext.completeNow();
+                })).subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/history with a bucket and get the results aggregated")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_history_as_get_should_aggregate_by_bucket(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, SERVICE_NAME))
+                .addQueryParam("from", String.valueOf(NOW - 10000))
+                .addQueryParam("to", String.valueOf(NOW))
+                .addQueryParam("bucket", String.valueOf(24 * 60 * 60 * 1000))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    long checks = 0;
+                    long ok = 0;
+                    for (Object bucket : response.bodyAsJsonArray()) {
+                        checks += ((JsonObject) bucket).getLong("checks");
+                        ok += ((JsonObject) bucket).getLong("ok");
+                    }
+                    assertEquals(3, checks);
+                    assertEquals(2, ok);
+                    testContext.completeNow();
+                })).subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/history and get 404 if the service name does not exist")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_history_as_get_should_return_404_when_name_is_not_found(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, "bar"))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(404, response.statusCode());
+                    testContext.completeNow();
+                })).subscribe();
+    }
+
+    @Test
+    @DisplayName("DELETE /service/:name then POST a service of the same name and get an empty history")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_history_as_get_should_not_send_the_history_of_a_deleted_service(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+        JsonObject newService = new JsonObject().put("name", SERVICE_NAME).put("url", "https://example.org");
+
+        // Act
+        client.delete(APP_PORT, BASE_HOST, BASE_URI + "/service/" + SERVICE_NAME)
+                .rxSend()
+                .flatMap(x -> client.post(APP_PORT, BASE_HOST, BASE_URI + "/service").rxSendJsonObject(newService))
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, String.format(URI, SERVICE_NAME))
+                        .addQueryParam("from", String.valueOf(NOW - 10000))
+                        .rxSend())
+                // Assert
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals(0, response.bodyAsJsonArray().size());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("PUT /service/:name with a new name and get the history under the new name")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_history_as_get_should_follow_a_renamed_service(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+        JsonObject renamed = new JsonObject().put("name", "renamed").put("url", "https://example.com");
+
+        // Act
+        client.put(APP_PORT, BASE_HOST, BASE_URI + "/service/" + SERVICE_NAME)
+                .rxSendJsonObject(renamed)
+                .doOnSuccess(response -> testContext.verify(() -> assertEquals(200, response.statusCode())))
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, String.format(URI, "renamed"))
+                        .addQueryParam("from", String.valueOf(NOW - 10000))
+                        .rxSend())
+                // Assert
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    assertEquals(3, response.bodyAsJsonArray().size());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+}
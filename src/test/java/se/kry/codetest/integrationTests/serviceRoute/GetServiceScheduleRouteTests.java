@@ -0,0 +1,158 @@
+package se.kry.codetest.integrationTests.serviceRoute;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.client.HttpResponse;
+import io.vertx.reactivex.ext.web.client.WebClient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class GetServiceScheduleRouteTests extends BaseMainVerticleIntegrationTest {
+    private static final String SERVICE_NAME = "foo";
+    private static final String RECENT_SERVICE_NAME = "recent";
+    private static final String OVERDUE_SERVICE_NAME = "overdue";
+    private static final String STABLE_SERVICE_NAME = "stable";
+    private static final String URI = BASE_URI + "/service/%s/schedule";
+    private static final long NOW = new Date().getTime();
+
+    @Override
+    protected Completable prepareDb(Vertx vertx) {
+        // The recent service was checked 5 s ago, the overdue one an hour and a half ago, the stable one 5 s ago after
+        // being OK for 3 hours
+        return this.connector.query("insert into service (url, name, created_at, poll_interval) " +
+                        "values ('https://example.com', '" + SERVICE_NAME + "', " + NOW + ", 30), " +
+                        "('https://example.com', '" + RECENT_SERVICE_NAME + "', " + NOW + ", 30), " +
+                        "('https://example.com', '" + OVERDUE_SERVICE_NAME + "', " + NOW + ", 3600);")
+                .ignoreElement()
+                .andThen(this.connector.query("insert into service (url, name, created_at, poll_interval, status) " +
+                        "values ('https://example.com', '" + STABLE_SERVICE_NAME + "', " + NOW + ", 30, 'OK');"))
+                .ignoreElement()
+                .andThen(this.connector.query("insert into service_history (service_name, checked_at, status, latency) " +
+                        "values ('" + RECENT_SERVICE_NAME + "', " + (NOW - 5000) + ", 'OK', 10), " +
+                        "('" + OVERDUE_SERVICE_NAME + "', " + (NOW - 5400 * 1000L) + ", 'OK', 10), " +
+                        "('" + STABLE_SERVICE_NAME + "', " + (NOW - 3 * 3600 * 1000L) + ", 'OK', 10), " +
+                        "('" + STABLE_SERVICE_NAME + "', " + (NOW - 5000) + ", 'OK', 10);"))
+                .ignoreElement();
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/schedule and get 200 with the next check of the service")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_schedule_as_get_should_send_the_next_check(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, SERVICE_NAME))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    JsonObject body = response.bodyAsJsonObject();
+                    assertEquals(SERVICE_NAME, body.getString("name"));
+                    assertEquals(30, body.getInteger("poll_interval"));
+                    // Not polled yet: the status is unknown, so the service keeps its own interval
+                    assertEquals(30 * 1000L, body.getLong("effective_interval"));
+                    long nextCheckAt = body.getLong("next_check_at");
+                    assertTrue(nextCheckAt > NOW && nextCheckAt <= System.currentTimeMillis() + 30 * 1000L);
+                    testContext.completeNow();
+                })).subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/schedule of a recently checked service and get its next check one interval after the last one")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_schedule_as_get_should_resume_from_the_last_check(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, RECENT_SERVICE_NAME))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    // The slot closest to the last check + 30 s
+                    long nextCheckAt = response.bodyAsJsonObject().getLong("next_check_at");
+                    assertTrue(nextCheckAt >= NOW - 5000 + 15 * 1000L && nextCheckAt <= NOW - 5000 + 45 * 1000L);
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/schedule of a long stable service and get its next check at its backed off interval")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_schedule_as_get_should_resume_the_stability_from_the_history(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, STABLE_SERVICE_NAME))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    JsonObject body = response.bodyAsJsonObject();
+                    // OK for 3 hours: backed off to the max interval, 10 min, from the last check
+                    assertEquals(10 * 60 * 1000L, body.getLong("effective_interval"));
+                    long nextCheckAt = body.getLong("next_check_at");
+                    assertTrue(nextCheckAt >= NOW - 5000 + 5 * 60 * 1000L && nextCheckAt <= NOW - 5000 + 15 * 60 * 1000L);
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("A service overdue on startup is polled first, and the time to the first poll is measured")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void scheduler_should_poll_the_overdue_services_first(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = Completable.timer(1, TimeUnit.SECONDS)
+                .andThen(WebClient.create(vertx).get(APP_PORT, BASE_HOST, "/metrics").rxSend());
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    // Polled at its own interval, it would wait for a slot within the next hour
+                    assertTrue(response.bodyAsString().contains("poller_startup_seconds_count 1.0"));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service/:name/schedule and get 404 if the service name does not exist")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_schedule_as_get_should_return_404_when_name_is_not_found(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> httpResponseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, String.format(URI, "bar"))
+                .rxSend();
+
+        // Assert
+        httpResponseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(404, response.statusCode());
+                    testContext.completeNow();
+                })).subscribe();
+    }
+}
@@ -0,0 +1,158 @@
+package se.kry.codetest.integrationTests.serviceRoute;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.client.HttpResponse;
+import io.vertx.reactivex.ext.web.client.WebClient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@ExtendWith(VertxExtension.class)
+public class PostBulkServiceRouteTests extends BaseMainVerticleIntegrationTest {
+
+    private final static String URI = BASE_URI + "/service/bulk";
+    private final static String EXISTING_SERVICE_NAME = "existing";
+
+    @Override
+    protected Completable prepareDb(Vertx vertx) {
+        long date = new Date().getTime();
+        return this.connector.query("insert into service (url, name, created_at) " +
+                        "values ('https://foo.com', '" + EXISTING_SERVICE_NAME + "', " + date + ");")
+                .ignoreElement();
+    }
+
+    @Test
+    @DisplayName("POST /service/bulk with a json array and get 200 with the outcome of each service")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_bulk_as_post_should_create_the_valid_services_of_a_json_array(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        final String created = UUID.randomUUID().toString();
+        final String duplicated = UUID.randomUUID().toString();
+        JsonArray body = new JsonArray()
+                .add(new JsonObject().put("name", created).put("url", "https://example.com/"))
+                .add(new JsonObject().put("name", EXISTING_SERVICE_NAME).put("url", "https://example.com/"))
+                .add(new JsonObject().put("name", UUID.randomUUID().toString()).put("url", "toto"))
+                .add(new JsonObject().put("name", duplicated).put("url", "https://example.com/a"))
+                .add(new JsonObject().put("name", duplicated).put("url", "https://example.com/b"))
+                .add("not a service");
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, URI)
+                .rxSendJson(body);
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    JsonObject outcome = response.bodyAsJsonObject();
+                    assertEquals(2, outcome.getInteger("created"));
+                    assertEquals(2, outcome.getInteger("conflicts"));
+                    assertEquals(2, outcome.getInteger("invalid"));
+
+                    JsonArray results = outcome.getJsonArray("results");
+                    assertEquals(6, results.size());
+                    assertEquals("created", results.getJsonObject(0).getString("status"));
+                    assertEquals(created, results.getJsonObject(0).getString("name"));
+                    assertNull(results.getJsonObject(0).getString("message"));
+                    assertEquals("conflict", results.getJsonObject(1).getString("status"));
+                    assertEquals("invalid", results.getJsonObject(2).getString("status"));
+                    assertEquals("The provided url is invalid", results.getJsonObject(2).getString("message"));
+                    assertEquals("created", results.getJsonObject(3).getString("status"));
+                    assertEquals("conflict", results.getJsonObject(4).getString("status"));
+                    assertEquals("invalid", results.getJsonObject(5).getString("status"));
+                    assertEquals(5, results.getJsonObject(5).getInteger("index"));
+                }))
+                // Verify the DB
+                .flatMap(x -> findStoredServices(duplicated))
+                .doOnSuccess(results -> testContext.verify(() -> {
+                    assertEquals(1, results.size());
+                    assertEquals("https://example.com/a", results.get(0).getString("url"));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("POST /service/bulk with ndjson and get 200 with the outcome of each line")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_bulk_as_post_should_create_the_valid_services_of_ndjson(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        final String created = UUID.randomUUID().toString();
+        String body = new JsonObject().put("name", created).put("url", "https://example.com/").put("poll_interval", 30).encode() + "\n"
+                + "\n"
+                + "{not json\r\n"
+                + new JsonObject().put("name", EXISTING_SERVICE_NAME).put("url", "https://example.com/").encode() + "\n";
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, URI)
+                .putHeader("content-type", "application/x-ndjson")
+                .rxSendBuffer(Buffer.buffer(body));
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(200, response.statusCode());
+                    JsonObject outcome = response.bodyAsJsonObject();
+                    assertEquals(1, outcome.getInteger("created"));
+                    assertEquals(1, outcome.getInteger("conflicts"));
+                    assertEquals(1, outcome.getInteger("invalid"));
+
+                    JsonArray results = outcome.getJsonArray("results");
+                    assertEquals("created", results.getJsonObject(0).getString("status"));
+                    assertEquals("invalid", results.getJsonObject(1).getString("status"));
+                    assertEquals(1, results.getJsonObject(1).getInteger("index"));
+                    assertEquals("conflict", results.getJsonObject(2).getString("status"));
+                }))
+                // Verify the DB
+                .flatMap(x -> findStoredServices(created))
+                .doOnSuccess(results -> testContext.verify(() -> {
+                    assertEquals(1, results.size());
+                    assertEquals(30, results.get(0).getInteger("poll_interval"));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("POST /service/bulk and get 400 when the body is not a json array")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_bulk_as_post_should_return_400_when_the_body_is_not_an_array(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        JsonObject body = new JsonObject().put("name", UUID.randomUUID().toString()).put("url", "https://example.com/");
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, URI)
+                .rxSendJsonObject(body);
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("Invalid payload format. Must be a json array or ndjson", response.bodyAsString());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+}
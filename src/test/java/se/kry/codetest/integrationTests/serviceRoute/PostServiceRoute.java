@@ -1,5 +1,6 @@
 package se.kry.codetest.integrationTests.serviceRoute;
 
+import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.Timeout;
@@ -9,8 +10,6 @@ import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
 import io.vertx.reactivex.ext.web.client.WebClient;
-import io.vertx.reactivex.sqlclient.Row;
-import io.vertx.reactivex.sqlclient.RowSet;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,12 +21,9 @@ import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
 import se.kry.codetest.model.ServiceStatus;
 
 import java.util.Date;
-import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -35,6 +31,15 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class PostServiceRoute extends BaseMainVerticleIntegrationTest {
 
     private final static String URI = BASE_URI + "/service";
+    private final static String EXISTING_SERVICE_NAME = "existing";
+
+    @Override
+    protected Completable prepareDb(Vertx vertx) {
+        long date = new Date().getTime();
+        return this.connector.query("insert into service (url, name, created_at) " +
+                        "values ('https://foo.com', '" + EXISTING_SERVICE_NAME + "', " + date + ");")
+                .ignoreElement();
+    }
 
     @Test
     @DisplayName("POST /service and get 201 and a new service is added")
@@ -58,12 +63,8 @@ public class PostServiceRoute extends BaseMainVerticleIntegrationTest {
                         assertEquals(201, response.statusCode()))
                 )
                 // Verify the DB
-                .flatMap(x -> this.connector.query("select * from service where name = '" + randomName + "';").toSingle())
-                .doOnSuccess(rows -> testContext.verify(() -> {
-                    List<JsonObject> results = StreamSupport
-                            .stream(rows.spliterator(), false)
-                            .map(Row::toJson)
-                            .collect(Collectors.toList());
+                .flatMap(x -> findStoredServices(randomName))
+                .doOnSuccess(results -> testContext.verify(() -> {
 
                     assertEquals(1, (long) results.size());
                     assertEquals(randomName, results.get(0).getString("name"));
@@ -77,22 +78,14 @@ public class PostServiceRoute extends BaseMainVerticleIntegrationTest {
     @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
     void route_service_as_post_should_return_400_if_the_service_name_already_exists_in_base(Vertx vertx, VertxTestContext testContext) {
         // Arrange
-        String randomName = UUID.randomUUID().toString();
-        long date = new Date().getTime();
         final ServiceStatus newService = new ServiceStatus();
         newService.setUrl("https://bar.com");
-        newService.setName(randomName);
-        Single<RowSet<Row>> prepareQuery =
-                this.connector.query("insert into service (url, name, created_at) values ('https://foo.com', '" + randomName + "', " + date + ")")
-                        .toSingle();
+        newService.setName(EXISTING_SERVICE_NAME);
 
         // Act
-        Single<HttpResponse<Buffer>> responseFuture = prepareQuery
-                .flatMap(rows ->
-                        WebClient.create(vertx)
-                                .post(APP_PORT, BASE_HOST, URI)
-                                .rxSendJsonObject(newService.toJson())
-                );
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, URI)
+                .rxSendJsonObject(newService.toJson());
 
         // Assert
         responseFuture
@@ -133,6 +126,59 @@ public class PostServiceRoute extends BaseMainVerticleIntegrationTest {
                 .subscribe();
     }
 
+    @Test
+    @DisplayName("POST /service and get 400 when the name contains a /")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_post_should_return_400_when_name_contains_a_slash(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        ServiceStatus body = new ServiceStatus();
+        body.setName("alice/" + UUID.randomUUID());
+        body.setUrl("https://example.com");
+        JsonObject bodyAsJson = body.toJson();
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, URI)
+                .rxSendJsonObject(bodyAsJson);
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("name must not contain /", response.bodyAsString());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @ParameterizedTest(name = "POST /service and get 400 with poll interval {0}")
+    @DisplayName("POST /service and get 400 when poll_interval is out of bounds")
+    @ValueSource(ints = {0, 4, 86401})
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_post_should_return_400_when_poll_interval_is_invalid(int pollInterval, Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        JsonObject body = new JsonObject()
+                .put("name", UUID.randomUUID().toString())
+                .put("url", "https://example.com/")
+                .put("poll_interval", pollInterval);
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, URI)
+                .rxSendJsonObject(body);
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("poll_interval must be between 5 and 86400 seconds", response.bodyAsString());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
     @ParameterizedTest(name = "POST /service and get 400 when {1} is missing")
     @DisplayName("POST /service and get 400 when mandatory field is missing")
     @MethodSource("incompleteRequestBody")
@@ -1,5 +1,6 @@
 package se.kry.codetest.integrationTests.serviceRoute;
 
+import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.Timeout;
@@ -9,7 +10,6 @@ import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
 import io.vertx.reactivex.ext.web.client.WebClient;
-import io.vertx.reactivex.sqlclient.Row;
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -24,7 +24,6 @@ import se.kry.codetest.model.ServiceStatusValueEnum;
 
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -40,16 +39,15 @@ public class PutServiceRouteTests extends BaseMainVerticleIntegrationTest {
             .put("status", "OK"));
 
     @Override
-    protected void prepareDb(Vertx vertx, VertxTestContext testContext) {
-        this.connector.query("insert into service (url, name, created_at, status) " +
+    protected Completable prepareDb(Vertx vertx) {
+        return this.connector.query("insert into service (url, name, created_at, status) " +
                         String.format(
                                 "values ('%s', '%s', %d, '%s');",
                                 defaultService.getUrl(), defaultService.getName(),
                                 new DateTime().getMillis(), defaultService.getStatus().name()
                         )
                 )
-                .doOnSuccess(result -> testContext.completeNow())
-                .subscribe();
+                .ignoreElement();
     }
 
     @Test
@@ -72,11 +70,10 @@ public class PutServiceRouteTests extends BaseMainVerticleIntegrationTest {
                         assertEquals(200, response.statusCode()))
                 )
                 // Verify in the DB
-                .flatMap(x -> this.connector.query("select * from service where name = '" + newName + "'").toSingle())
+                .flatMap(x -> findStoredServices(newName))
                 .doOnSuccess(rows -> testContext.verify(() -> {
-                    JsonObject results = StreamSupport
-                            .stream(rows.spliterator(), false)
-                            .map(Row::toJson)
+                    JsonObject results = rows
+                            .stream()
                             .findFirst()
                             .orElse(null);
 
@@ -107,11 +104,10 @@ public class PutServiceRouteTests extends BaseMainVerticleIntegrationTest {
                         assertEquals(200, response.statusCode()))
                 )
                 // Verify in the DB
-                .flatMap(x -> this.connector.query("select * from service where name = '" + newName + "'").toSingle())
+                .flatMap(x -> findStoredServices(newName))
                 .doOnSuccess(rows -> testContext.verify(() -> {
-                    JsonObject results = StreamSupport
-                            .stream(rows.spliterator(), false)
-                            .map(Row::toJson)
+                    JsonObject results = rows
+                            .stream()
                             .findFirst()
                             .orElse(null);
 
@@ -122,6 +118,55 @@ public class PutServiceRouteTests extends BaseMainVerticleIntegrationTest {
                 })).subscribe();
     }
 
+    @Test
+    @DisplayName("PUT /service/:name returns 400 if the service does not exist")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_put_should_return_400_when_name_is_not_found(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .put(APP_PORT, BASE_HOST, String.format(URI, "unknown"))
+                .rxSendJsonObject(defaultService.toJson());
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("Service with this name does not exist", response.bodyAsString());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("PUT /service/:name returns 400 if the new name is already used by another service")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_put_should_return_400_when_new_name_already_exists(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        JsonObject otherService = new JsonObject()
+                .put("name", "other")
+                .put("url", "https://example.org");
+        JsonObject renamed = defaultService.toJson().put("name", "other");
+
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .post(APP_PORT, BASE_HOST, BASE_URI + "/service")
+                .rxSendJsonObject(otherService)
+                .flatMap(created -> WebClient.create(vertx)
+                        .put(APP_PORT, BASE_HOST, String.format(URI, defaultService.getName()))
+                        .rxSendJsonObject(renamed));
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("Service with this name already exist", response.bodyAsString());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
     @Test
     @DisplayName("PUT /service/:name returns 400 if the payload is not JSON compliant")
     @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
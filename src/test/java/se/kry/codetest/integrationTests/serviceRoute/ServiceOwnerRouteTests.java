@@ -0,0 +1,161 @@
+package se.kry.codetest.integrationTests.serviceRoute;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.client.HttpResponse;
+import io.vertx.reactivex.ext.web.client.WebClient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.integrationTests.BaseMainVerticleIntegrationTest;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@ExtendWith(VertxExtension.class)
+public class ServiceOwnerRouteTests extends BaseMainVerticleIntegrationTest {
+
+    private final static String URI = BASE_URI + "/service";
+    /**
+     * Named before the owners existed, like the key of the service "api" of the owner "team"
+     */
+    private final static String LEGACY_SERVICE_NAME = "team/api";
+
+    @Override
+    protected Completable prepareDb(Vertx vertx) {
+        long date = new Date().getTime();
+        return this.connector.query("insert into service (url, name, created_at) " +
+                        "values ('https://example.com', 'example', " + date + "), " +
+                        "('https://legacy.example.com', '" + LEGACY_SERVICE_NAME + "', " + date + ");")
+                .ignoreElement();
+    }
+
+    @Test
+    @DisplayName("POST /service with an owner and get the service only with the same owner")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_should_only_serve_the_services_of_the_owner(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+        JsonObject aliceService = new JsonObject().put("name", "shared").put("url", "https://alice.example.com");
+        JsonObject bobService = new JsonObject().put("name", "shared").put("url", "https://bob.example.com");
+
+        // Act
+        client.post(APP_PORT, BASE_HOST, URI)
+                .putHeader("x-owner", "alice")
+                .rxSendJsonObject(aliceService)
+                .doOnSuccess(response -> testContext.verify(() -> assertEquals(201, response.statusCode())))
+                .flatMap(x -> client.post(APP_PORT, BASE_HOST, URI)
+                        .putHeader("cookie", "owner=bob")
+                        .rxSendJsonObject(bobService))
+                .doOnSuccess(response -> testContext.verify(() -> assertEquals(201, response.statusCode())))
+                // Assert
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, URI).putHeader("x-owner", "alice").rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    JsonArray body = response.bodyAsJsonArray();
+                    assertEquals(1, body.size());
+                    assertEquals("https://alice.example.com", body.getJsonObject(0).getString("url"));
+                }))
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, URI + "/shared/schedule").putHeader("x-owner", "bob").rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> assertEquals(200, response.statusCode())))
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, URI).rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    JsonArray body = response.bodyAsJsonArray();
+                    assertEquals(2, body.size());
+                    assertEquals("example", body.getJsonObject(0).getString("name"));
+                }))
+                .flatMap(x -> client.delete(APP_PORT, BASE_HOST, URI + "/example").putHeader("x-owner", "alice").rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(404, response.statusCode());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("POST /service of a service whose key is the name of a legacy service and get both services")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_should_keep_a_legacy_name_apart_from_an_owner_key(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+        JsonObject newService = new JsonObject().put("name", "api").put("url", "https://team.example.com");
+
+        // Act
+        client.post(APP_PORT, BASE_HOST, URI)
+                .putHeader("x-owner", "team")
+                .rxSendJsonObject(newService)
+                // Assert
+                .doOnSuccess(response -> testContext.verify(() -> assertEquals(201, response.statusCode())))
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, URI).rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    JsonArray body = response.bodyAsJsonArray();
+                    assertEquals(2, body.size());
+                    assertEquals(LEGACY_SERVICE_NAME, body.getJsonObject(1).getString("name"));
+                    assertEquals("https://legacy.example.com", body.getJsonObject(1).getString("url"));
+                }))
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, URI).putHeader("x-owner", "team").rxSend())
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    JsonArray body = response.bodyAsJsonArray();
+                    assertEquals(1, body.size());
+                    assertEquals("https://team.example.com", body.getJsonObject(0).getString("url"));
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service of two owners and get distinct ETags")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_as_get_should_send_an_etag_per_owner(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        WebClient client = WebClient.create(vertx);
+        JsonObject newService = new JsonObject().put("name", "foo").put("url", "https://example.org");
+
+        client.post(APP_PORT, BASE_HOST, URI)
+                .putHeader("x-owner", "alice")
+                .rxSendJsonObject(newService)
+                // Act
+                .flatMap(x -> client.get(APP_PORT, BASE_HOST, URI).putHeader("x-owner", "alice").rxSend())
+                .flatMap(alice -> client.get(APP_PORT, BASE_HOST, URI).rxSend()
+                        // Assert
+                        .doOnSuccess(response -> testContext.verify(() -> {
+                            assertNotEquals(alice.getHeader("etag"), response.getHeader("etag"));
+                            assertEquals("x-owner, cookie", response.getHeader("vary"));
+                        })))
+                .doOnSuccess(x -> testContext.completeNow())
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+
+    @Test
+    @DisplayName("GET /service with an invalid owner and get 400")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void route_service_should_return_400_when_the_owner_is_invalid(Vertx vertx, VertxTestContext testContext) {
+        // Act
+        Single<HttpResponse<Buffer>> responseFuture = WebClient.create(vertx)
+                .get(APP_PORT, BASE_HOST, URI)
+                .putHeader("x-owner", "alice/bob")
+                .rxSend();
+
+        // Assert
+        responseFuture
+                .doOnSuccess(response -> testContext.verify(() -> {
+                    assertEquals(400, response.statusCode());
+                    assertEquals("The owner token must be 1 to 64 letters, digits, - or _", response.bodyAsString());
+                    testContext.completeNow();
+                }))
+                .doOnError(testContext::failNow)
+                .subscribe();
+    }
+}
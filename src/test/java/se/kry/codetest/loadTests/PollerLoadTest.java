@@ -0,0 +1,196 @@
+package se.kry.codetest.loadTests;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.vertx.core.json.JsonArray;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import se.kry.codetest.BackgroundPoller;
+import se.kry.codetest.DBConnector;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.poller.PollerOptions;
+import se.kry.codetest.poller.StatusBatchWriter;
+import se.kry.codetest.repository.ServiceHistoryRepository;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+import se.kry.codetest.repository.ServiceStatusRepository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Polls a {@link SimulatedServiceFleet} in rounds, each round polling every service once, and reports the round
+ * completion time, the throughput and the share of services getting the status their behavior implies.
+ * <p>
+ * Excluded from the test task, run it with ./gradlew loadTest. Tuned with system properties:
+ * load.services, load.hosts, load.rounds, load.seed, load.maxInFlight, load.maxPerHost, load.idleTimeout,
+ * load.totalTimeout and load.minAccuracy. Many rounds turn it into a soak test.
+ */
+@Slf4j
+@Tag("load")
+@ExtendWith(VertxExtension.class)
+public class PollerLoadTest {
+    private static final int STUB_PORT = 8086;
+    private static final long STATUS_FLUSH_PERIOD = 1000;
+
+    private final int serviceCount = Integer.getInteger("load.services", 2000);
+    private final int rounds = Integer.getInteger("load.rounds", 3);
+    private final double minAccuracy = Double.parseDouble(System.getProperty("load.minAccuracy", "0.99"));
+
+    /**
+     * Counts the poll results on their way to the DB
+     */
+    private static class RecordingWriter extends StatusBatchWriter {
+        private final Map<String, ServiceStatusValueEnum> results = new ConcurrentHashMap<>();
+        private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger recorded = new AtomicInteger();
+
+        RecordingWriter(ServiceStatusRepository repository, ServiceHistoryRepository historyRepository,
+                        ServiceStatusRegistry registry) {
+            super(repository, historyRepository, registry);
+        }
+
+        @Override
+        public void record(ServiceStatus service, ServiceStatusValueEnum status, long latency) {
+            super.record(service, status, latency);
+            results.put(service.getName(), status);
+            latencies.add(latency);
+            recorded.incrementAndGet();
+        }
+    }
+
+    @Test
+    @DisplayName("The poller polls a simulated fleet in rounds and finds the expected statuses")
+    @Timeout(value = 60, timeUnit = TimeUnit.MINUTES)
+    void poller_should_poll_a_simulated_fleet(Vertx vertx, VertxTestContext testContext) {
+        // Arrange
+        SimulatedServiceFleet.Options fleetOptions = new SimulatedServiceFleet.Options();
+        fleetOptions.setEndpoints(serviceCount);
+        fleetOptions.setHosts(Integer.getInteger("load.hosts", fleetOptions.getHosts()));
+        fleetOptions.setSeed(Long.getLong("load.seed", fleetOptions.getSeed()));
+        SimulatedServiceFleet fleet = new SimulatedServiceFleet(vertx, fleetOptions);
+
+        PollerOptions pollerOptions = new PollerOptions();
+        pollerOptions.setMaxInFlight(Integer.getInteger("load.maxInFlight", 256));
+        pollerOptions.setMaxPerHost(Integer.getInteger("load.maxPerHost", pollerOptions.getMaxPerHost()));
+        pollerOptions.setIdleTimeout(Integer.getInteger("load.idleTimeout", 1000));
+        pollerOptions.setTotalTimeout(Integer.getInteger("load.totalTimeout", 3000));
+        pollerOptions.setMaxQueued(Math.max(serviceCount, pollerOptions.getMaxQueued()));
+        // Every service must be polled on every round, even the failing ones
+        pollerOptions.setBreakerThreshold(Integer.MAX_VALUE);
+
+        String dbName = "pollerLoadTest-" + UUID.randomUUID() + ".db";
+        new File(dbName).deleteOnExit();
+        new File(dbName + "-wal").deleteOnExit();
+        new File(dbName + "-shm").deleteOnExit();
+        DBConnector connector = new DBConnector(vertx, dbName);
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        ServiceStatusRepository repository = new ServiceStatusRepository(connector, registry);
+        RecordingWriter writer = new RecordingWriter(repository, new ServiceHistoryRepository(connector), registry);
+        BackgroundPoller poller = new BackgroundPoller(vertx, registry, writer, pollerOptions);
+
+        List<JsonArray> rows = new ArrayList<>(serviceCount);
+        for (int i = 0; i < serviceCount; i++) {
+            rows.add(new JsonArray(Arrays.asList(fleet.urlOf(i, STUB_PORT), nameOf(i), System.currentTimeMillis())));
+        }
+
+        fleet.start(STUB_PORT)
+                .andThen(connector.start())
+                .andThen(connector.batch("INSERT INTO service (url, name, created_at) VALUES (?, ?, ?)", rows))
+                .andThen(repository.load())
+                .doOnComplete(() -> {
+                    log.info("Fleet of {} services seeded, polling {} round(s) with {}", serviceCount, rounds, pollerOptions);
+                    poller.start();
+                    vertx.setPeriodic(STATUS_FLUSH_PERIOD, id -> writer.flush().onErrorComplete().subscribe());
+                })
+                // Act
+                .andThen(Flowable.range(1, rounds)
+                        .concatMapCompletable(round -> round(vertx, poller, writer, registry, round)
+                                .doOnComplete(() -> report(fleet, writer, pollerOptions))))
+                .andThen(Completable.defer(writer::flush))
+                // Assert
+                .doOnComplete(() -> testContext.verify(() -> {
+                    double accuracy = report(fleet, writer, pollerOptions);
+                    assertTrue(accuracy >= minAccuracy,
+                            String.format("Status accuracy %.4f below %.4f", accuracy, minAccuracy));
+                    poller.stop();
+                    testContext.completeNow();
+                }))
+                .subscribe(() -> {}, testContext::failNow);
+    }
+
+    /**
+     * Hand every service over to the poller, and complete once they all got a result
+     */
+    private Completable round(Vertx vertx, BackgroundPoller poller, RecordingWriter writer,
+                              ServiceStatusRegistry registry, int round) {
+        return Completable.create(emitter -> {
+            writer.recorded.set(0);
+            writer.latencies.clear();
+            long startedAt = System.currentTimeMillis();
+            registry.findAll().forEach(poller::poll);
+
+            vertx.setPeriodic(20, id -> {
+                if (writer.recorded.get() < serviceCount) return;
+                vertx.cancelTimer(id);
+                long duration = System.currentTimeMillis() - startedAt;
+                log.info("Round {}: {} services polled in {} ms, {} polls/s", round, serviceCount, duration,
+                        String.format("%.1f", serviceCount * 1000.0 / Math.max(1, duration)));
+                emitter.onComplete();
+            });
+        });
+    }
+
+    /**
+     * Log the latencies of the last round and the share of the services holding their expected status
+     *
+     * @return The share of the services with a predictable status that got it
+     */
+    private double report(SimulatedServiceFleet fleet, RecordingWriter writer, PollerOptions pollerOptions) {
+        long[] latencies = writer.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        if (latencies.length > 0) {
+            log.info("Poll latency: p50 {} ms, p90 {} ms, p99 {} ms, max {} ms",
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    latencies[latencies.length - 1]);
+        }
+
+        int predictable = 0;
+        int accurate = 0;
+        for (int i = 0; i < serviceCount; i++) {
+            ServiceStatusValueEnum expected = fleet.expectedStatusOf(i, pollerOptions.getTotalTimeout());
+            if (null == expected) continue;
+            predictable++;
+            if (expected == writer.results.get(nameOf(i))) accurate++;
+        }
+        double accuracy = predictable > 0 ? (double) accurate / predictable : 1;
+        log.info("Status accuracy: {}/{} ({}), {} requests received by the fleet", accurate, predictable,
+                String.format("%.4f", accuracy), fleet.requestCount());
+        return accuracy;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))];
+    }
+
+    private static String nameOf(int i) {
+        return String.format("service-%06d", i);
+    }
+}
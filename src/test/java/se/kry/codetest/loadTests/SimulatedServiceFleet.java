@@ -0,0 +1,205 @@
+package se.kry.codetest.loadTests;
+
+import io.reactivex.Completable;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.http.HttpServer;
+import io.vertx.reactivex.core.http.HttpServerRequest;
+import io.vertx.reactivex.core.http.HttpServerResponse;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process HTTP server simulating a fleet of services, one per path (/0, /1, ...).
+ * <p>
+ * Each endpoint gets a behavior, drawn once from a seeded random generator so that a fleet is the same across runs:
+ * <ul>
+ *     <li>HEALTHY: answers after a log-normal latency</li>
+ *     <li>FLAKY: like HEALTHY, but resets the connection for a share of the requests</li>
+ *     <li>ERROR: answers 500, which the poller counts as up: the service answered</li>
+ *     <li>RESET: closes the connection without answering</li>
+ *     <li>HANG: never answers</li>
+ *     <li>SLOW_DRIP: sends its body one byte at a time, for longer than the poll total timeout</li>
+ * </ul>
+ * The endpoints are spread over several loopback addresses (127.0.0.1, 127.0.0.2, ...), so that the poller sees
+ * several hosts as it would with real services.
+ */
+@Slf4j
+public class SimulatedServiceFleet {
+    public enum Behavior {HEALTHY, FLAKY, ERROR, RESET, HANG, SLOW_DRIP}
+
+    @Data
+    public static class Options {
+        private int endpoints = 2000;
+        private int hosts = 50;
+        private long seed = 42;
+        /**
+         * Median and spread (sigma of the underlying normal law) of the latency of the answering endpoints
+         */
+        private double medianLatency = 50;
+        private double latencySigma = 0.8;
+        /**
+         * Share of the requests of the FLAKY endpoints failing
+         */
+        private double flakyErrorRate = 0.2;
+        /**
+         * Share of the endpoints of each behavior, the rest being HEALTHY
+         */
+        private double flakyShare = 0.05;
+        private double errorShare = 0.05;
+        private double resetShare = 0.02;
+        private double hangShare = 0.01;
+        private double slowDripShare = 0.01;
+        /**
+         * Duration of the body of the SLOW_DRIP endpoints, in milliseconds
+         */
+        private long slowDripDuration = 10_000;
+    }
+
+    @Data
+    private static class Endpoint {
+        private final Behavior behavior;
+        private final double medianLatency;
+    }
+
+    private final Vertx vertx;
+    private final Options options;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final Random random;
+    private final AtomicLong requests = new AtomicLong();
+    private HttpServer server;
+
+    public SimulatedServiceFleet(Vertx vertx, Options options) {
+        this.vertx = vertx;
+        this.options = options;
+        this.random = new Random(options.getSeed());
+
+        for (int i = 0; i < options.getEndpoints(); i++) {
+            double draw = random.nextDouble();
+            Behavior behavior;
+            if ((draw -= options.getFlakyShare()) < 0) behavior = Behavior.FLAKY;
+            else if ((draw -= options.getErrorShare()) < 0) behavior = Behavior.ERROR;
+            else if ((draw -= options.getResetShare()) < 0) behavior = Behavior.RESET;
+            else if ((draw -= options.getHangShare()) < 0) behavior = Behavior.HANG;
+            else if ((draw -= options.getSlowDripShare()) < 0) behavior = Behavior.SLOW_DRIP;
+            else behavior = Behavior.HEALTHY;
+            // Each endpoint has its own typical latency, around the fleet's median
+            endpoints.add(new Endpoint(behavior, options.getMedianLatency() * Math.exp(random.nextGaussian() * 0.5)));
+        }
+    }
+
+    public Completable start(int port) {
+        return vertx.createHttpServer(new HttpServerOptions().setHost("0.0.0.0"))
+                .requestHandler(this::handle)
+                .rxListen(port)
+                .doOnSuccess(listening -> {
+                    this.server = listening;
+                    log.info("Simulated fleet of {} endpoints listening on port {}", endpoints.size(), port);
+                })
+                .ignoreElement();
+    }
+
+    public Completable stop() {
+        return null != server ? server.rxClose() : Completable.complete();
+    }
+
+    public String urlOf(int index, int port) {
+        return String.format("http://127.0.0.%d:%d/%d", 1 + index % options.getHosts(), port, index);
+    }
+
+    public Behavior behaviorOf(int index) {
+        return endpoints.get(index).getBehavior();
+    }
+
+    /**
+     * @param index        The index of an endpoint
+     * @param totalTimeout The total timeout of the polls, in milliseconds
+     * @return The status the poller should find, null if it may vary from one poll to the other
+     */
+    public ServiceStatusValueEnum expectedStatusOf(int index, long totalTimeout) {
+        switch (behaviorOf(index)) {
+            case HEALTHY:
+            case ERROR:
+                return ServiceStatusValueEnum.OK;
+            case RESET:
+            case HANG:
+                return ServiceStatusValueEnum.FAIL;
+            case SLOW_DRIP:
+                return options.getSlowDripDuration() > totalTimeout ? ServiceStatusValueEnum.FAIL : ServiceStatusValueEnum.OK;
+            default:
+                return null;
+        }
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    private void handle(HttpServerRequest request) {
+        requests.incrementAndGet();
+        int index;
+        try {
+            index = Integer.parseInt(request.path().substring(1));
+        } catch (NumberFormatException ex) {
+            request.response().setStatusCode(404).end();
+            return;
+        }
+        if (index < 0 || index >= endpoints.size()) {
+            request.response().setStatusCode(404).end();
+            return;
+        }
+
+        Endpoint endpoint = endpoints.get(index);
+        HttpServerResponse response = request.response();
+        switch (endpoint.getBehavior()) {
+            case RESET:
+                request.connection().close();
+                return;
+            case HANG:
+                return;
+            case SLOW_DRIP:
+                response.setChunked(true).setStatusCode(200);
+                drip(response, System.currentTimeMillis() + options.getSlowDripDuration());
+                return;
+            default:
+                break;
+        }
+
+        long latency = Math.max(1, Math.round(endpoint.getMedianLatency()
+                * Math.exp(nextGaussian() * options.getLatencySigma())));
+        vertx.setTimer(latency, id -> {
+            if (endpoint.getBehavior() == Behavior.FLAKY && nextDouble() < options.getFlakyErrorRate()) {
+                request.connection().close();
+            } else if (endpoint.getBehavior() == Behavior.ERROR) {
+                response.setStatusCode(500).end("Internal Server Error");
+            } else {
+                response.setStatusCode(200).end("OK");
+            }
+        });
+    }
+
+    private void drip(HttpServerResponse response, long until) {
+        if (response.closed()) return;
+        if (System.currentTimeMillis() >= until) {
+            response.end();
+            return;
+        }
+        response.write(".");
+        vertx.setTimer(200, id -> drip(response, until));
+    }
+
+    // The requests are handled on several event loops
+    private synchronized double nextGaussian() {
+        return random.nextGaussian();
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+}
@@ -0,0 +1,66 @@
+package se.kry.codetest.unitTests.cluster;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.cluster.ConsistentHashRing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConsistentHashRingTests {
+    private static final int KEY_COUNT = 3000;
+
+    @Test
+    @DisplayName("The keys are spread evenly between the nodes")
+    void ring_should_spread_keys_evenly() {
+        // Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+        // Act
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            counts.merge(ring.ownerOf("service-" + i), 1, Integer::sum);
+        }
+
+        // Assert
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue(count > KEY_COUNT / 5 && count < KEY_COUNT / 2,
+                "Unbalanced ring: " + counts));
+    }
+
+    @Test
+    @DisplayName("When a node joins, only the keys it takes over change owner")
+    void ring_should_only_move_keys_to_the_new_node() {
+        // Arrange
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+        // Act
+        int moved = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String key = "service-" + i;
+            if (!before.ownerOf(key).equals(after.ownerOf(key))) {
+                assertEquals("d", after.ownerOf(key));
+                moved++;
+            }
+        }
+
+        // Assert
+        assertTrue(moved > KEY_COUNT / 8 && moved < KEY_COUNT / 2, "Moved keys: " + moved);
+    }
+
+    @Test
+    @DisplayName("An empty ring has no owner")
+    void empty_ring_should_have_no_owner() {
+        // Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+        // Act & Assert
+        assertNull(ring.ownerOf("foo"));
+    }
+}
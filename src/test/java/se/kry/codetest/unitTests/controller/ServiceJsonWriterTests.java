@@ -0,0 +1,77 @@
+package se.kry.codetest.unitTests.controller;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.buffer.Buffer;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import se.kry.codetest.controller.ServiceJsonWriter;
+import se.kry.codetest.model.ServiceHistoryEntry;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ServiceJsonWriterTests {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"foo", "", "quote \" and backslash \\", "tab\tnew line\ncarriage\rbell\u0007escape\u001b",
+            "slash / and del \u007f", "\u00e9 \u00fc \u00df", "\u20ac \u65e5\u672c", "emoji \uD83D\uDE00", "unpaired \uD83D surrogate"})
+    @DisplayName("A service is written as its encoded JsonObject")
+    void writer_should_write_a_service_as_its_json_object(String name) {
+        // Arrange
+        ServiceStatus service = new ServiceStatus();
+        service.setName(name);
+        service.setUrl("https://example.com/" + name);
+        service.setCreatedAt(new DateTime(1_600_000_000_123L));
+        service.setStatus(ServiceStatusValueEnum.FAIL);
+        service.setVersion(42);
+        service.setIdleTimeout(1500);
+
+        // Act
+        Buffer output = new ServiceJsonWriter(Buffer.buffer()).service(service).buffer();
+
+        // Assert
+        assertEquals(service.toJson().toBuffer().toString("UTF-8"), output.toString("UTF-8"));
+    }
+
+    @Test
+    @DisplayName("The unset fields of a service are written as nulls")
+    void writer_should_write_nulls() {
+        // Arrange
+        ServiceStatus service = new ServiceStatus();
+
+        // Act
+        Buffer output = new ServiceJsonWriter(Buffer.buffer()).service(service).buffer();
+
+        // Assert
+        assertEquals(service.toJson().encode(), output.toString());
+    }
+
+    @Test
+    @DisplayName("An array of history entries is written as its encoded JsonArray")
+    void writer_should_write_an_array_of_history_entries() {
+        // Arrange
+        ServiceHistoryEntry first = new ServiceHistoryEntry();
+        first.setServiceName("foo");
+        first.setCheckedAt(new DateTime(1_600_000_000_000L));
+        first.setStatus(ServiceStatusValueEnum.OK);
+        first.setLatency(-12L);
+        ServiceHistoryEntry second = new ServiceHistoryEntry();
+        second.setServiceName("bar");
+        second.setStatus(ServiceStatusValueEnum.FAIL);
+
+        // Act
+        ServiceJsonWriter writer = new ServiceJsonWriter(Buffer.buffer()).beginArray();
+        writer.historyEntry(first).historyEntry(second).beginArray().endArray();
+        Buffer output = writer.value(Long.MIN_VALUE).value(0).endArray().buffer();
+
+        // Assert
+        JsonArray expected = new JsonArray(Arrays.asList(first.toJson(), second.toJson(), new JsonArray(), Long.MIN_VALUE, 0));
+        assertEquals(expected.encode(), output.toString());
+    }
+}
@@ -0,0 +1,101 @@
+package se.kry.codetest.unitTests.poller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.poller.AdaptiveInterval;
+import se.kry.codetest.poller.PollerOptions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdaptiveIntervalTests {
+    private static final long MINUTE = 60 * 1000;
+    private static final long NOW = 1_600_000_000_000L;
+
+    private static ServiceStatus service(ServiceStatusValueEnum status) {
+        ServiceStatus service = new ServiceStatus();
+        service.setName("foo");
+        service.setPollInterval(60);
+        service.setStatus(status);
+        return service;
+    }
+
+    private static AdaptiveInterval intervals() {
+        PollerOptions options = new PollerOptions();
+        options.setMinInterval(15);
+        options.setMaxInterval(10 * 60);
+        return new AdaptiveInterval(options);
+    }
+
+    @Test
+    @DisplayName("A failing service is polled at a quarter of its interval, whatever its stable time")
+    void interval_should_speed_up_for_failing_services() {
+        // Act
+        long interval = intervals().intervalOf(service(ServiceStatusValueEnum.FAIL), NOW - 24 * 60 * MINUTE, NOW);
+
+        // Assert
+        assertEquals(15 * 1000, interval);
+    }
+
+    @Test
+    @DisplayName("A service which just recovered is polled fast, then at its own interval")
+    void interval_should_return_to_the_base_rate_after_a_change() {
+        // Arrange
+        AdaptiveInterval intervals = intervals();
+        ServiceStatus service = service(ServiceStatusValueEnum.OK);
+
+        // Act
+        long justChanged = intervals.intervalOf(service, NOW - 10 * 1000, NOW);
+        long confirmed = intervals.intervalOf(service, NOW - 2 * MINUTE, NOW);
+
+        // Assert
+        assertEquals(15 * 1000, justChanged);
+        assertEquals(MINUTE, confirmed);
+    }
+
+    @Test
+    @DisplayName("A service whose last change is unknown is polled at its own interval, unless failing")
+    void interval_should_keep_the_base_rate_when_the_last_change_is_unknown() {
+        // Arrange
+        AdaptiveInterval intervals = intervals();
+
+        // Act
+        long ok = intervals.intervalOf(service(ServiceStatusValueEnum.OK), AdaptiveInterval.UNKNOWN_SINCE, NOW);
+        long failing = intervals.intervalOf(service(ServiceStatusValueEnum.FAIL), AdaptiveInterval.UNKNOWN_SINCE, NOW);
+
+        // Assert
+        assertEquals(MINUTE, ok);
+        assertEquals(15 * 1000, failing);
+    }
+
+    @Test
+    @DisplayName("A long stable service backs off, doubling its interval up to the max one")
+    void interval_should_back_off_for_stable_services() {
+        // Arrange
+        AdaptiveInterval intervals = intervals();
+        ServiceStatus service = service(ServiceStatusValueEnum.OK);
+
+        // Act
+        long tenRounds = intervals.intervalOf(service, NOW - 10 * MINUTE, NOW);
+        long fortyRounds = intervals.intervalOf(service, NOW - 40 * MINUTE, NOW);
+        long aMonth = intervals.intervalOf(service, NOW - 30 * 24 * 60 * MINUTE, NOW);
+
+        // Assert
+        assertEquals(MINUTE, tenRounds);
+        assertEquals(4 * MINUTE, fortyRounds);
+        assertEquals(10 * MINUTE, aMonth);
+    }
+
+    @Test
+    @DisplayName("The services with an unknown status, or all of them when disabled, are polled at their own interval")
+    void interval_should_keep_the_base_rate() {
+        // Act
+        long unknown = intervals().intervalOf(service(ServiceStatusValueEnum.UNKNOWN), NOW, NOW);
+        long fixed = AdaptiveInterval.fixed().intervalOf(service(ServiceStatusValueEnum.FAIL), NOW, NOW);
+
+        // Assert
+        assertEquals(MINUTE, unknown);
+        assertEquals(MINUTE, fixed);
+    }
+}
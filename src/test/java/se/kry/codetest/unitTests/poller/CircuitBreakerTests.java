@@ -0,0 +1,64 @@
+package se.kry.codetest.unitTests.poller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.poller.CircuitBreaker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTests {
+
+    @Test
+    @DisplayName("The circuit opens after the threshold of consecutive failures")
+    void circuit_should_open_after_consecutive_failures() {
+        // Arrange
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 4000);
+
+        // Act
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        boolean allowedBeforeThreshold = breaker.allowRequest(0);
+        breaker.onFailure(0);
+
+        // Assert
+        assertTrue(allowedBeforeThreshold);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(999));
+    }
+
+    @Test
+    @DisplayName("A single probe is allowed after the cooldown, and a failed probe doubles the cooldown")
+    void circuit_should_probe_after_cooldown_and_back_off() {
+        // Arrange
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 4000);
+        breaker.onFailure(0);
+
+        // Act & Assert
+        assertTrue(breaker.allowRequest(1000));
+        assertFalse(breaker.allowRequest(1001));
+        breaker.onFailure(1100);
+        assertFalse(breaker.allowRequest(2100));
+        assertTrue(breaker.allowRequest(3100));
+    }
+
+    @Test
+    @DisplayName("A successful probe closes the circuit")
+    void circuit_should_close_after_successful_probe() {
+        // Arrange
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 4000);
+        breaker.onFailure(0);
+
+        // Act
+        breaker.allowRequest(1000);
+        breaker.onSuccess();
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(1001));
+    }
+}
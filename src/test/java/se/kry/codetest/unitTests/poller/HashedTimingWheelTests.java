@@ -0,0 +1,68 @@
+package se.kry.codetest.unitTests.poller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.poller.HashedTimingWheel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HashedTimingWheelTests {
+
+    @Test
+    @DisplayName("A task expires on the tick its delay is rounded up to")
+    void task_should_expire_on_its_deadline_tick() {
+        // Arrange
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8);
+        wheel.schedule("foo", 250);
+
+        // Act
+        List<String> expired = new ArrayList<>();
+        for (int tick = 1; tick <= 3; tick++) {
+            expired.addAll(wheel.tick());
+            if (tick < 3) assertTrue(expired.isEmpty());
+        }
+
+        // Assert
+        assertEquals(Collections.singletonList("foo"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("A task further away than a revolution only expires on its deadline")
+    void task_should_survive_full_revolutions() {
+        // Arrange
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 4);
+        wheel.schedule("foo", 10 * 10);
+
+        // Act
+        int expiredOnTick = -1;
+        for (int tick = 1; tick <= 20 && expiredOnTick < 0; tick++) {
+            if (!wheel.tick().isEmpty()) expiredOnTick = tick;
+        }
+
+        // Assert
+        assertEquals(10, expiredOnTick);
+    }
+
+    @Test
+    @DisplayName("A cancelled task never expires")
+    void cancelled_task_should_not_expire() {
+        // Arrange
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 4);
+        HashedTimingWheel.Timeout<String> foo = wheel.schedule("foo", 10);
+        wheel.schedule("bar", 10);
+
+        // Act
+        wheel.cancel(foo);
+        wheel.cancel(foo);
+
+        // Assert
+        assertEquals(Collections.singletonList("bar"), wheel.tick());
+        assertEquals(0, wheel.size());
+    }
+}
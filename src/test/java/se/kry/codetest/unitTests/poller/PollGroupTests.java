@@ -0,0 +1,80 @@
+package se.kry.codetest.unitTests.poller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.poller.PollGroup;
+import se.kry.codetest.poller.PollTarget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PollGroupTests {
+    private static final long MAX_AGE = 30_000;
+
+    private static PollGroup group() {
+        PollTarget target = PollTarget.parse("https://example.com/health");
+        return new PollGroup(target.getEndpoint(), target);
+    }
+
+    @Test
+    @DisplayName("The members are counted as they join and leave")
+    void group_should_count_its_members() {
+        // Arrange
+        PollGroup group = group();
+
+        // Act
+        group.join("foo");
+        group.join("bar");
+        group.join("foo");
+        int afterFirstLeave = group.leave("foo");
+        int afterLastLeave = group.leave("bar");
+
+        // Assert
+        assertEquals(1, afterFirstLeave);
+        assertEquals(0, afterLastLeave);
+    }
+
+    @Test
+    @DisplayName("A member does not poll while another one is polling, nor right after")
+    void group_should_share_a_running_or_recent_poll() {
+        // Arrange
+        PollGroup group = group();
+        group.join("foo");
+        group.join("bar");
+
+        // Act
+        boolean fooStarted = group.tryStart("foo", 0, MAX_AGE);
+        boolean barWhileRunning = group.tryStart("bar", 10, MAX_AGE);
+        group.finish(100);
+        boolean barRightAfter = group.tryStart("bar", 100 + MAX_AGE - 1, MAX_AGE);
+        boolean fooRightAfter = group.tryStart("foo", 200, MAX_AGE);
+        group.finish(300);
+        boolean barOnceStale = group.tryStart("bar", 300 + MAX_AGE, MAX_AGE);
+
+        // Assert
+        assertTrue(fooStarted);
+        assertFalse(barWhileRunning);
+        assertFalse(barRightAfter);
+        assertTrue(fooRightAfter);
+        assertTrue(barOnceStale);
+    }
+
+    @Test
+    @DisplayName("Once the member which last polled leaves, the next due member polls")
+    void group_should_let_another_member_poll_when_the_last_poller_leaves() {
+        // Arrange
+        PollGroup group = group();
+        group.join("foo");
+        group.join("bar");
+        group.tryStart("foo", 0, MAX_AGE);
+        group.finish(100);
+
+        // Act
+        group.leave("foo");
+        boolean barStarted = group.tryStart("bar", 200, MAX_AGE);
+
+        // Assert
+        assertTrue(barStarted);
+    }
+}
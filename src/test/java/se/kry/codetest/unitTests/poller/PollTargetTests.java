@@ -0,0 +1,65 @@
+package se.kry.codetest.unitTests.poller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import se.kry.codetest.poller.PollTarget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PollTargetTests {
+
+    @Test
+    @DisplayName("An https url with no port is parsed with the default port and a root path")
+    void target_should_default_the_port_and_path() {
+        // Act
+        PollTarget target = PollTarget.parse("https://example.com");
+
+        // Assert
+        assertTrue(target.isSsl());
+        assertEquals("example.com", target.getHost());
+        assertEquals(443, target.getPort());
+        assertEquals("/", target.getRequestUri());
+        assertEquals("https://example.com", target.getUrl());
+    }
+
+    @Test
+    @DisplayName("The port, path and query of an http url are kept as written")
+    void target_should_keep_the_port_path_and_query() {
+        // Act
+        PollTarget target = PollTarget.parse("http://localhost:8080/health/check%20now?verbose=true&x=a%26b");
+
+        // Assert
+        assertFalse(target.isSsl());
+        assertEquals("localhost", target.getHost());
+        assertEquals(8080, target.getPort());
+        assertEquals("/health/check%20now?verbose=true&x=a%26b", target.getRequestUri());
+        assertEquals(8080, target.getRequestOptions().getPort());
+        assertEquals("localhost", target.getRequestOptions().getHost());
+        assertEquals(target.getRequestUri(), target.getRequestOptions().getURI());
+    }
+
+    @Test
+    @DisplayName("The urls of a same endpoint are normalized to the same one")
+    void target_should_normalize_the_endpoint() {
+        // Act
+        PollTarget target = PollTarget.parse("HTTPS://Example.COM/Health?Full=1#top");
+        PollTarget same = PollTarget.parse("https://example.com:443/Health?Full=1");
+
+        // Assert
+        assertEquals("https://example.com:443/Health?Full=1", target.getEndpoint());
+        assertEquals(target.getEndpoint(), same.getEndpoint());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "not a url", "ftp://example.com", "example.com/path", "http:///path"})
+    @DisplayName("A url that can not be polled is rejected")
+    void target_should_reject_invalid_urls(String url) {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> PollTarget.parse(url));
+    }
+}
@@ -0,0 +1,69 @@
+package se.kry.codetest.unitTests.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.repository.ServiceStatusRegistry;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServiceStatusRegistryTests {
+
+    private static ServiceStatus service(String name, long version, ServiceStatusValueEnum status) {
+        ServiceStatus service = new ServiceStatus();
+        service.setName(name);
+        service.setUrl("https://" + name + ".com");
+        service.setVersion(version);
+        service.setStatus(status);
+        return service;
+    }
+
+    @Test
+    @DisplayName("A sync older than the registry applies the remote changes and keeps the local ones")
+    void sync_should_reconcile_each_service() {
+        // Arrange
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(Arrays.asList(
+                service("foo", 0, ServiceStatusValueEnum.UNKNOWN),
+                service("bar", 0, ServiceStatusValueEnum.UNKNOWN),
+                service("qux", 0, ServiceStatusValueEnum.UNKNOWN)));
+        long since = registry.getRevision();
+        // Written locally while the read runs
+        registry.setStatus("foo", ServiceStatusValueEnum.OK);
+        registry.put(service("local", 0, ServiceStatusValueEnum.UNKNOWN));
+        registry.put(service("qux", 2, ServiceStatusValueEnum.UNKNOWN));
+
+        // Act
+        registry.sync(Arrays.asList(
+                service("foo", 0, ServiceStatusValueEnum.UNKNOWN),
+                service("qux", 1, ServiceStatusValueEnum.UNKNOWN),
+                service("remote", 0, ServiceStatusValueEnum.FAIL)), since);
+
+        // Assert
+        assertEquals(ServiceStatusValueEnum.OK, registry.findByKey("foo").orElseThrow().getStatus());
+        assertTrue(registry.findByKey("local").isPresent());
+        assertEquals(2, registry.findByKey("qux").orElseThrow().getVersion());
+        assertEquals(ServiceStatusValueEnum.FAIL, registry.findByKey("remote").orElseThrow().getStatus());
+        assertFalse(registry.findByKey("bar").isPresent());
+    }
+
+    @Test
+    @DisplayName("A later sync applies the remote changes of the services changed locally before it")
+    void sync_should_apply_the_changes_made_after_the_local_ones() {
+        // Arrange
+        ServiceStatusRegistry registry = new ServiceStatusRegistry();
+        registry.load(Arrays.asList(service("foo", 0, ServiceStatusValueEnum.UNKNOWN)));
+        registry.setStatus("foo", ServiceStatusValueEnum.OK);
+
+        // Act
+        registry.sync(Arrays.asList(service("foo", 1, ServiceStatusValueEnum.UNKNOWN)), registry.getRevision());
+
+        // Assert
+        assertEquals(1, registry.findByKey("foo").orElseThrow().getVersion());
+    }
+}
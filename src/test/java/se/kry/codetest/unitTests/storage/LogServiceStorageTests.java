@@ -0,0 +1,227 @@
+package se.kry.codetest.unitTests.storage;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.reactivex.core.Vertx;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import se.kry.codetest.model.ProbeMethodEnum;
+import se.kry.codetest.model.ServiceStatus;
+import se.kry.codetest.model.ServiceStatusValueEnum;
+import se.kry.codetest.storage.LogServiceStorage;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class LogServiceStorageTests {
+    private static final int COMPACT_SIZE = 64 * 1024;
+
+    private static ServiceStatus service(String name) {
+        ServiceStatus service = new ServiceStatus();
+        service.setName(name);
+        service.setUrl("https://" + name + ".com");
+        service.setCreatedAt(new DateTime());
+        service.setStatus(ServiceStatusValueEnum.UNKNOWN);
+        service.setIdleTimeout(500);
+        return service;
+    }
+
+    private static Map<String, ServiceStatus> byName(List<ServiceStatus> services) {
+        return services.stream().collect(Collectors.toMap(ServiceStatus::getName, Function.identity()));
+    }
+
+    @Test
+    @DisplayName("The changes are replayed when the storage is reopened")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void storage_should_replay_the_changes_on_reopen(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Arrange
+        ServiceStatus renamed = service("baz");
+        renamed.setPollInterval(30);
+        renamed.setProbeMethod(ProbeMethodEnum.HEAD);
+
+        // Act
+        LogServiceStorage.open(vertx, dir, COMPACT_SIZE)
+                .flatMapCompletable(storage -> storage.insert(service("foo"))
+                        .andThen(storage.insert(service("bar")))
+                        .andThen(storage.insert(service("qux")))
+                        .andThen(storage.setStatus(ServiceStatus.DEFAULT_OWNER, "foo", ServiceStatusValueEnum.OK).ignoreElement())
+                        .andThen(storage.update(ServiceStatus.DEFAULT_OWNER, "bar", renamed).ignoreElement())
+                        .andThen(storage.delete(ServiceStatus.DEFAULT_OWNER, "qux").ignoreElement())
+                        .andThen(storage.close()))
+                .andThen(LogServiceStorage.open(vertx, dir, COMPACT_SIZE))
+                // Assert
+                .flatMapCompletable(storage -> storage.loadAll()
+                        .doOnSuccess(services -> testContext.verify(() -> {
+                            Map<String, ServiceStatus> stored = byName(services);
+                            assertFalse(storage.isFresh());
+                            assertEquals(2, stored.size());
+                            assertEquals(ServiceStatusValueEnum.OK, stored.get("foo").getStatus());
+                            assertEquals(500, stored.get("foo").getIdleTimeout());
+                            assertEquals(30, stored.get("baz").getPollInterval());
+                            assertEquals(1, stored.get("baz").getVersion());
+                            assertEquals(ProbeMethodEnum.HEAD, stored.get("baz").getProbeMethod());
+                            assertNull(stored.get("foo").getProbeMethod());
+                            assertEquals(ServiceStatusValueEnum.UNKNOWN, stored.get("baz").getStatus());
+                        }))
+                        .ignoreElement()
+                        .andThen(storage.close()))
+                .subscribe(testContext::completeNow, testContext::failNow);
+    }
+
+    @Test
+    @DisplayName("A legacy service named like the key of another owner's service is kept apart from it")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void storage_should_not_mix_a_legacy_name_with_an_owner_key(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Arrange
+        ServiceStatus owned = service("api");
+        owned.setOwner("team");
+
+        // Act
+        LogServiceStorage.open(vertx, dir, COMPACT_SIZE)
+                .flatMapCompletable(storage -> storage.insert(service("team/api"))
+                        .andThen(storage.insert(owned))
+                        .andThen(storage.setStatus(ServiceStatus.DEFAULT_OWNER, "team/api", ServiceStatusValueEnum.OK).ignoreElement())
+                        .andThen(storage.setStatus("team", "api", ServiceStatusValueEnum.FAIL).ignoreElement())
+                        .andThen(storage.close()))
+                .andThen(LogServiceStorage.open(vertx, dir, COMPACT_SIZE))
+                // Assert
+                .flatMapCompletable(storage -> storage.loadAll()
+                        .doOnSuccess(services -> testContext.verify(() -> {
+                            Map<String, ServiceStatus> stored = byName(services);
+                            assertEquals(2, stored.size());
+                            assertEquals(ServiceStatus.DEFAULT_OWNER, stored.get("team/api").getOwner());
+                            assertEquals(ServiceStatusValueEnum.OK, stored.get("team/api").getStatus());
+                            assertEquals("team", stored.get("api").getOwner());
+                            assertEquals(ServiceStatusValueEnum.FAIL, stored.get("api").getStatus());
+                        }))
+                        .ignoreElement()
+                        .andThen(storage.close()))
+                .subscribe(testContext::completeNow, testContext::failNow);
+    }
+
+    @Test
+    @DisplayName("A torn record at the end of the log is dropped, and the appends resume in its place")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void storage_should_drop_a_torn_record(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Arrange
+        int[] tornAt = new int[1];
+        LogServiceStorage.open(vertx, dir, COMPACT_SIZE)
+                .flatMapCompletable(storage -> storage.insert(service("foo"))
+                        .andThen(Completable.fromAction(() -> tornAt[0] = storage.logSize()))
+                        .andThen(storage.insert(service("bar")))
+                        .andThen(storage.close()))
+                // Act: corrupt the checksum of the last record
+                .andThen(Completable.fromAction(() -> {
+                    try (RandomAccessFile file = new RandomAccessFile(dir.resolve(LogServiceStorage.logFileName(0)).toFile(), "rw")) {
+                        file.seek(tornAt[0] + 4);
+                        file.writeInt(~file.readInt());
+                    }
+                }))
+                .andThen(LogServiceStorage.open(vertx, dir, COMPACT_SIZE))
+                .flatMapCompletable(storage -> storage.insert(service("qux")).andThen(storage.close()))
+                // Assert
+                .andThen(Completable.fromAction(() -> testContext.verify(() -> {
+                    Map<String, ServiceStatus> stored = byName(LogServiceStorage.readAll(dir));
+                    assertEquals(2, stored.size());
+                    assertTrue(stored.containsKey("foo"));
+                    assertTrue(stored.containsKey("qux"));
+                })))
+                .subscribe(testContext::completeNow, testContext::failNow);
+    }
+
+    @Test
+    @DisplayName("The log is compacted into a snapshot once large enough, and the older logs are deleted")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void storage_should_compact_the_log(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Act: each status change appends a record
+        LogServiceStorage.open(vertx, dir, COMPACT_SIZE)
+                .flatMapCompletable(storage -> storage.insert(service("foo"))
+                        .andThen(Flowable.range(0, 5000)
+                                .concatMapCompletable(i -> storage.setStatuses(Collections.singletonList(withStatus(
+                                        i % 2 == 0 ? ServiceStatusValueEnum.OK : ServiceStatusValueEnum.FAIL)))))
+                        // The next log is prepared and the snapshot written on worker threads
+                        .andThen(Completable.timer(500, TimeUnit.MILLISECONDS))
+                        .andThen(Completable.fromAction(() -> assertTrue(storage.logSize() < COMPACT_SIZE)))
+                        .andThen(storage.close()))
+                // Assert
+                .andThen(Completable.fromAction(() -> testContext.verify(() -> {
+                    assertTrue(Files.exists(dir.resolve(LogServiceStorage.SNAPSHOT_FILE)));
+                    assertFalse(Files.exists(dir.resolve(LogServiceStorage.logFileName(0))));
+                    List<ServiceStatus> stored = LogServiceStorage.readAll(dir);
+                    assertEquals(1, stored.size());
+                    assertEquals(ServiceStatusValueEnum.FAIL, stored.get(0).getStatus());
+                })))
+                .subscribe(testContext::completeNow, testContext::failNow);
+    }
+
+    @Test
+    @DisplayName("A burst of appends outgrowing the log before its compaction is replayed whole")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void storage_should_keep_a_burst_of_appends_outgrowing_the_log(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Act: the inserts run in a single task, before the next log is prepared
+        LogServiceStorage.open(vertx, dir, COMPACT_SIZE)
+                .flatMapCompletable(storage -> storage.insertAll(IntStream.range(0, 10_000)
+                                .mapToObj(i -> service("service-" + i))
+                                .collect(Collectors.toList()))
+                        .ignoreElement()
+                        .andThen(Completable.timer(500, TimeUnit.MILLISECONDS))
+                        .andThen(storage.close()))
+                // Assert
+                .andThen(Completable.fromAction(() -> testContext.verify(() -> {
+                    List<ServiceStatus> stored = LogServiceStorage.readAll(dir);
+                    assertEquals(10_000, stored.size());
+                })))
+                .subscribe(testContext::completeNow, testContext::failNow);
+    }
+
+    @Test
+    @DisplayName("A service can not be created or renamed with the name of another one")
+    @Timeout(value = 10, timeUnit = TimeUnit.SECONDS)
+    void storage_should_reject_name_conflicts(Vertx vertx, VertxTestContext testContext, @TempDir Path dir) {
+        // Arrange
+        LogServiceStorage.open(vertx, dir, COMPACT_SIZE)
+                .flatMapCompletable(storage -> storage.insert(service("foo"))
+                        .andThen(storage.insert(service("bar")))
+                        // Act
+                        .andThen(storage.insert(service("foo")))
+                        .doOnComplete(() -> testContext.failNow(new AssertionError("Duplicated name accepted")))
+                        .onErrorResumeNext(error -> {
+                            testContext.verify(() -> assertTrue(error instanceof InvalidParameterException));
+                            return storage.update(ServiceStatus.DEFAULT_OWNER, "bar", service("foo")).ignoreElement();
+                        })
+                        .doOnComplete(() -> testContext.failNow(new AssertionError("Rename to a used name accepted")))
+                        // Assert
+                        .onErrorResumeNext(error -> {
+                            testContext.verify(() -> assertTrue(error instanceof InvalidParameterException));
+                            return storage.close();
+                        }))
+                .subscribe(testContext::completeNow, testContext::failNow);
+    }
+
+    private static ServiceStatus withStatus(ServiceStatusValueEnum status) {
+        ServiceStatus polled = service("foo");
+        polled.setStatus(status);
+        return polled;
+    }
+}